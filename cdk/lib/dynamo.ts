@@ -24,6 +24,7 @@ export interface DynamoDbTableProps {
   readonly removalPolicy?: RemovalPolicy;
   readonly streamType?: StreamViewType;
   readonly billingMode?: BillingMode;
+  readonly timeToLiveAttribute?: string;
   readonly readCapacityThresholdPercent?: number;
   readonly writeCapacityThresholdPercent?: number;
   readonly alarmEmail?: string;
@@ -90,6 +91,7 @@ export class DynamoDbTable extends Construct {
       removalPolicy: props.removalPolicy || RemovalPolicy.DESTROY,
       stream: props.streamType || StreamViewType.NEW_AND_OLD_IMAGES,
       billingMode: props.billingMode || BillingMode.PROVISIONED,
+      timeToLiveAttribute: props.timeToLiveAttribute,
     });
 
     if (props.globalIndexes) {
@@ -4,6 +4,7 @@ plugins {
     java
     id("io.quarkus")
     id("org.kordamp.gradle.jandex")
+    id("me.champeau.gradle.jmh")
 }
 
 repositories {
@@ -15,11 +16,15 @@ dependencies {
     implementation(enforcedPlatform("io.quarkus:quarkus-universe-bom:${quarkusVersion}"))
     implementation("io.quarkus:quarkus-amazon-lambda")
     implementation("io.quarkus:quarkus-arc")
+    implementation("io.quarkus:quarkus-netty")
+    implementation("io.quarkus:quarkus-apache-httpclient")
+    implementation("io.quarkus:quarkus-vertx-core")
     implementation(platform("software.amazon.awssdk:bom:2.15.53"))
     implementation("software.amazon.awssdk:dynamodb")
     implementation("software.amazon.awssdk:dynamodb-enhanced")
     implementation("software.amazon.awssdk:sts")
-    implementation("software.amazon.awssdk:url-connection-client")
+    implementation("software.amazon.awssdk:apache-client")
+    implementation("software.amazon.awssdk:netty-nio-client")
     implementation("com.amazonaws:aws-lambda-java-events:3.7.0")
     implementation("com.amazonaws:aws-lambda-java-events-sdk-transformer:3.0.2")
     implementation("com.amazonaws:aws-lambda-java-serialization:1.0.0")
@@ -36,9 +41,105 @@ dependencies {
     testImplementation("io.quarkus:quarkus-junit5-mockito")
     testImplementation("io.quarkus:quarkus-test-amazon-lambda")
     testImplementation("org.mockito:mockito-inline:3.6.28")
+    testImplementation("org.hdrhistogram:HdrHistogram:2.1.12")
 }
 
 java {
     sourceCompatibility = JavaVersion.VERSION_11
     targetCompatibility = JavaVersion.VERSION_11
 }
+
+tasks.test {
+    useJUnitPlatform()
+}
+
+// Runs WorkloadTest on the application booted with the local profile. Options are -Pworkload.<name>=<value>
+// project properties, see WorkloadOptions; -Pmarket.<name> overrides application.properties
+tasks.register<Test>("runWorkload") {
+    group = "benchmark"
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = sourceSets.test.get().runtimeClasspath
+    useJUnitPlatform()
+    filter.includeTestsMatching("com.trilogy.learning.market.workload.WorkloadTest")
+    systemProperty("quarkus.test.profile", "local")
+    systemProperty("workload.enabled", "true")
+    systemProperties(project.properties.filterKeys { it.startsWith("workload.") || it.startsWith("market.") })
+    environment("DYNAMODB_TABLE", "market")
+    environment("DYNAMODB_TABLE_PAYMENTS", "market-payments")
+    testLogging.showStandardStreams = true
+    outputs.upToDateWhen { false }
+}
+
+val jmhResults = file("$buildDir/reports/jmh/results.json")
+val jmhBaseline = file("src/jmh/baseline.json")
+
+// Throughput per benchmark, with allocation per operation (gc.alloc.rate.norm) from the gc profiler
+jmh {
+    jmhVersion = "1.27"
+    benchmarkMode = listOf("thrpt")
+    timeUnit = "s"
+    fork = 1
+    warmupIterations = 3
+    iterations = 5
+    profilers = listOf("gc")
+    resultFormat = "JSON"
+    resultsFile = jmhResults
+    duplicateClassesStrategy = DuplicatesStrategy.EXCLUDE
+}
+
+tasks.named<ProcessResources>("processJmhResources") {
+    from(rootProject.file("cdk/seed-data.json"))
+}
+
+// Records the last results as the baseline that later builds are compared with
+tasks.register<Copy>("jmhSaveBaseline") {
+    group = "benchmark"
+    from(jmhResults)
+    into(jmhBaseline.parentFile)
+    rename { jmhBaseline.name }
+}
+
+// Fails when a benchmark lost more throughput, or allocates more per operation, than -PjmhTolerance (10%)
+tasks.register("jmhCompare") {
+    group = "benchmark"
+    doLast {
+        if (!jmhBaseline.exists()) {
+            throw GradleException("No benchmark baseline at $jmhBaseline, record one with jmhSaveBaseline")
+        }
+
+        if (!jmhResults.exists()) {
+            throw GradleException("No benchmark results at $jmhResults, run jmh first")
+        }
+
+        val tolerance = (findProperty("jmhTolerance") as String?)?.toDouble() ?: 0.1
+        val baseline = readJmhResults(jmhBaseline)
+        val regressions = mutableListOf<String>()
+        for ((benchmark, current) in readJmhResults(jmhResults)) {
+            val previous = baseline[benchmark] ?: continue
+            val throughput = current.first / previous.first - 1
+            val allocation = if (previous.second > 0) current.second / previous.second - 1 else 0.0
+            logger.lifecycle(String.format("%-90s %+7.1f%% ops/s %+7.1f%% B/op", benchmark,
+                    throughput * 100, allocation * 100))
+            if (throughput < -tolerance || allocation > tolerance) {
+                regressions.add(benchmark)
+            }
+        }
+
+        if (regressions.isNotEmpty()) {
+            throw GradleException("Benchmark regressions against $jmhBaseline: $regressions")
+        }
+    }
+}
+
+// Throughput and normalized allocation rate by benchmark and parameters
+@Suppress("UNCHECKED_CAST")
+fun readJmhResults(file: File): Map<String, Pair<Double, Double>> {
+    val results = groovy.json.JsonSlurper().parse(file) as List<Map<String, Any>>
+    return results.associate { result ->
+        val primary = result["primaryMetric"] as Map<String, Any>
+        val secondary = result["secondaryMetrics"] as Map<String, Map<String, Any>>? ?: emptyMap()
+        val allocation = secondary.entries.find { it.key.endsWith("gc.alloc.rate.norm") }?.value?.get("score")
+        "${result["benchmark"]}${result["params"] ?: ""}" to
+                Pair((primary["score"] as Number).toDouble(), (allocation as Number?)?.toDouble() ?: 0.0)
+    }
+}
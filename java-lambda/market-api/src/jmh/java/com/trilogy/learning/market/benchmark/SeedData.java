@@ -0,0 +1,77 @@
+package com.trilogy.learning.market.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// The items of cdk/seed-data.json as the low-level client returns them, and larger orders built from their shapes
+public final class SeedData {
+    private static final String RESOURCE = "/seed-data.json";
+    private static final List<Map<String, AttributeValue>> ITEMS = load();
+
+    private SeedData() {
+    }
+
+    public static Map<String, AttributeValue> getItem(String pk, String sk) {
+        for (var item : ITEMS) {
+            if (item.get("PK").s().equals(pk) && item.get("SK").s().equals(sk)) {
+                return item;
+            }
+        }
+
+        throw new IllegalArgumentException(pk + " " + sk);
+    }
+
+    // The ORDER# partition of an order with the given number of line items, as a details query returns it
+    public static List<Map<String, AttributeValue>> getOrderPartition(int lineItems) {
+        final var items = new ArrayList<Map<String, AttributeValue>>();
+        items.add(getItem("ORDER#OrderId1", "ORDER#OrderId1"));
+        final var template = getItem("ORDER#OrderId1", "PROD#Prod1");
+        for (var i = 1; i <= lineItems; i++) {
+            final var item = new HashMap<>(template);
+            item.put("SK", getString("PROD#Prod" + i));
+            item.put("GSI1PK", getString("PROD#Prod" + i));
+            item.put("Name", getString("Product " + i));
+            item.put("Data", AttributeValue.builder().n(Integer.toString(i % 5 + 1)).build());
+            item.put("Price", AttributeValue.builder().n(i % 2 == 0 ? "9.25" : "5").build());
+            items.add(item);
+        }
+
+        return items;
+    }
+
+    private static List<Map<String, AttributeValue>> load() {
+        try (var input = SeedData.class.getResourceAsStream(RESOURCE)) {
+            if (input == null) {
+                throw new IllegalStateException(RESOURCE + " is not on the classpath");
+            }
+
+            final var items = new ArrayList<Map<String, AttributeValue>>();
+            for (var node : new ObjectMapper().readTree(input)) {
+                final var item = new HashMap<String, AttributeValue>();
+                node.fields().forEachRemaining(field -> item.put(field.getKey(), getValue(field.getValue())));
+                items.add(item);
+            }
+
+            return items;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static AttributeValue getValue(JsonNode node) {
+        return node.isNumber() ? AttributeValue.builder().n(node.decimalValue().toPlainString()).build()
+                : getString(node.asText());
+    }
+
+    private static AttributeValue getString(String value) {
+        return AttributeValue.builder().s(value).build();
+    }
+}
@@ -0,0 +1,64 @@
+package com.trilogy.learning.market.repository.dynamodb;
+
+import com.trilogy.learning.market.benchmark.SeedData;
+import com.trilogy.learning.market.model.Customer;
+import com.trilogy.learning.market.model.Order;
+import com.trilogy.learning.market.model.Product;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.StaticTableSchema;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.Map;
+
+// Single items of the seed data to models and back; the repositories never touch their clients here
+@State(Scope.Benchmark)
+public class ItemMappingBenchmark {
+    private static final StaticTableSchema<Product> TABLE_SCHEMA = ProductRepository.getTableSchema(8);
+
+    private OrderRepository orderRepository;
+    private CustomerRepository customerRepository;
+    private Map<String, AttributeValue> orderItem;
+    private Map<String, AttributeValue> customerItem;
+    private Map<String, AttributeValue> productItem;
+    private Customer customer;
+    private Product product;
+
+    @Setup
+    public void setUp() {
+        orderRepository = new OrderRepository(null, 1);
+        customerRepository = new CustomerRepository(null, 1, 100);
+        orderItem = SeedData.getItem("ORDER#OrderId1", "ORDER#OrderId1");
+        customerItem = SeedData.getItem("CUST#c1@mail.com", "CUST#c1@mail.com");
+        productItem = SeedData.getItem("PROD#Prod2", "PROD#Prod2");
+        customer = customerRepository.getCustomerFromItem(customerItem);
+        product = TABLE_SCHEMA.mapToItem(productItem);
+    }
+
+    @Benchmark
+    public Order orderFromItem() {
+        return orderRepository.getOrderFromItem(orderItem);
+    }
+
+    @Benchmark
+    public Customer customerFromItem() {
+        return customerRepository.getCustomerFromItem(customerItem);
+    }
+
+    @Benchmark
+    public Map<String, AttributeValue> customerToItem() {
+        return customerRepository.getItemFromCustomer(customer);
+    }
+
+    @Benchmark
+    public Product productFromItem() {
+        return TABLE_SCHEMA.mapToItem(productItem);
+    }
+
+    @Benchmark
+    public Map<String, AttributeValue> productToItem() {
+        return TABLE_SCHEMA.itemToMap(product, true);
+    }
+}
@@ -0,0 +1,48 @@
+package com.trilogy.learning.market.repository.dynamodb;
+
+import com.trilogy.learning.market.benchmark.SeedData;
+import com.trilogy.learning.market.model.Order;
+import com.trilogy.learning.market.model.OrderedProduct;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+// Order details to and from the items of an ORDER# partition, by number of line items
+@State(Scope.Benchmark)
+public class OrderMappingBenchmark {
+    @Param({"1", "10", "50"})
+    int lineItems;
+
+    private OrderRepository orderRepository;
+    private List<Map<String, AttributeValue>> items;
+    private Order order;
+
+    @Setup
+    public void setUp() {
+        orderRepository = new OrderRepository(null, 1);
+        items = SeedData.getOrderPartition(lineItems);
+        order = orderRepository.getOrderDetailsFromItems(items);
+    }
+
+    @Benchmark
+    public Order orderDetailsFromItems() {
+        return orderRepository.getOrderDetailsFromItems(items);
+    }
+
+    @Benchmark
+    public List<Map<String, AttributeValue>> orderDetailsToItems() {
+        return orderRepository.getItemsFromOrderDetails(order);
+    }
+
+    @Benchmark
+    public BigDecimal orderTotal() {
+        return OrderedProduct.getTotal(order.getProducts());
+    }
+}
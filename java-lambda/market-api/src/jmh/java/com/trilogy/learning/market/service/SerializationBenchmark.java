@@ -0,0 +1,82 @@
+package com.trilogy.learning.market.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.trilogy.learning.market.benchmark.SeedData;
+import com.trilogy.learning.market.model.Order;
+import com.trilogy.learning.market.model.OrderedProduct;
+import com.trilogy.learning.market.model.ResultPage;
+import com.trilogy.learning.market.repository.dynamodb.OrderRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Set;
+
+// Response bodies as the controllers write them: order details, and a page of orders with and without fields
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+    private static final int PAGE_SIZE = 20;
+    private static final Set<String> FIELDS = Set.of("id", "status", "total");
+
+    private final SerializationService serializationService = new SerializationService();
+    private ResultPage<Order> page;
+
+    @State(Scope.Benchmark)
+    public static class OrderDetails {
+        @Param({"1", "10", "50"})
+        int lineItems;
+
+        Order order;
+
+        @Setup
+        public void setUp() {
+            final var items = SeedData.getOrderPartition(lineItems);
+            final var products = new ArrayList<OrderedProduct>();
+            for (var item : items.subList(1, items.size())) {
+                products.add(OrderedProduct.builder()
+                        .id(item.get("SK").s().substring("PROD#".length()))
+                        .orderId(item.get("PK").s().substring("ORDER#".length()))
+                        .name(item.get("Name").s())
+                        .price(new BigDecimal(item.get("Price").n()))
+                        .quantity(Integer.parseInt(item.get("Data").n()))
+                        .build());
+            }
+
+            order = getOrder().toBuilder().products(products).build();
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        final var order = getOrder();
+        final var orders = new ArrayList<Order>();
+        for (var i = 0; i < PAGE_SIZE; i++) {
+            orders.add(order.toBuilder().id(order.getId() + i).build());
+        }
+
+        page = ResultPage.<Order>builder().items(orders).nextToken("eyJQSyI6Ik9SREVSI09yZGVySWQxIn0").build();
+    }
+
+    @Benchmark
+    public String writeOrderDetails(OrderDetails details) throws JsonProcessingException {
+        return serializationService.write(details.order);
+    }
+
+    @Benchmark
+    public String writeOrderList() throws JsonProcessingException {
+        return serializationService.write(page.getItems(), Order.class);
+    }
+
+    @Benchmark
+    public String writeOrderPageFields() throws JsonProcessingException {
+        return serializationService.write(page, FIELDS);
+    }
+
+    private static Order getOrder() {
+        return new OrderRepository(null, 1).getOrderFromItem(SeedData.getItem("ORDER#OrderId1", "ORDER#OrderId1"));
+    }
+}
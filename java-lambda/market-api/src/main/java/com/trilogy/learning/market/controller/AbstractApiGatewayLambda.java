@@ -5,19 +5,54 @@ import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
 import com.trilogy.learning.market.model.ErrorMessage;
+import com.trilogy.learning.market.model.IdempotencyRecord;
+import com.trilogy.learning.market.repository.IIdempotencyRepository;
+import com.trilogy.learning.market.service.DynamoDbMetrics;
+import com.trilogy.learning.market.service.ResponseCompressor;
+import com.trilogy.learning.market.service.SerializationService;
 import lombok.extern.jbosslog.JBossLog;
 
+import javax.enterprise.context.control.ActivateRequestContext;
+import javax.inject.Inject;
 import java.io.IOException;
 import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Supplier;
 
 @JBossLog
 abstract class AbstractApiGatewayLambda
         implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
-    private String userEmail;
+    private static final String FIELDS_PARAM = "fields";
+    protected static final String LIMIT_PARAM = "limit";
+    protected static final String NEXT_TOKEN_PARAM = "nextToken";
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
 
+    @Inject
+    SerializationService serializationService;
+
+    @Inject
+    ResponseCompressor responseCompressor;
+
+    @Inject
+    IIdempotencyRepository idempotencyRepository;
+
+    @Inject
+    DynamoDbMetrics dynamoDbMetrics;
+
+    @Inject
+    RequestIdentity requestIdentity;
+
+    // Starts a request context unless the caller already did, so per-request state never outlives the request
     @Override
+    @ActivateRequestContext
     public APIGatewayProxyResponseEvent handleRequest(final APIGatewayProxyRequestEvent input, final Context context) {
         final var params = input.getQueryStringParameters();
         final var caseInsensitiveParams = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
@@ -26,26 +61,225 @@ abstract class AbstractApiGatewayLambda
         }
 
         try {
-            final var cognitoClaims = (Map<String, String>)input.getRequestContext().getAuthorizer().get("claims");
-            userEmail = cognitoClaims.get("email");
-            final var result = handle(caseInsensitiveParams, input.getBody());
-            if (result != null) {
+            try {
+                final var cognitoClaims = (Map<String, String>)input.getRequestContext().getAuthorizer().get("claims");
+                requestIdentity.setUserEmail(cognitoClaims.get("email"));
+                final var idempotencyKey = getIdempotencyKey(input);
+                if (idempotencyKey != null) {
+                    return handleIdempotent(idempotencyKey, caseInsensitiveParams, getBody(input), input);
+                }
+
+                final var result = handle(caseInsensitiveParams, getBody(input));
+                if (result != null) {
+                    return getOkResponse(result, input);
+                }
+            } catch (BadRequestException e) {
+                return getErrorResponse(HttpURLConnection.HTTP_BAD_REQUEST, e.getMessage());
+            } catch (Exception e) {
                 return new APIGatewayProxyResponseEvent()
-                        .withStatusCode(HttpURLConnection.HTTP_OK)
-                        .withBody(result);
+                        .withStatusCode(HttpURLConnection.HTTP_INTERNAL_ERROR)
+                        .withBody(ErrorMessage.asJson(e));
             }
+
+            return new APIGatewayProxyResponseEvent().withStatusCode(HttpURLConnection.HTTP_NOT_FOUND);
+        } finally {
+            dynamoDbMetrics.flush();
+        }
+    }
+
+    // The key is claimed before the request runs; a retry gets the stored response and touches nothing else
+    private APIGatewayProxyResponseEvent handleIdempotent(String key, Map<String, String> queryParams, String body,
+                                                          APIGatewayProxyRequestEvent input) throws IOException {
+        final var requestHash = EntityTags.of(body == null ? "" : body);
+        final var owner = UUID.randomUUID().toString();
+        final var record = idempotencyRepository.claim(key, requestHash, owner);
+        if (record != null) {
+            return getReplayResponse(record, requestHash, input);
+        }
+
+        final String result;
+        try {
+            result = handle(queryParams, body);
         } catch (Exception e) {
-            return new APIGatewayProxyResponseEvent()
-                    .withStatusCode(HttpURLConnection.HTTP_INTERNAL_ERROR)
-                    .withBody(ErrorMessage.asJson(e));
+            idempotencyRepository.release(key, owner);
+            throw e;
+        }
+
+        if (result == null) {
+            idempotencyRepository.release(key, owner);
+            return new APIGatewayProxyResponseEvent().withStatusCode(HttpURLConnection.HTTP_NOT_FOUND);
         }
 
-        return new APIGatewayProxyResponseEvent().withStatusCode(HttpURLConnection.HTTP_NOT_FOUND);
+        idempotencyRepository.complete(key, owner, requestHash, result);
+        return getOkResponse(result, input);
+    }
+
+    private APIGatewayProxyResponseEvent getReplayResponse(IdempotencyRecord record, String requestHash,
+                                                           APIGatewayProxyRequestEvent input) {
+        if (!requestHash.equals(record.getRequestHash())) {
+            return getErrorResponse(422, "Idempotency-Key was already used for a different request");
+        }
+
+        if (record.getStatus() != IdempotencyRecord.Status.COMPLETED) {
+            return getErrorResponse(HttpURLConnection.HTTP_CONFLICT,
+                    "A request with this Idempotency-Key is still in progress");
+        }
+
+        log.debugf("Replaying response for idempotency key %s", record.getKey());
+        final var response = getOkResponse(record.getResponse(), input);
+        response.getHeaders().put("Idempotent-Replayed", "true");
+        return response;
+    }
+
+    private static APIGatewayProxyResponseEvent getErrorResponse(int statusCode, String message) {
+        return new APIGatewayProxyResponseEvent()
+                .withStatusCode(statusCode)
+                .withBody(ErrorMessage.asJson(new IllegalStateException(message)));
+    }
+
+    // Keys are scoped to the endpoint and the user, so the same client key cannot collide across either. Without
+    // an authenticated user every caller would share one key space and could replay another's response.
+    private String getIdempotencyKey(APIGatewayProxyRequestEvent input) {
+        final var scope = getIdempotencyScope();
+        final var key = scope != null ? getHeader(input, IDEMPOTENCY_KEY_HEADER) : null;
+        if (key == null || key.isBlank()) {
+            return null;
+        }
+
+        if (requestIdentity.getUserEmail() == null) {
+            throw new BadRequestException(IDEMPOTENCY_KEY_HEADER + " requires an authenticated caller", null);
+        }
+
+        if (key.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+            throw new BadRequestException(IDEMPOTENCY_KEY_HEADER + " is longer than " + MAX_IDEMPOTENCY_KEY_LENGTH,
+                    null);
+        }
+
+        return scope + "#" + requestIdentity.getUserEmail() + "#" + key.trim();
+    }
+
+    // The encoding is negotiated first, so a 304 validates and returns the same tag as the 200 it stands for
+    private APIGatewayProxyResponseEvent getOkResponse(String body, APIGatewayProxyRequestEvent input) {
+        final var headers = new HashMap<String, String>();
+        final var cacheControl = getCacheControl();
+        final var compressed = responseCompressor.compress(body, getHeader(input, "Accept-Encoding"),
+                getHeader(input, "Accept"));
+        if (compressed != null || cacheControl != null) {
+            headers.put("Vary", "Accept, Accept-Encoding");
+        }
+
+        if (cacheControl != null) {
+            final var entityTag = compressed != null
+                    ? EntityTags.withEncoding(EntityTags.of(body), compressed.getEncoding())
+                    : EntityTags.of(body);
+            headers.put("Cache-Control", cacheControl);
+            headers.put("ETag", entityTag);
+            if (EntityTags.matches(getHeader(input, "If-None-Match"), entityTag)) {
+                return new APIGatewayProxyResponseEvent()
+                        .withStatusCode(HttpURLConnection.HTTP_NOT_MODIFIED)
+                        .withHeaders(headers);
+            }
+        }
+
+        headers.put("Content-Type", "application/json");
+        final var response = new APIGatewayProxyResponseEvent()
+                .withStatusCode(HttpURLConnection.HTTP_OK)
+                .withHeaders(headers);
+        if (compressed == null) {
+            return response.withBody(body);
+        }
+
+        headers.put("Content-Encoding", compressed.getEncoding());
+        return response
+                .withIsBase64Encoded(true)
+                .withBody(compressed.getBase64Body());
+    }
+
+    // Binary media types are enabled on the API for compressed responses, so bodies may arrive encoded
+    private static String getBody(APIGatewayProxyRequestEvent input) {
+        final var body = input.getBody();
+        if (body != null && Boolean.TRUE.equals(input.getIsBase64Encoded())) {
+            return new String(Base64.getDecoder().decode(body), StandardCharsets.UTF_8);
+        }
+
+        return body;
+    }
+
+    private static String getHeader(APIGatewayProxyRequestEvent input, String name) {
+        final var headers = input.getHeaders();
+        if (headers == null) {
+            return null;
+        }
+
+        for (var header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey())) {
+                return header.getValue();
+            }
+        }
+
+        return null;
+    }
+
+    // Read endpoints return a Cache-Control value to get ETag validation; null disables both
+    protected String getCacheControl() {
+        return null;
+    }
+
+    // Write endpoints return a scope to honor the Idempotency-Key header; null ignores it
+    protected String getIdempotencyScope() {
+        return null;
     }
 
     protected abstract String handle(Map<String, String> queryParams, String body) throws IOException;
 
+    // Comma separated model fields to read and return, null for whole items
+    protected Set<String> getFields(Map<String, String> queryParams) {
+        final var value = queryParams.get(FIELDS_PARAM);
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+
+        final var fields = new LinkedHashSet<String>();
+        for (var field : value.split(",")) {
+            if (!field.isBlank()) {
+                fields.add(field.trim());
+            }
+        }
+
+        return fields;
+    }
+
+    protected boolean isPaged(Map<String, String> queryParams) {
+        return queryParams.containsKey(LIMIT_PARAM) || queryParams.containsKey(NEXT_TOKEN_PARAM);
+    }
+
+    protected Integer getLimit(Map<String, String> queryParams) {
+        if (!queryParams.containsKey(LIMIT_PARAM)) {
+            return null;
+        }
+
+        try {
+            final var limit = Integer.parseInt(queryParams.get(LIMIT_PARAM));
+            if (limit < 1) {
+                throw new IllegalArgumentException("Must be positive: " + limit);
+            }
+
+            return limit;
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid " + LIMIT_PARAM, e);
+        }
+    }
+
+    // The token is only decoded by the repository, which rejects one that was not issued by a previous page
+    protected <T> T getPage(Supplier<T> query) {
+        try {
+            return query.get();
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid " + NEXT_TOKEN_PARAM, e);
+        }
+    }
+
     protected String getUserEmail() {
-        return userEmail;
+        return requestIdentity.getUserEmail();
     }
 }
@@ -3,42 +3,213 @@ package com.trilogy.learning.market.controller;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.DynamodbEvent;
+import com.amazonaws.services.lambda.runtime.events.StreamsEventResponse;
 import com.amazonaws.services.lambda.runtime.events.transformers.v2.DynamodbEventTransformer;
+import com.trilogy.learning.market.service.DynamoDbMetrics;
+import lombok.Value;
 import lombok.extern.jbosslog.JBossLog;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 import software.amazon.awssdk.services.dynamodb.model.OperationType;
+import software.amazon.awssdk.services.dynamodb.model.Record;
 
+import javax.inject.Inject;
 import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
+// T is what handling a record contributes to the work done once per batch in completeBatch
 @JBossLog
-abstract class AbstractDynamoStreamLambda implements RequestHandler<DynamodbEvent, Integer> {
+abstract class AbstractDynamoStreamLambda<T> implements RequestHandler<DynamodbEvent, StreamsEventResponse> {
+    // Requires ReportBatchItemFailures on the event source mapping, otherwise failed records are dropped
+    @ConfigProperty(name = "market.stream.report-batch-item-failures", defaultValue = "false")
+    boolean reportBatchItemFailures;
+
+    // Records sharing an ordering key are handled in stream order, distinct keys concurrently
+    @ConfigProperty(name = "market.stream.parallelism", defaultValue = "1")
+    int parallelism;
+
+    @Inject
+    DynamoDbMetrics dynamoDbMetrics;
+
+    private ExecutorService executor;
+
     @Override
-    public Integer handleRequest(final DynamodbEvent input, final Context context) {
+    public StreamsEventResponse handleRequest(final DynamodbEvent input, final Context context) {
         log.info(input);
         try {
-            final var records = DynamodbEventTransformer.toRecordsV2(input);
-            var processedRecordsCount = 0;
-            for (var record : records) {
-                final var oldItem = record.dynamodb().oldImage();
-                final var newItem = record.dynamodb().newImage();
-                final var operationType = record.eventName();
-                try {
-                    handle(oldItem, newItem, operationType);
-                    processedRecordsCount++;
-                } catch (Exception e) {
-                    log.error("Event procession failed", e);
-                }
+            return handleRecords(DynamodbEventTransformer.toRecordsV2(input));
+        } catch (Exception e) {
+            log.error("Invocation failed", e);
+            return getBatchFailureResponse(input);
+        } finally {
+            dynamoDbMetrics.flush();
+        }
+    }
+
+    StreamsEventResponse handleRecords(List<Record> records) {
+        final var failures = new ArrayList<StreamsEventResponse.BatchItemFailure>();
+        final var processedRecordsCount = new AtomicInteger();
+        // Per invocation, so nothing of a failed invocation is left over for the next one
+        final var results = new ConcurrentLinkedQueue<HandledRecord<T>>();
+        final var failedSequenceNumber = new AtomicReference<BigInteger>();
+        if (parallelism > 1) {
+            handleInParallel(records, processedRecordsCount, results, failedSequenceNumber);
+        } else {
+            handleInOrder(records, processedRecordsCount, results, failedSequenceNumber);
+        }
+
+        final var handledRecords = new ArrayList<HandledRecord<T>>();
+        for (var result : results) {
+            // Records from the failed one on are re-delivered, so what they returned must not be applied now
+            if (failedSequenceNumber.get() == null
+                    || new BigInteger(result.getSequenceNumber()).compareTo(failedSequenceNumber.get()) < 0) {
+                handledRecords.add(result);
             }
+        }
 
-            return processedRecordsCount;
+        if (failedSequenceNumber.get() != null) {
+            failures.add(getBatchItemFailure(failedSequenceNumber.get().toString()));
+        }
+
+        try {
+            handledRecords.sort(Comparator.comparing(r -> new BigInteger(r.getSequenceNumber())));
+            completeBatch(records.isEmpty() ? null : records.get(0).dynamodb().sequenceNumber(), handledRecords);
         } catch (Exception e) {
-            log.error("Invocation failed", e);
-            return 0;
+            log.error("Batch completion failed", e);
+            return getBatchFailureResponse(records);
+        }
+
+        log.infof("Processed %d of %d records", processedRecordsCount.get(), records.size());
+        return new StreamsEventResponse(failures);
+    }
+
+    // Stops at the first failure, or at a record past the lowest failure of any group, which lowers
+    // failedSequenceNumber to the sequence number to re-deliver from; it stays null unless failures are reported
+    private void handleInOrder(List<Record> records, AtomicInteger processedRecordsCount,
+                               Queue<HandledRecord<T>> results, AtomicReference<BigInteger> failedSequenceNumber) {
+        for (var record : records) {
+            final var sequenceNumber = new BigInteger(record.dynamodb().sequenceNumber());
+            final var failed = failedSequenceNumber.get();
+            if (failed != null && sequenceNumber.compareTo(failed) > 0) {
+                return;
+            }
+
+            final var oldItem = record.dynamodb().oldImage();
+            final var newItem = record.dynamodb().newImage();
+            final var operationType = record.eventName();
+            try {
+                final var result = handle(oldItem, newItem, operationType);
+                if (result != null) {
+                    results.add(new HandledRecord<>(record.dynamodb().sequenceNumber(), result));
+                }
+
+                processedRecordsCount.incrementAndGet();
+            } catch (Exception e) {
+                log.error("Event procession failed", e);
+                if (reportBatchItemFailures) {
+                    // The stream re-delivers from the first failed record, so the rest would be reprocessed
+                    failedSequenceNumber.accumulateAndGet(sequenceNumber,
+                            (current, next) -> current == null || next.compareTo(current) < 0 ? next : current);
+                    return;
+                }
+            }
         }
     }
 
-    protected abstract void handle(Map<String, AttributeValue> oldItem,
-                                   Map<String, AttributeValue> newItem,
-                                   OperationType operationType) throws IOException;
+    // Groups stop at the lowest failed sequence number of all groups, from which the batch is re-delivered
+    private void handleInParallel(List<Record> records, AtomicInteger processedRecordsCount,
+                                  Queue<HandledRecord<T>> results, AtomicReference<BigInteger> failedSequenceNumber) {
+        final var groups = new LinkedHashMap<String, List<Record>>();
+        for (var record : records) {
+            groups.computeIfAbsent(getOrderingKey(record), k -> new ArrayList<>()).add(record);
+        }
+
+        final var futures = new ArrayList<CompletableFuture<Void>>();
+        for (var group : groups.values()) {
+            futures.add(CompletableFuture.runAsync(
+                    () -> handleInOrder(group, processedRecordsCount, results, failedSequenceNumber), getExecutor()));
+        }
+
+        log.debugf("Handling %d records in %d groups", records.size(), groups.size());
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+    }
+
+    // Partition key by default; handlers may choose a coarser key to serialize related entities
+    protected String getOrderingKey(Record record) {
+        return Optional.ofNullable(record.dynamodb().keys())
+                .map(keys -> keys.get("PK"))
+                .map(AttributeValue::s)
+                .orElse("");
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+                final var thread = new Thread(runnable, "dynamodb-stream");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        return executor;
+    }
+
+    // Reports the first record as failed so the whole batch is re-delivered; completeBatch must therefore be
+    // idempotent per record, which is what the batch and sequence numbers it receives are for
+    private StreamsEventResponse getBatchFailureResponse(List<Record> records) {
+        final var failures = new ArrayList<StreamsEventResponse.BatchItemFailure>();
+        if (reportBatchItemFailures && !records.isEmpty()) {
+            failures.add(getBatchItemFailure(records.get(0).dynamodb().sequenceNumber()));
+        }
+
+        return new StreamsEventResponse(failures);
+    }
+
+    private StreamsEventResponse getBatchFailureResponse(DynamodbEvent input) {
+        final var failures = new ArrayList<StreamsEventResponse.BatchItemFailure>();
+        final var records = input.getRecords();
+        if (reportBatchItemFailures && records != null && !records.isEmpty()) {
+            failures.add(getBatchItemFailure(records.get(0).getDynamodb().getSequenceNumber()));
+        }
+
+        return new StreamsEventResponse(failures);
+    }
+
+    private static StreamsEventResponse.BatchItemFailure getBatchItemFailure(String sequenceNumber) {
+        return StreamsEventResponse.BatchItemFailure.builder()
+                .withItemIdentifier(sequenceNumber)
+                .build();
+    }
+
+    // Called concurrently for records with different ordering keys when parallelism is above one; returns what
+    // the record contributes to completeBatch, or null
+    protected abstract T handle(Map<String, AttributeValue> oldItem,
+                                Map<String, AttributeValue> newItem,
+                                OperationType operationType) throws IOException;
+
+    // Called once after the records of the event were handled, with what they returned in stream order, to apply
+    // work aggregated across records. The batch is the sequence number of its first record, which it starts with
+    // again when re-delivered; a retry from a failed record starts a new batch, since nothing from that record
+    // on was applied.
+    protected void completeBatch(String batch, List<HandledRecord<T>> results) throws IOException {
+    }
+
+    @Value
+    protected static class HandledRecord<T> {
+        String sequenceNumber;
+        T result;
+    }
 }
@@ -1,7 +1,6 @@
 package com.trilogy.learning.market.controller;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.trilogy.learning.market.model.Customer;
 import com.trilogy.learning.market.repository.ICustomerRepository;
 import com.trilogy.learning.market.requests.NewCustomerRequest;
@@ -14,18 +13,16 @@ import java.util.Map;
 @Named("add-customer")
 @AllArgsConstructor
 public class AddCustomer extends AbstractApiGatewayLambda {
-    private static final ObjectMapper objectMapper = new ObjectMapper();
-
     private ICustomerRepository customerRepository;
 
     @Override
     protected String handle(Map<String, String> queryParams, String body) throws JsonProcessingException {
-        final var request = objectMapper.readValue(body, NewCustomerRequest.class);
+        final var request = serializationService.read(body, NewCustomerRequest.class);
         final var customer = Customer.builder()
                 .email(request.getCustomerEmail())
                 .name(request.getName())
                 .build();
         customerRepository.addCustomer(customer);
-        return objectMapper.writeValueAsString(customer);
+        return serializationService.write(customer);
     }
 }
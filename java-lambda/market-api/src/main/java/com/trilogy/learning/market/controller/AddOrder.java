@@ -1,7 +1,6 @@
 package com.trilogy.learning.market.controller;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.trilogy.learning.market.requests.NewOrderRequest;
 import com.trilogy.learning.market.service.IOrderService;
 import lombok.AllArgsConstructor;
@@ -13,14 +12,19 @@ import java.util.Map;
 @Named("add-order")
 @AllArgsConstructor
 public class AddOrder extends AbstractApiGatewayLambda {
-    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final String IDEMPOTENCY_SCOPE = "add-order";
 
     private IOrderService orderService;
 
+    @Override
+    protected String getIdempotencyScope() {
+        return IDEMPOTENCY_SCOPE;
+    }
+
     @Override
     protected String handle(Map<String, String> queryParams, String body) throws IOException {
-        final var request = objectMapper.readValue(body, NewOrderRequest.class);
+        final var request = serializationService.read(body, NewOrderRequest.class);
         var order = orderService.addOrder(request);
-        return objectMapper.writeValueAsString(order);
+        return serializationService.write(order);
     }
 }
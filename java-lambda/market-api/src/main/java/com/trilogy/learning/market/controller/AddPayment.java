@@ -1,7 +1,6 @@
 package com.trilogy.learning.market.controller;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.trilogy.learning.market.requests.NewPaymentRequest;
 import com.trilogy.learning.market.service.IPaymentService;
 import lombok.AllArgsConstructor;
@@ -12,13 +11,19 @@ import java.util.Map;
 @Named("add-payment")
 @AllArgsConstructor
 public class AddPayment extends AbstractApiGatewayLambda {
+    private static final String IDEMPOTENCY_SCOPE = "add-payment";
+
     private IPaymentService paymentService;
 
+    @Override
+    protected String getIdempotencyScope() {
+        return IDEMPOTENCY_SCOPE;
+    }
+
     @Override
     protected String handle(Map<String, String> queryParams, String body) throws JsonProcessingException {
-        final var objectMapper = new ObjectMapper();
-        final var request = objectMapper.readValue(body, NewPaymentRequest.class);
+        final var request = serializationService.read(body, NewPaymentRequest.class);
         final var result = paymentService.handleOrderPayment(request.getCustomerId(), request.getOrderId(), request.getAmount());
-        return objectMapper.writeValueAsString(Map.of("result", result));
+        return serializationService.write(Map.of("result", result));
     }
 }
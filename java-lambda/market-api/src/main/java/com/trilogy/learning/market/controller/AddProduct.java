@@ -1,7 +1,6 @@
 package com.trilogy.learning.market.controller;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.trilogy.learning.market.model.Product;
 import com.trilogy.learning.market.repository.IProductRepository;
 import lombok.AllArgsConstructor;
@@ -16,9 +15,8 @@ public class AddProduct extends AbstractApiGatewayLambda {
 
     @Override
     protected String handle(Map<String, String> queryParams, String body) throws JsonProcessingException {
-        final var objectMapper = new ObjectMapper();
-        final var value = objectMapper.readValue(body, Product.class);
+        final var value = serializationService.read(body, Product.class);
         productRepository.addProduct(value);
-        return objectMapper.writeValueAsString(value);
+        return serializationService.write(value);
     }
 }
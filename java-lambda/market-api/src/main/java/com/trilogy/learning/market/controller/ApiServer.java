@@ -0,0 +1,185 @@
+package com.trilogy.learning.market.controller;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import lombok.extern.jbosslog.JBossLog;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.enterprise.event.Observes;
+import javax.enterprise.inject.Any;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+// Serves every API handler from one process, for long-lived containers; the route of a handler is the one the
+// stack gives it: the verb of its name picks the method and the rest is the path, so add-order is POST /order
+@JBossLog
+@Singleton
+public class ApiServer {
+    private static final Map<String, String> METHODS = Map.of(
+            "get", "GET",
+            "add", "POST",
+            "update", "PUT",
+            "delete", "DELETE");
+
+    private final boolean enabled;
+    private final int port;
+    private final Optional<String> identityHeader;
+    private final Instance<Vertx> vertxInstance;
+    private final Instance<AbstractApiGatewayLambda> handlers;
+    // Method and path to handler
+    private final Map<String, AbstractApiGatewayLambda> routes = new HashMap<>();
+
+    private Vertx vertx;
+    private HttpServer server;
+
+    @Inject
+    public ApiServer(@ConfigProperty(name = "market.server.enabled", defaultValue = "false") boolean enabled,
+                     @ConfigProperty(name = "market.server.port", defaultValue = "8080") int port,
+                     // Set by the proxy in front of the server after it authenticated the caller
+                     @ConfigProperty(name = "market.server.identity-header") Optional<String> identityHeader,
+                     Instance<Vertx> vertxInstance,
+                     @Any Instance<AbstractApiGatewayLambda> handlers) {
+        this.enabled = enabled;
+        this.port = port;
+        this.identityHeader = identityHeader;
+        this.vertxInstance = vertxInstance;
+        this.handlers = handlers;
+    }
+
+    // The Vert.x instance Quarkus manages is created on first use, so it is only looked up in server mode and
+    // Lambda cold starts do not pay for it
+    void onStart(@Observes StartupEvent event) {
+        if (!enabled) {
+            return;
+        }
+
+        // Without it every request would reach the handlers anonymously
+        if (identityHeader.isEmpty()) {
+            throw new IllegalStateException("market.server.identity-header is required in server mode");
+        }
+
+        for (var handler : handlers) {
+            final var name = getName(handler.getClass());
+            final var separator = name.indexOf('-');
+            final var method = separator > 0 ? METHODS.get(name.substring(0, separator)) : null;
+            if (method == null) {
+                log.warnf("No route for handler %s", name);
+                continue;
+            }
+
+            final var route = method + " /" + name.substring(separator + 1);
+            routes.put(route, handler);
+            log.debugf("Route %s -> %s", route, name);
+        }
+
+        vertx = vertxInstance.get();
+        server = vertx.createHttpServer()
+                .requestHandler(this::handle)
+                .listen(port, result -> {
+                    if (result.succeeded()) {
+                        log.infof("Serving %d routes on port %d", routes.size(), port);
+                    } else {
+                        log.errorf(result.cause(), "Cannot listen on port %d", port);
+                    }
+                });
+    }
+
+    // Quarkus closes Vert.x itself after the shutdown event
+    void onStop(@Observes ShutdownEvent event) {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    private void handle(HttpServerRequest request) {
+        final var handler = routes.get(request.method().name() + " " + request.path());
+        if (handler == null) {
+            request.response().setStatusCode(HttpURLConnection.HTTP_NOT_FOUND).end();
+            return;
+        }
+
+        // Handlers block on DynamoDB, so they run on the worker pool, sized by quarkus.vertx.worker-pool-size, and
+        // never on the event loop
+        request.bodyHandler(body -> vertx.<APIGatewayProxyResponseEvent>executeBlocking(
+                promise -> promise.complete(handler.handleRequest(getEvent(request, body), null)),
+                false,
+                result -> {
+                    if (result.succeeded()) {
+                        write(request.response(), result.result());
+                    } else {
+                        log.errorf(result.cause(), "%s %s failed", request.method(), request.path());
+                        request.response().setStatusCode(HttpURLConnection.HTTP_INTERNAL_ERROR).end();
+                    }
+                }));
+    }
+
+    // The proxy event API Gateway would send; claims come from the identity header instead of an authorizer
+    private APIGatewayProxyRequestEvent getEvent(HttpServerRequest request, Buffer body) {
+        final var claims = new HashMap<String, String>();
+        identityHeader.map(request::getHeader).ifPresent(email -> claims.put("email", email));
+        final var context = new APIGatewayProxyRequestEvent.ProxyRequestContext();
+        context.setAuthorizer(Map.of("claims", claims));
+        final var queryParams = toMap(request.params());
+        return new APIGatewayProxyRequestEvent()
+                .withHttpMethod(request.method().name())
+                .withPath(request.path())
+                .withHeaders(toMap(request.headers()))
+                .withQueryStringParameters(queryParams.isEmpty() ? null : queryParams)
+                .withBody(body.length() == 0 ? null : body.toString(StandardCharsets.UTF_8))
+                .withIsBase64Encoded(false)
+                .withRequestContext(context);
+    }
+
+    private static void write(HttpServerResponse response, APIGatewayProxyResponseEvent result) {
+        response.setStatusCode(result.getStatusCode());
+        if (result.getHeaders() != null) {
+            result.getHeaders().forEach(response::putHeader);
+        }
+
+        final var body = result.getBody();
+        if (body == null) {
+            response.end();
+        } else if (Boolean.TRUE.equals(result.getIsBase64Encoded())) {
+            response.end(Buffer.buffer(Base64.getDecoder().decode(body)));
+        } else {
+            response.end(body);
+        }
+    }
+
+    private static Map<String, String> toMap(MultiMap values) {
+        final var map = new HashMap<String, String>();
+        for (var entry : values) {
+            map.put(entry.getKey(), entry.getValue());
+        }
+
+        return map;
+    }
+
+    // Beans may be container subclasses of the annotated handler class
+    private static String getName(Class<?> type) {
+        for (var current = type; current != null; current = current.getSuperclass()) {
+            final var named = current.getAnnotation(Named.class);
+            if (named != null) {
+                return named.value();
+            }
+        }
+
+        throw new IllegalStateException("Handler without @Named: " + type.getName());
+    }
+}
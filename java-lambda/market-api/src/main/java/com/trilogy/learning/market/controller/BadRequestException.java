@@ -0,0 +1,8 @@
+package com.trilogy.learning.market.controller;
+
+// A request parameter the caller got wrong, answered with 400 instead of 500
+class BadRequestException extends RuntimeException {
+    BadRequestException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -1,7 +1,6 @@
 package com.trilogy.learning.market.controller;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.trilogy.learning.market.repository.IOrderRepository;
 import lombok.AllArgsConstructor;
 
@@ -12,7 +11,6 @@ import java.util.Map;
 @AllArgsConstructor
 public class DeleteOrder extends AbstractApiGatewayLambda {
     private static final String ID_PARAM = "id";
-    private static final ObjectMapper objectMapper = new ObjectMapper();
 
     private final IOrderRepository orderRepository;
 
@@ -21,7 +19,7 @@ public class DeleteOrder extends AbstractApiGatewayLambda {
         if (queryParams.containsKey(ID_PARAM)) {
             final var id = queryParams.get(ID_PARAM);
             final var order = orderRepository.deleteOrder(id);
-            return objectMapper.writeValueAsString(order);
+            return serializationService.write(order);
         }
 
         return null;
@@ -1,7 +1,6 @@
 package com.trilogy.learning.market.controller;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.trilogy.learning.market.repository.IProductRepository;
 import lombok.AllArgsConstructor;
 
@@ -12,7 +11,6 @@ import java.util.Map;
 @AllArgsConstructor
 public class DeleteProduct extends AbstractApiGatewayLambda {
     private static final String ID_PARAM = "id";
-    private static final ObjectMapper objectMapper = new ObjectMapper();
 
     private IProductRepository productRepository;
 
@@ -21,7 +19,7 @@ public class DeleteProduct extends AbstractApiGatewayLambda {
         if (queryParams.containsKey(ID_PARAM)) {
             final var id = queryParams.get(ID_PARAM);
             final var product = productRepository.deleteProduct(id);
-            return objectMapper.writeValueAsString(product);
+            return serializationService.write(product);
         }
 
         return null;
@@ -1,39 +1,90 @@
 package com.trilogy.learning.market.controller;
 
-import com.trilogy.learning.market.repository.ICustomerRepository;
+import com.trilogy.learning.market.repository.ICustomerAsyncRepository;
 import com.trilogy.learning.market.repository.IOrderRepository;
+import com.trilogy.learning.market.repository.IProductRepository;
 import com.trilogy.learning.market.repository.dynamodb.entity.EntityType;
 import lombok.AllArgsConstructor;
+import lombok.Value;
 import lombok.extern.jbosslog.JBossLog;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 import software.amazon.awssdk.services.dynamodb.model.OperationType;
 import com.trilogy.learning.market.repository.dynamodb.entity.Metadata;
+import com.trilogy.learning.market.service.ProductCache;
 
 import javax.inject.Named;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.List;
+import java.util.concurrent.CompletionException;
 
 @Named("dynamodb-stream-handler")
 @JBossLog
 @AllArgsConstructor
-public class DynamoStreamHandler extends AbstractDynamoStreamLambda {
-    private ICustomerRepository customerRepository;
+public class DynamoStreamHandler extends AbstractDynamoStreamLambda<DynamoStreamHandler.OrderCountChange> {
+    private ICustomerAsyncRepository customerRepository;
     private IOrderRepository orderRepository;
+    private IProductRepository productRepository;
+    private ProductCache productCache;
 
     @Override
-    protected void handle(Map<String, AttributeValue> oldItem, Map<String,
+    protected OrderCountChange handle(Map<String, AttributeValue> oldItem, Map<String,
             AttributeValue> newItem, OperationType operationType) throws IOException {
-        final var entityType = getEntityType(newItem);
+        // REMOVE records carry only the old image
+        final var item = newItem != null ? newItem : oldItem;
+        final var entityType = getEntityType(item);
         if (entityType == EntityType.Order) {
-            final var order = orderRepository.getOrderFromItem(newItem);
+            final var order = orderRepository.getOrderFromItem(item);
             switch (operationType) {
                 case INSERT:
-                    customerRepository.incrementOrderCount(order.getCustomerEmail(), 1);
-                    break;
+                    return new OrderCountChange(order.getCustomerEmail(), 1);
                 case REMOVE:
-                    customerRepository.incrementOrderCount(order.getCustomerEmail(), -1);
+                    return new OrderCountChange(order.getCustomerEmail(), -1);
             }
+        } else if (entityType == EntityType.Product && operationType != OperationType.INSERT) {
+            final var product = productRepository.getProductFromItem(item);
+            productCache.invalidate(product.getId());
         }
+
+        return null;
+    }
+
+    // One update per customer instead of one per order record, all customers updated concurrently. Changes stay
+    // keyed by their stream record so those of a re-delivered batch that were already counted are skipped.
+    @Override
+    protected void completeBatch(String batch, List<HandledRecord<OrderCountChange>> changes) {
+        final var changesByCustomer = new HashMap<String, Map<String, Integer>>();
+        for (var change : changes) {
+            changesByCustomer.computeIfAbsent(change.getResult().getCustomerEmail(), k -> new LinkedHashMap<>())
+                    .put(change.getSequenceNumber(), change.getResult().getDelta());
+        }
+
+        final var updates = new ArrayList<CompletableFuture<?>>();
+        for (var customerChanges : changesByCustomer.entrySet()) {
+            updates.add(customerRepository.applyOrderCountChanges(customerChanges.getKey(), batch,
+                    customerChanges.getValue()));
+        }
+
+        log.debugf("Updating order count of %d customers", updates.size());
+        try {
+            CompletableFuture.allOf(updates.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw e;
+        }
+    }
+
+    @Value
+    static class OrderCountChange {
+        String customerEmail;
+        int delta;
     }
 
     private EntityType getEntityType(Map<String, AttributeValue> item) {
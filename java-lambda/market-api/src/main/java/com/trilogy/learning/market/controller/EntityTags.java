@@ -0,0 +1,58 @@
+package com.trilogy.learning.market.controller;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// Strong entity tags derived from the identity-encoded response body
+final class EntityTags {
+    private static final int HASH_BYTES = 16;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private EntityTags() {
+    }
+
+    static String of(String body) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        final var hash = digest.digest(body.getBytes(StandardCharsets.UTF_8));
+        final var tag = new StringBuilder(HASH_BYTES * 2 + 2).append('"');
+        for (var i = 0; i < HASH_BYTES; i++) {
+            tag.append(HEX[(hash[i] >> 4) & 0xf]).append(HEX[hash[i] & 0xf]);
+        }
+
+        return tag.append('"').toString();
+    }
+
+    // A compressed representation is a different entity, so it gets its own strong tag
+    static String withEncoding(String tag, String encoding) {
+        return tag.substring(0, tag.length() - 1) + "-" + encoding + "\"";
+    }
+
+    // If-None-Match uses weak comparison; a tag of another encoding of the same body is a different entity
+    static boolean matches(String ifNoneMatch, String tag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+
+        final var opaqueTag = getOpaqueTag(tag);
+        for (var candidate : ifNoneMatch.split(",")) {
+            final var value = candidate.trim();
+            if ("*".equals(value) || opaqueTag.equals(getOpaqueTag(value))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static String getOpaqueTag(String tag) {
+        final var value = tag.startsWith("W/") ? tag.substring(2) : tag;
+        return value.replace("\"", "");
+    }
+}
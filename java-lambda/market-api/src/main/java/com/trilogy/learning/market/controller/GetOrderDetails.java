@@ -1,7 +1,6 @@
 package com.trilogy.learning.market.controller;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.trilogy.learning.market.repository.IOrderRepository;
 import lombok.AllArgsConstructor;
 
@@ -12,16 +11,21 @@ import java.util.Map;
 @AllArgsConstructor
 public class GetOrderDetails extends AbstractApiGatewayLambda {
     private static final String ID_PARAM = "id";
-    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final String CACHE_CONTROL = "private, no-cache";
 
     private IOrderRepository orderRepository;
 
+    @Override
+    protected String getCacheControl() {
+        return CACHE_CONTROL;
+    }
+
     @Override
     protected String handle(Map<String, String> queryParams, String body) throws JsonProcessingException {
         if (queryParams.containsKey(ID_PARAM)) {
             final var customerId = queryParams.get(ID_PARAM);
             final var order = orderRepository.getByIdDetails(customerId);
-            return objectMapper.writeValueAsString(order);
+            return serializationService.write(order, getFields(queryParams));
         }
 
         return null;
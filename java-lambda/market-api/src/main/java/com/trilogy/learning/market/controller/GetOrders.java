@@ -1,7 +1,6 @@
 package com.trilogy.learning.market.controller;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.trilogy.learning.market.model.Order;
 import com.trilogy.learning.market.repository.IOrderRepository;
 import lombok.AllArgsConstructor;
@@ -16,30 +15,46 @@ public class GetOrders extends AbstractApiGatewayLambda {
     private static final String PRODUCT_ID_PARAM = "productId";
     private static final String STATUS_ID_PARAM = "status";
     private static final String MONTH_ID_PARAM = "month";
-    private static final ObjectMapper objectMapper = new ObjectMapper();
 
     private IOrderRepository orderRepository;
 
     @Override
     protected String handle(Map<String, String> queryParams, String body) throws JsonProcessingException {
+        final var paged = isPaged(queryParams);
+        final var limit = getLimit(queryParams);
+        final var nextToken = queryParams.get(NEXT_TOKEN_PARAM);
+        final var fields = getFields(queryParams);
         if (queryParams.containsKey(CUSTOMER_ID_PARAM)) {
             final var customerId = queryParams.get(CUSTOMER_ID_PARAM);
-            final var orders = orderRepository.getByCustomerEmail(customerId);
-            return objectMapper.writeValueAsString(orders);
+            if (paged) {
+                final var page = getPage(() -> orderRepository.getByCustomerEmail(customerId, limit, nextToken,
+                        fields));
+                return serializationService.write(page, fields);
+            }
+
+            final var orders = orderRepository.getByCustomerEmail(customerId, fields);
+            return serializationService.write(orders, fields);
         } else if (queryParams.containsKey(PRODUCT_ID_PARAM)) {
             final var productId = queryParams.get(PRODUCT_ID_PARAM);
-            final var orders = orderRepository.getByProductId(productId);
-            return objectMapper.writeValueAsString(orders);
+            if (paged) {
+                final var page = getPage(() -> orderRepository.getByProductId(productId, limit, nextToken, fields));
+                return serializationService.write(page, fields);
+            }
+
+            final var orders = orderRepository.getByProductId(productId, fields);
+            return serializationService.write(orders, fields);
         } else if (queryParams.containsKey(STATUS_ID_PARAM)) {
             final var statusStr = queryParams.get(STATUS_ID_PARAM).toUpperCase();
-            var month = "";
-            if (queryParams.containsKey(MONTH_ID_PARAM)) {
-                month = queryParams.get(MONTH_ID_PARAM);
+            final var month = queryParams.getOrDefault(MONTH_ID_PARAM, "");
+            final var status = Order.Status.valueOf(statusStr);
+            if (paged) {
+                final var page = getPage(() -> orderRepository.getByStatus(status, month, limit, nextToken,
+                        fields));
+                return serializationService.write(page, fields);
             }
 
-            final var status = Order.Status.valueOf(statusStr);
-            final var orders = orderRepository.getByStatus(status, month);
-            return objectMapper.writeValueAsString(orders);
+            final var orders = orderRepository.getByStatus(status, month, fields);
+            return serializationService.write(orders, fields);
         }
 
         return null;
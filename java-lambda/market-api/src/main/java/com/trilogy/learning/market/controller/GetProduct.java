@@ -1,7 +1,6 @@
 package com.trilogy.learning.market.controller;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.trilogy.learning.market.repository.IProductRepository;
 import lombok.AllArgsConstructor;
 
@@ -12,16 +11,22 @@ import java.util.Map;
 @AllArgsConstructor
 public class GetProduct extends AbstractApiGatewayLambda {
     private static final String ID_PARAM = "id";
-    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final String CACHE_CONTROL = "public, max-age=60";
 
     private IProductRepository productRepository;
 
+    @Override
+    protected String getCacheControl() {
+        return CACHE_CONTROL;
+    }
+
     @Override
     protected String handle(Map<String, String> queryParams, String body) throws JsonProcessingException {
         if (queryParams.containsKey(ID_PARAM)) {
             final var id = queryParams.get(ID_PARAM);
-            final var item = productRepository.getById(id);
-            return objectMapper.writeValueAsString(item);
+            final var fields = getFields(queryParams);
+            final var item = productRepository.getById(id, fields);
+            return serializationService.write(item, fields);
         }
 
         return null;
@@ -1,7 +1,6 @@
 package com.trilogy.learning.market.controller;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.trilogy.learning.market.repository.IProductRepository;
 import lombok.AllArgsConstructor;
 
@@ -13,19 +12,32 @@ import java.util.Map;
 public class GetProducts extends AbstractApiGatewayLambda {
     private static final String ID_PARAM = "category";
     private static final String OUT_OF_STOCK_PARAM = "outOfStock";
-    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final String CACHE_CONTROL = "public, max-age=60";
 
     private IProductRepository productRepository;
 
+    @Override
+    protected String getCacheControl() {
+        return CACHE_CONTROL;
+    }
+
     @Override
     protected String handle(Map<String, String> queryParams, String body) throws JsonProcessingException {
+        final var fields = getFields(queryParams);
         if (queryParams.containsKey(ID_PARAM)) {
             final var id = queryParams.get(ID_PARAM);
-            final var items = productRepository.getByCategory(id);
-            return objectMapper.writeValueAsString(items);
+            final var items = productRepository.getByCategory(id, fields);
+            return serializationService.write(items, fields);
         } else if (queryParams.containsKey(OUT_OF_STOCK_PARAM)) {
-            final var items = productRepository.getIfOutOfStock();
-            return objectMapper.writeValueAsString(items);
+            if (isPaged(queryParams)) {
+                final var limit = getLimit(queryParams);
+                final var page = getPage(() -> productRepository.getIfOutOfStock(limit,
+                        queryParams.get(NEXT_TOKEN_PARAM), fields));
+                return serializationService.write(page, fields);
+            }
+
+            final var items = productRepository.getIfOutOfStock(fields);
+            return serializationService.write(items, fields);
         }
 
         return null;
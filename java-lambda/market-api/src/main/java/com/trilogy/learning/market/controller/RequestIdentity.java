@@ -0,0 +1,14 @@
+package com.trilogy.learning.market.controller;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.enterprise.context.RequestScoped;
+
+// The caller of the request being handled; handlers are shared by concurrent requests in server mode
+@RequestScoped
+@Getter
+@Setter
+class RequestIdentity {
+    private String userEmail;
+}
@@ -2,6 +2,7 @@ package com.trilogy.learning.market.model;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import io.quarkus.runtime.annotations.RegisterForReflection;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -13,6 +14,8 @@ import java.io.StringWriter;
 @AllArgsConstructor
 @RegisterForReflection
 public class ErrorMessage {
+    private static final ObjectWriter writer = new ObjectMapper().writerFor(ErrorMessage.class);
+
     private String message;
     private String stackTrace;
 
@@ -25,9 +28,8 @@ public class ErrorMessage {
     }
 
     public static String asJson(Exception e) {
-        final var objectMapper = new ObjectMapper();
         try {
-            return objectMapper.writeValueAsString(new ErrorMessage(e));
+            return writer.writeValueAsString(new ErrorMessage(e));
         } catch (JsonProcessingException ex) {
             return "{\"error\":\"unknown\"}";
         }
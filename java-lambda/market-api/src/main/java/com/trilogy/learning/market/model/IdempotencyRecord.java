@@ -0,0 +1,18 @@
+package com.trilogy.learning.market.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class IdempotencyRecord {
+    public enum Status {
+        IN_PROGRESS,
+        COMPLETED
+    }
+
+    private String key;
+    private Status status;
+    private String requestHash;
+    private String response;
+}
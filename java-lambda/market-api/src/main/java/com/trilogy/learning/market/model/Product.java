@@ -9,6 +9,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.math.BigDecimal;
+import java.util.Objects;
 import java.util.Optional;
 
 @Data
@@ -16,7 +17,7 @@ import java.util.Optional;
 @RegisterForReflection
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class Product extends Metadata {
-    static final String OUT_OF_STOCK_MARKER = "OUT_OF_STOCK";
+    public static final String OUT_OF_STOCK_MARKER = "OUT_OF_STOCK";
 
     public Product() {
         outOfStock = false;
@@ -28,13 +29,20 @@ public class Product extends Metadata {
     private String category;
     private Boolean outOfStock;
 
-    @JsonIgnore
-    public String getOutOfStockMarker() {
-        return Optional.ofNullable(getOutOfStock()).orElse(false) ? OUT_OF_STOCK_MARKER : null;
+    // The sparse out-of-stock index is spread over shards partitions, picked by product id
+    public String getOutOfStockMarker(int shards) {
+        if (!Optional.ofNullable(getOutOfStock()).orElse(false)) {
+            return null;
+        }
+
+        return OUT_OF_STOCK_MARKER + "#" + Math.floorMod(Objects.hashCode(id), shards);
     }
 
+    // Accepts the unsharded marker of products written before the index was sharded
+    @JsonIgnore
     public void setOutOfStockMarker(String marker) {
-        setOutOfStock(OUT_OF_STOCK_MARKER.equals(marker) ? true : false);
+        setOutOfStock(marker != null
+                && (marker.equals(OUT_OF_STOCK_MARKER) || marker.startsWith(OUT_OF_STOCK_MARKER + "#")));
     }
 
     @JsonIgnore
@@ -0,0 +1,19 @@
+package com.trilogy.learning.market.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+@RegisterForReflection
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ResultPage<T> {
+    List<T> items;
+
+    // Opaque continuation token, null when there are no more items
+    String nextToken;
+}
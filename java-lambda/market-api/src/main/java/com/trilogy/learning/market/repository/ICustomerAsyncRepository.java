@@ -0,0 +1,23 @@
+package com.trilogy.learning.market.repository;
+
+import com.trilogy.learning.market.model.Customer;
+import com.trilogy.learning.market.requests.UpdateCustomerRequest;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+public interface ICustomerAsyncRepository {
+    CompletableFuture<Customer> getById(String email);
+
+    CompletableFuture<Customer> getByOrderId(String orderId);
+
+    CompletableFuture<Void> addCustomer(Customer customer);
+
+    CompletableFuture<Customer> updateCustomer(UpdateCustomerRequest customer);
+
+    CompletableFuture<Customer> incrementOrderCount(String id, Integer increment);
+
+    CompletableFuture<Void> applyOrderCountChanges(String id, String batch, Map<String, Integer> changesByRecord);
+
+    CompletableFuture<Void> deleteCustomer(String id);
+}
@@ -3,9 +3,13 @@ package com.trilogy.learning.market.repository;
 import com.trilogy.learning.market.model.Customer;
 import com.trilogy.learning.market.requests.UpdateCustomerRequest;
 
+import java.util.Set;
+
 public interface ICustomerRepository {
     Customer getById(String email);
 
+    Customer getById(String email, Set<String> fields);
+
     Customer getByOrderId(String orderId);
 
     void addCustomer(Customer customer);
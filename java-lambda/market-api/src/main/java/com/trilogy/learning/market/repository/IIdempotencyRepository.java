@@ -0,0 +1,13 @@
+package com.trilogy.learning.market.repository;
+
+import com.trilogy.learning.market.model.IdempotencyRecord;
+
+public interface IIdempotencyRepository {
+    // Returns null when the key was claimed for this request, otherwise the record already holding it. The owner
+    // token identifies the claim, so only the request holding it can complete or release the key.
+    IdempotencyRecord claim(String key, String requestHash, String owner);
+
+    void complete(String key, String owner, String requestHash, String response);
+
+    void release(String key, String owner);
+}
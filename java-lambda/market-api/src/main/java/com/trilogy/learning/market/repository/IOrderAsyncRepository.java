@@ -0,0 +1,33 @@
+package com.trilogy.learning.market.repository;
+
+import com.trilogy.learning.market.model.Order;
+import com.trilogy.learning.market.model.ResultPage;
+import com.trilogy.learning.market.requests.UpdateOrderRequest;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public interface IOrderAsyncRepository extends ITableRepository {
+    CompletableFuture<Order> getById(String id);
+
+    CompletableFuture<Order> getByIdDetails(String id);
+
+    CompletableFuture<List<Order>> getByCustomerEmail(String email);
+
+    CompletableFuture<ResultPage<Order>> getByCustomerEmail(String email, Integer limit, String nextToken);
+
+    CompletableFuture<List<Order>> getByProductId(String productId);
+
+    CompletableFuture<ResultPage<Order>> getByProductId(String productId, Integer limit, String nextToken);
+
+    CompletableFuture<List<Order>> getByStatus(Order.Status status, String month);
+
+    CompletableFuture<ResultPage<Order>> getByStatus(Order.Status status, String month,
+                                                     Integer limit, String nextToken);
+
+    CompletableFuture<Void> addOrder(Order order);
+
+    CompletableFuture<Order> updateOrder(UpdateOrderRequest order);
+
+    CompletableFuture<Order> deleteOrder(String id);
+}
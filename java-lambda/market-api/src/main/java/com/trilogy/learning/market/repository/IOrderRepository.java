@@ -1,6 +1,7 @@
 package com.trilogy.learning.market.repository;
 
 import com.trilogy.learning.market.model.Order;
+import com.trilogy.learning.market.model.ResultPage;
 import com.trilogy.learning.market.requests.UpdateOrderRequest;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 import software.amazon.awssdk.services.dynamodb.model.ConditionCheck;
@@ -8,6 +9,7 @@ import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public interface IOrderRepository extends ITableRepository {
     Order getById(String id);
@@ -16,10 +18,23 @@ public interface IOrderRepository extends ITableRepository {
 
     List<Order> getByCustomerEmail(String email);
 
+    List<Order> getByCustomerEmail(String email, Set<String> fields);
+
+    ResultPage<Order> getByCustomerEmail(String email, Integer limit, String nextToken, Set<String> fields);
+
     List<Order> getByProductId(String productId);
 
+    List<Order> getByProductId(String productId, Set<String> fields);
+
+    ResultPage<Order> getByProductId(String productId, Integer limit, String nextToken, Set<String> fields);
+
     List<Order> getByStatus(Order.Status status, String month);
 
+    List<Order> getByStatus(Order.Status status, String month, Set<String> fields);
+
+    ResultPage<Order> getByStatus(Order.Status status, String month, Integer limit, String nextToken,
+                                  Set<String> fields);
+
     void addOrder(Order order);
 
     Order updateOrder(UpdateOrderRequest order);
@@ -0,0 +1,10 @@
+package com.trilogy.learning.market.repository;
+
+import com.trilogy.learning.market.model.Payment;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public interface IPaymentAsyncRepository {
+    CompletableFuture<List<Payment>> getByCustomerId(String authId, String customerId);
+}
@@ -9,5 +9,5 @@ import java.util.List;
 public interface IPaymentRepository {
     TransactWriteItem getAddPaymentTransactRequest(String customerId, BigDecimal amount);
 
-    List<Payment> getByCustomerId(String customerId);
+    List<Payment> getByCustomerId(String authId, String customerId);
 }
@@ -0,0 +1,24 @@
+package com.trilogy.learning.market.repository;
+
+import com.trilogy.learning.market.model.Product;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+public interface IProductAsyncRepository {
+    CompletableFuture<Product> getById(String id);
+
+    CompletableFuture<Map<String, Product>> getByIds(Set<String> ids);
+
+    CompletableFuture<List<Product>> getByCategory(String category);
+
+    CompletableFuture<List<Product>> getIfOutOfStock();
+
+    CompletableFuture<Void> addProduct(Product product);
+
+    CompletableFuture<Product> updateProduct(Product product);
+
+    CompletableFuture<Product> deleteProduct(String id);
+}
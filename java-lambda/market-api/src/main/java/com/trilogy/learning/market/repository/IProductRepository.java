@@ -1,6 +1,8 @@
 package com.trilogy.learning.market.repository;
 
 import com.trilogy.learning.market.model.Product;
+import com.trilogy.learning.market.model.ResultPage;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 
 import java.util.List;
 import java.util.Map;
@@ -9,15 +11,25 @@ import java.util.Set;
 public interface IProductRepository {
     Product getById(String id);
 
+    Product getById(String id, Set<String> fields);
+
     Map<String, Product> getByIds(Set<String> ids);
 
     List<Product> getByCategory(String category);
 
+    List<Product> getByCategory(String category, Set<String> fields);
+
     List<Product> getIfOutOfStock();
 
+    List<Product> getIfOutOfStock(Set<String> fields);
+
+    ResultPage<Product> getIfOutOfStock(Integer limit, String nextToken, Set<String> fields);
+
     void addProduct(Product product);
 
     Product updateProduct(Product product);
 
     Product deleteProduct(String id);
+
+    Product getProductFromItem(Map<String, AttributeValue> item);
 }
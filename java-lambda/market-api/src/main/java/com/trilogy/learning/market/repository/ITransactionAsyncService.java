@@ -0,0 +1,11 @@
+package com.trilogy.learning.market.repository;
+
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsResponse;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
+public interface ITransactionAsyncService {
+    CompletableFuture<TransactWriteItemsResponse> commit(Collection<TransactWriteItem> requests);
+}
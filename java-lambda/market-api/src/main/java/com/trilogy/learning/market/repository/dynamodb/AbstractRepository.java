@@ -2,10 +2,12 @@ package com.trilogy.learning.market.repository.dynamodb;
 
 import java.math.BigDecimal;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 import com.trilogy.learning.market.repository.ITableRepository;
 import lombok.extern.jbosslog.JBossLog;
 import org.joda.time.DateTime;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 
@@ -22,6 +24,11 @@ public abstract class AbstractRepository<T> implements ITableRepository {
     protected static final String GSI2_PK_ATTRIBUTE= "GSI2PK";
     protected static final String GSI2_SK_ATTRIBUTE = "GSI2SK";
     protected static final String DATA_ATTRIBUTE = "Data";
+    // Attributes the INCLUDE indexes project, keys included
+    protected static final List<String> GSI1_ATTRIBUTES =
+            List.of(PK_ATTRIBUTE, SK_ATTRIBUTE, GSI1_PK_ATTRIBUTE, GSI1_SK_ATTRIBUTE, DATA_ATTRIBUTE);
+    protected static final List<String> GSI2_ATTRIBUTES =
+            List.of(PK_ATTRIBUTE, SK_ATTRIBUTE, GSI2_PK_ATTRIBUTE, GSI2_SK_ATTRIBUTE);
 
     protected final DynamoDbClient dynamoDbClient;
 
@@ -35,36 +42,51 @@ public abstract class AbstractRepository<T> implements ITableRepository {
     }
 
     protected GetItemResponse getItem(String id) {
+        return getItem(id, null);
+    }
+
+    protected GetItemResponse getItem(String id, Projection projection) {
+        return dynamoDbClient.getItem(Projection.apply(getItemRequest(id), projection));
+    }
+
+    protected GetItemRequest getItemRequest(String id) {
         final var keyMap = getEntityKeyMap(id);
-        final var request = GetItemRequest.builder()
+        return GetItemRequest.builder()
                 .tableName(getTableName())
                 .key(keyMap)
                 .build();
-        return dynamoDbClient.getItem(request);
     }
 
-    protected BatchGetItemResponse getItemsByIds(Set<String> ids) {
+    protected List<Map<String, AttributeValue>> getItemsByIds(Set<String> ids) {
+        final var keys = getEntityKeys(ids);
+        if (keys.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        return BatchExecutor.getItems(dynamoDbClient, getTableName(), keys);
+    }
+
+    protected List<Map<String, AttributeValue>> getEntityKeys(Set<String> ids) {
         final var keys = new ArrayList<Map<String, AttributeValue>>();
         for (var id : ids) {
             final var keyMap = getEntityKeyMap(id);
             keys.add(keyMap);
         }
 
-        var requestsForTable = KeysAndAttributes.builder().keys(keys).build();
-        var requests = new HashMap<String, KeysAndAttributes>();
-        requests.put(getTableName(), requestsForTable);
-        final var request = BatchGetItemRequest.builder().requestItems(requests).build();
-        return dynamoDbClient.batchGetItem(request);
+        return keys;
     }
 
     protected PutItemResponse putNewItem(Map<String, AttributeValue> item) {
-        final var request = PutItemRequest.builder()
+        return dynamoDbClient.putItem(getPutNewItemRequest(item));
+    }
+
+    protected PutItemRequest getPutNewItemRequest(Map<String, AttributeValue> item) {
+        return PutItemRequest.builder()
                 .tableName(getTableName())
                 .conditionExpression("attribute_not_exists(" + PK_ATTRIBUTE + ")")
                 .item(item)
                 .returnValues(ReturnValue.NONE)
                 .build();
-        return dynamoDbClient.putItem(request);
     }
 
     protected PutItemResponse replaceItem(Map<String, AttributeValue> item) {
@@ -76,7 +98,11 @@ public abstract class AbstractRepository<T> implements ITableRepository {
         return dynamoDbClient.putItem(request);
     }
 
-    protected BatchWriteItemResponse putItems(List<Map<String, AttributeValue>> items) {
+    protected List<ConsumedCapacity> putItems(List<Map<String, AttributeValue>> items) {
+        return BatchExecutor.writeItems(dynamoDbClient, getTableName(), getPutRequests(items));
+    }
+
+    protected List<WriteRequest> getPutRequests(List<Map<String, AttributeValue>> items) {
         var requests = new ArrayList<WriteRequest>();
         for (var item : items) {
             var putRequest = PutRequest.builder().item(item).build();
@@ -84,17 +110,30 @@ public abstract class AbstractRepository<T> implements ITableRepository {
             requests.add(request);
         }
 
-        var requestItems = new HashMap<String, Collection<WriteRequest>>();
-        requestItems.put(getTableName(), requests);
-        final var request = BatchWriteItemRequest.builder()
-                .requestItems(requestItems).build();
-        return dynamoDbClient.batchWriteItem(request);
+        return requests;
+    }
+
+    protected List<WriteRequest> getDeleteRequests(List<Map<String, AttributeValue>> keys) {
+        final var requests = new ArrayList<WriteRequest>();
+        for (var key : keys) {
+            final var deleteRequest = DeleteRequest.builder().key(key).build();
+            requests.add(WriteRequest.builder().deleteRequest(deleteRequest).build());
+        }
+
+        return requests;
     }
 
     protected UpdateItemResponse updateItem(Map<String, AttributeValue> key, String updateExpression,
                                             Map<String, String> expressionNames,
                                             Map<String, AttributeValue> expressionValues) {
-        final var request = UpdateItemRequest.builder()
+        return dynamoDbClient.updateItem(getUpdateItemRequest(key, updateExpression,
+                expressionNames, expressionValues));
+    }
+
+    protected UpdateItemRequest getUpdateItemRequest(Map<String, AttributeValue> key, String updateExpression,
+                                                     Map<String, String> expressionNames,
+                                                     Map<String, AttributeValue> expressionValues) {
+        return UpdateItemRequest.builder()
                 .tableName(getTableName())
                 .key(key)
                 .updateExpression(updateExpression)
@@ -102,17 +141,18 @@ public abstract class AbstractRepository<T> implements ITableRepository {
                 .expressionAttributeValues(expressionValues)
                 .returnValues(ReturnValue.ALL_NEW)
                 .build();
-        return dynamoDbClient.updateItem(request);
     }
 
     protected DeleteItemResponse deleteItem(Map<String, AttributeValue> key) {
+        return dynamoDbClient.deleteItem(getDeleteItemRequest(key));
+    }
 
-        final var request = DeleteItemRequest.builder()
+    protected DeleteItemRequest getDeleteItemRequest(Map<String, AttributeValue> key) {
+        return DeleteItemRequest.builder()
                 .tableName(getTableName())
                 .key(key)
                 .returnValues(ReturnValue.ALL_OLD)
                 .build();
-        return dynamoDbClient.deleteItem(request);
     }
 
     protected Map<String, AttributeValue> getKeyAttributes(String pk, String sk) {
@@ -122,33 +162,96 @@ public abstract class AbstractRepository<T> implements ITableRepository {
         return key;
     }
 
+    protected List<Map<String, AttributeValue>> queryParent(String parentKeyAttribute, String parentKey,
+                                                            String sortAttribute, String sortPrefix) {
+        return queryParent(parentKeyAttribute, parentKey, sortAttribute, sortPrefix, null);
+    }
+
+    protected List<Map<String, AttributeValue>> queryParent(String parentKeyAttribute, String parentKey,
+                                                            String sortAttribute, String sortPrefix,
+                                                            Projection projection) {
+        return queryAll(Projection.apply(getParentQueryRequest(parentKeyAttribute, parentKey,
+                sortAttribute, sortPrefix, null, null), projection));
+    }
+
     protected QueryResponse queryParent(String parentKeyAttribute, String parentKey,
-                                           String sortAttribute, String sortPrefix) {
-        final var keyConditions = new HashMap<String, Condition>();
-        keyConditions.put(parentKeyAttribute, getCondition(ComparisonOperator.EQ, parentKey));
-        keyConditions.put(sortAttribute, getCondition(ComparisonOperator.BEGINS_WITH, sortPrefix));
-        return query(keyConditions);
+                                        String sortAttribute, String sortPrefix,
+                                        Integer limit, String nextToken, Projection projection) {
+        return dynamoDbClient.query(Projection.apply(getParentQueryRequest(parentKeyAttribute, parentKey,
+                sortAttribute, sortPrefix, limit, nextToken), projection));
     }
 
-    protected QueryResponse queryPartition(String key) {
-        final var keyConditions = new HashMap<String, Condition>();
-        keyConditions.put(PK_ATTRIBUTE, getCondition(ComparisonOperator.EQ, key));
-        return query(keyConditions);
+    protected List<Map<String, AttributeValue>> queryPartition(String key) {
+        return queryAll(getPartitionQueryRequest(PK_ATTRIBUTE, key, null, null, null));
     }
 
-    protected QueryResponse queryGsi1Partition(String key) {
-        final var keyConditions = new HashMap<String, Condition>();
-        keyConditions.put(GSI1_PK_ATTRIBUTE, getCondition(ComparisonOperator.EQ, key));
-        return queryGsi1(keyConditions);
+    protected List<Map<String, AttributeValue>> queryGsi1Partition(String key) {
+        return queryGsi1Partition(key, null);
     }
 
-    protected Condition getCondition(ComparisonOperator operator, String value) {
-        final var attributeValueList = new ArrayList<AttributeValue>(1);
-        attributeValueList.add(AttributeValue.builder().s(value).build());
-        return Condition.builder()
-                .attributeValueList(attributeValueList)
-                .comparisonOperator(operator)
-                .build();
+    protected List<Map<String, AttributeValue>> queryGsi1Partition(String key, Projection projection) {
+        return queryAll(Projection.apply(getPartitionQueryRequest(GSI1_PK_ATTRIBUTE, key, GSI1, null, null),
+                getGsi1Projection(projection)));
+    }
+
+    protected QueryResponse queryGsi1Partition(String key, Integer limit, String nextToken, Projection projection) {
+        return dynamoDbClient.query(Projection.apply(getPartitionQueryRequest(GSI1_PK_ATTRIBUTE, key, GSI1,
+                limit, nextToken), getGsi1Projection(projection)));
+    }
+
+    // One request per write shard of a GSI1 partition, merged on GSI1SK
+    protected ShardedQuery getGsi1ShardedQuery(List<String> keys, Projection projection) {
+        return getShardedQuery(GSI1, GSI1_PK_ATTRIBUTE, GSI1_SK_ATTRIBUTE, keys, getGsi1Projection(projection));
+    }
+
+    // One request per write shard of a GSI2 partition, merged on GSI2SK
+    protected ShardedQuery getGsi2ShardedQuery(List<String> keys, Projection projection) {
+        return getShardedQuery(GSI2, GSI2_PK_ATTRIBUTE, GSI2_SK_ATTRIBUTE, keys,
+                projection == null ? null : projection.restrictTo(GSI2_ATTRIBUTES));
+    }
+
+    private ShardedQuery getShardedQuery(String indexName, String keyAttribute, String sortAttribute,
+                                         List<String> keys, Projection projection) {
+        final var keyAttributes = List.of(PK_ATTRIBUTE, SK_ATTRIBUTE, keyAttribute, sortAttribute);
+        final var keyProjection = projection == null ? null : projection.with(keyAttributes);
+        final var requests = new ArrayList<QueryRequest>(keys.size());
+        for (var key : keys) {
+            requests.add(Projection.apply(getPartitionQueryRequest(keyAttribute, key, indexName, null, null),
+                    keyProjection));
+        }
+
+        return new ShardedQuery(requests, sortAttribute, keyAttributes);
+    }
+
+    private Projection getGsi1Projection(Projection projection) {
+        return projection == null ? null : projection.restrictTo(GSI1_ATTRIBUTES);
+    }
+
+    protected QueryRequest getParentQueryRequest(String parentKeyAttribute, String parentKey,
+                                                 String sortAttribute, String sortPrefix,
+                                                 Integer limit, String nextToken) {
+        return getQueryRequest("#pk = :pk AND begins_with(#sk, :sk)",
+                Map.of("#pk", parentKeyAttribute, "#sk", sortAttribute),
+                Map.of(":pk", getStringValue(parentKey), ":sk", getStringValue(sortPrefix)),
+                null, limit, nextToken);
+    }
+
+    protected QueryRequest getPartitionQueryRequest(String keyAttribute, String key, String indexName,
+                                                    Integer limit, String nextToken) {
+        return getQueryRequest("#pk = :pk", Map.of("#pk", keyAttribute), Map.of(":pk", getStringValue(key)),
+                indexName, limit, nextToken);
+    }
+
+    protected String getNextToken(QueryResponse response) {
+        if (!response.hasLastEvaluatedKey()) {
+            return null;
+        }
+
+        return PageToken.encode(response.lastEvaluatedKey());
+    }
+
+    protected AttributeValue getStringValue(String value) {
+        return AttributeValue.builder().s(value).build();
     }
 
     protected String getSubValueOrDefault(String[] items, Integer index, String defaultValue) {
@@ -319,21 +422,47 @@ public abstract class AbstractRepository<T> implements ITableRepository {
 
     protected abstract String getKeyPrefix();
 
-    private QueryResponse query(Map<String, Condition> keyConditions) {
-        final var request = QueryRequest.builder()
-                .tableName(getTableName())
-                .keyConditions(keyConditions)
-                .build();
-        return dynamoDbClient.query(request);
+    // Follows LastEvaluatedKey until the whole partition has been read
+    protected List<Map<String, AttributeValue>> queryAll(QueryRequest request) {
+        final var items = new ArrayList<Map<String, AttributeValue>>();
+        dynamoDbClient.queryPaginator(request).items().forEach(items::add);
+        return items;
+    }
+
+    protected List<Map<String, AttributeValue>> queryAll(ShardedQuery query) {
+        return BatchExecutor.join(query.queryAll(request -> BatchExecutor.supplyAsync(() -> queryAll(request))));
     }
 
-    private QueryResponse queryGsi1(Map<String, Condition> keyConditions) {
-        final var request = QueryRequest.builder()
+    protected ShardedQuery.Page queryPage(ShardedQuery query, Integer limit, String nextToken) {
+        return BatchExecutor.join(query.queryPage(
+                request -> BatchExecutor.supplyAsync(() -> dynamoDbClient.query(request)), limit, nextToken));
+    }
+
+    static CompletableFuture<List<Map<String, AttributeValue>>> queryAll(DynamoDbAsyncClient dynamoDbClient,
+                                                                      QueryRequest request) {
+        final var items = new ArrayList<Map<String, AttributeValue>>();
+        return dynamoDbClient.queryPaginator(request).items()
+                .subscribe(items::add)
+                .thenApply(v -> items);
+    }
+
+    // Key conditions are expressions so that projection expressions can be added to the same request
+    private QueryRequest getQueryRequest(String keyConditionExpression, Map<String, String> expressionNames,
+                                         Map<String, AttributeValue> expressionValues, String indexName,
+                                         Integer limit, String nextToken) {
+        if (limit != null && limit <= 0) {
+            throw new IllegalArgumentException("limit");
+        }
+
+        return QueryRequest.builder()
                 .tableName(getTableName())
-                .keyConditions(keyConditions)
-                .indexName(GSI1)
+                .keyConditionExpression(keyConditionExpression)
+                .expressionAttributeNames(expressionNames)
+                .expressionAttributeValues(expressionValues)
+                .indexName(indexName)
+                .limit(limit)
+                .exclusiveStartKey(PageToken.decode(nextToken))
                 .build();
-        return dynamoDbClient.query(request);
     }
 
     private Map<String, AttributeValue> getEntityKeyMap(String id) {
@@ -0,0 +1,293 @@
+package com.trilogy.learning.market.repository.dynamodb;
+
+import lombok.extern.jbosslog.JBossLog;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static java.lang.String.format;
+
+// Splits batch requests into DynamoDB sized chunks, runs them concurrently
+// and re-drives unprocessed keys with jittered exponential backoff
+@JBossLog
+final class BatchExecutor {
+    static final int MAX_GET_BATCH_SIZE = 100;
+    static final int MAX_WRITE_BATCH_SIZE = 25;
+
+    private static final int MAX_ATTEMPTS = 8;
+    private static final long BASE_DELAY_MILLIS = 25;
+    private static final long MAX_DELAY_MILLIS = 1000;
+    private static final int POOL_SIZE = 8;
+    private static final ExecutorService executor = Executors.newFixedThreadPool(POOL_SIZE, runnable -> {
+        final var thread = new Thread(runnable, "dynamodb-batch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private BatchExecutor() {
+    }
+
+    static List<Map<String, AttributeValue>> getItems(DynamoDbClient dynamoDbClient, String tableName,
+                                                      List<Map<String, AttributeValue>> keys) {
+        final var chunks = split(keys, MAX_GET_BATCH_SIZE);
+        if (chunks.size() == 1) {
+            return getChunk(dynamoDbClient, tableName, chunks.get(0));
+        }
+
+        final var futures = new ArrayList<CompletableFuture<List<Map<String, AttributeValue>>>>();
+        for (var chunk : chunks) {
+            futures.add(CompletableFuture.supplyAsync(() -> getChunk(dynamoDbClient, tableName, chunk), executor));
+        }
+
+        final var items = new ArrayList<Map<String, AttributeValue>>(keys.size());
+        for (var future : futures) {
+            items.addAll(join(future));
+        }
+
+        return items;
+    }
+
+    // Returns the capacity consumed by every chunk including its retries
+    static List<ConsumedCapacity> writeItems(DynamoDbClient dynamoDbClient, String tableName,
+                                             List<WriteRequest> requests) {
+        final var chunks = split(requests, MAX_WRITE_BATCH_SIZE);
+        if (chunks.size() == 1) {
+            return List.of(writeChunk(dynamoDbClient, tableName, chunks.get(0)));
+        }
+
+        final var futures = new ArrayList<CompletableFuture<ConsumedCapacity>>();
+        for (var chunk : chunks) {
+            futures.add(CompletableFuture.supplyAsync(() -> writeChunk(dynamoDbClient, tableName, chunk), executor));
+        }
+
+        final var capacities = new ArrayList<ConsumedCapacity>(futures.size());
+        for (var future : futures) {
+            capacities.add(join(future));
+        }
+
+        return capacities;
+    }
+
+    static CompletableFuture<List<Map<String, AttributeValue>>> getItemsAsync(
+            DynamoDbAsyncClient dynamoDbClient, String tableName, List<Map<String, AttributeValue>> keys) {
+        final var futures = new ArrayList<CompletableFuture<List<Map<String, AttributeValue>>>>();
+        for (var chunk : split(keys, MAX_GET_BATCH_SIZE)) {
+            final var requestItems = Map.of(tableName, KeysAndAttributes.builder().keys(chunk).build());
+            futures.add(getChunkAsync(dynamoDbClient, tableName, requestItems, 0, new ArrayList<>()));
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(v -> {
+            final var items = new ArrayList<Map<String, AttributeValue>>(keys.size());
+            for (var future : futures) {
+                items.addAll(future.join());
+            }
+
+            return items;
+        });
+    }
+
+    static CompletableFuture<List<ConsumedCapacity>> writeItemsAsync(DynamoDbAsyncClient dynamoDbClient,
+                                                                     String tableName,
+                                                                     List<WriteRequest> requests) {
+        final var futures = new ArrayList<CompletableFuture<ConsumedCapacity>>();
+        for (var chunk : split(requests, MAX_WRITE_BATCH_SIZE)) {
+            futures.add(writeChunkAsync(dynamoDbClient, tableName, Map.of(tableName, chunk), chunk.size(), 0, 0.0));
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(v -> {
+            final var capacities = new ArrayList<ConsumedCapacity>(futures.size());
+            for (var future : futures) {
+                capacities.add(future.join());
+            }
+
+            return capacities;
+        });
+    }
+
+    // Runs a blocking call on the batch pool, for fan-outs of independent requests
+    static <R> CompletableFuture<R> supplyAsync(Supplier<R> call) {
+        return CompletableFuture.supplyAsync(call, executor);
+    }
+
+    static <E> List<List<E>> split(List<E> values, int size) {
+        final var chunks = new ArrayList<List<E>>();
+        for (var i = 0; i < values.size(); i += size) {
+            chunks.add(values.subList(i, Math.min(i + size, values.size())));
+        }
+
+        return chunks;
+    }
+
+    static long getBackoffDelay(int attempt) {
+        final var ceiling = Math.min(MAX_DELAY_MILLIS, BASE_DELAY_MILLIS << Math.min(attempt, 16));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    static void backoff(int attempt) {
+        try {
+            Thread.sleep(getBackoffDelay(attempt));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for retry", e);
+        }
+    }
+
+    static <R> R join(CompletableFuture<R> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw e;
+        }
+    }
+
+    private static List<Map<String, AttributeValue>> getChunk(DynamoDbClient dynamoDbClient, String tableName,
+                                                              List<Map<String, AttributeValue>> keys) {
+        final var items = new ArrayList<Map<String, AttributeValue>>(keys.size());
+        var requestItems = Map.of(tableName, KeysAndAttributes.builder().keys(keys).build());
+        for (var attempt = 0; ; attempt++) {
+            final var request = BatchGetItemRequest.builder().requestItems(requestItems).build();
+            final var response = dynamoDbClient.batchGetItem(request);
+            items.addAll(response.responses().getOrDefault(tableName, List.of()));
+            final var unprocessed = response.unprocessedKeys();
+            if (unprocessed == null || unprocessed.isEmpty()) {
+                return items;
+            }
+
+            if (attempt + 1 >= MAX_ATTEMPTS) {
+                throw new IllegalStateException(format("BatchGetItem left %d keys unprocessed after %d attempts",
+                        unprocessed.get(tableName).keys().size(), MAX_ATTEMPTS));
+            }
+
+            log.debugf("BatchGetItem retrying %d unprocessed keys", unprocessed.get(tableName).keys().size());
+            backoff(attempt);
+            requestItems = unprocessed;
+        }
+    }
+
+    private static ConsumedCapacity writeChunk(DynamoDbClient dynamoDbClient, String tableName,
+                                               List<WriteRequest> requests) {
+        var capacityUnits = 0.0;
+        Map<String, ? extends Collection<WriteRequest>> requestItems = Map.of(tableName, requests);
+        for (var attempt = 0; ; attempt++) {
+            final var request = BatchWriteItemRequest.builder()
+                    .requestItems(requestItems)
+                    .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                    .build();
+            final var response = dynamoDbClient.batchWriteItem(request);
+            if (response.hasConsumedCapacity()) {
+                for (var consumed : response.consumedCapacity()) {
+                    if (consumed.capacityUnits() != null) {
+                        capacityUnits += consumed.capacityUnits();
+                    }
+                }
+            }
+
+            final var unprocessed = response.unprocessedItems();
+            if (unprocessed == null || unprocessed.isEmpty()) {
+                log.debugf("BatchWriteItem consumed %.1f WCU for %d items in %d attempts",
+                        capacityUnits, requests.size(), attempt + 1);
+                return ConsumedCapacity.builder()
+                        .tableName(tableName)
+                        .capacityUnits(capacityUnits)
+                        .writeCapacityUnits(capacityUnits)
+                        .build();
+            }
+
+            if (attempt + 1 >= MAX_ATTEMPTS) {
+                throw new IllegalStateException(format("BatchWriteItem left %d items unprocessed after %d attempts",
+                        unprocessed.get(tableName).size(), MAX_ATTEMPTS));
+            }
+
+            log.debugf("BatchWriteItem retrying %d unprocessed items", unprocessed.get(tableName).size());
+            backoff(attempt);
+            requestItems = unprocessed;
+        }
+    }
+
+    private static CompletableFuture<List<Map<String, AttributeValue>>> getChunkAsync(
+            DynamoDbAsyncClient dynamoDbClient, String tableName, Map<String, KeysAndAttributes> requestItems,
+            int attempt, List<Map<String, AttributeValue>> items) {
+        final var request = BatchGetItemRequest.builder().requestItems(requestItems).build();
+        return dynamoDbClient.batchGetItem(request).thenCompose(response -> {
+            items.addAll(response.responses().getOrDefault(tableName, List.of()));
+            final var unprocessed = response.unprocessedKeys();
+            if (unprocessed == null || unprocessed.isEmpty()) {
+                return CompletableFuture.completedFuture(items);
+            }
+
+            if (attempt + 1 >= MAX_ATTEMPTS) {
+                throw new IllegalStateException(format("BatchGetItem left %d keys unprocessed after %d attempts",
+                        unprocessed.get(tableName).keys().size(), MAX_ATTEMPTS));
+            }
+
+            log.debugf("BatchGetItem retrying %d unprocessed keys", unprocessed.get(tableName).keys().size());
+            final var delayed = CompletableFuture.delayedExecutor(getBackoffDelay(attempt), TimeUnit.MILLISECONDS);
+            return CompletableFuture.supplyAsync(() -> unprocessed, delayed)
+                    .thenCompose(keys -> getChunkAsync(dynamoDbClient, tableName, keys, attempt + 1, items));
+        });
+    }
+
+    private static CompletableFuture<ConsumedCapacity> writeChunkAsync(
+            DynamoDbAsyncClient dynamoDbClient, String tableName,
+            Map<String, ? extends Collection<WriteRequest>> requestItems,
+            int size, int attempt, double capacityUnits) {
+        final var request = BatchWriteItemRequest.builder()
+                .requestItems(requestItems)
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                .build();
+        return dynamoDbClient.batchWriteItem(request).thenCompose(response -> {
+            var consumedUnits = capacityUnits;
+            if (response.hasConsumedCapacity()) {
+                for (var consumed : response.consumedCapacity()) {
+                    if (consumed.capacityUnits() != null) {
+                        consumedUnits += consumed.capacityUnits();
+                    }
+                }
+            }
+
+            final var unprocessed = response.unprocessedItems();
+            if (unprocessed == null || unprocessed.isEmpty()) {
+                log.debugf("BatchWriteItem consumed %.1f WCU for %d items in %d attempts",
+                        consumedUnits, size, attempt + 1);
+                return CompletableFuture.completedFuture(ConsumedCapacity.builder()
+                        .tableName(tableName)
+                        .capacityUnits(consumedUnits)
+                        .writeCapacityUnits(consumedUnits)
+                        .build());
+            }
+
+            if (attempt + 1 >= MAX_ATTEMPTS) {
+                throw new IllegalStateException(format("BatchWriteItem left %d items unprocessed after %d attempts",
+                        unprocessed.get(tableName).size(), MAX_ATTEMPTS));
+            }
+
+            log.debugf("BatchWriteItem retrying %d unprocessed items", unprocessed.get(tableName).size());
+            final var units = consumedUnits;
+            final var delayed = CompletableFuture.delayedExecutor(getBackoffDelay(attempt), TimeUnit.MILLISECONDS);
+            return CompletableFuture.supplyAsync(() -> unprocessed, delayed)
+                    .thenCompose(items -> writeChunkAsync(dynamoDbClient, tableName, items, size, attempt + 1, units));
+        });
+    }
+}
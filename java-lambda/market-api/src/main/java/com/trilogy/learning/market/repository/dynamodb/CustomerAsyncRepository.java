@@ -0,0 +1,168 @@
+package com.trilogy.learning.market.repository.dynamodb;
+
+import com.trilogy.learning.market.model.Customer;
+import com.trilogy.learning.market.repository.ICustomerAsyncRepository;
+import com.trilogy.learning.market.requests.UpdateCustomerRequest;
+import lombok.extern.jbosslog.JBossLog;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static com.trilogy.learning.market.repository.dynamodb.AbstractRepository.GSI1;
+import static com.trilogy.learning.market.repository.dynamodb.AbstractRepository.GSI1_PK_ATTRIBUTE;
+
+// Non-blocking counterpart of CustomerRepository, sharing its request building and item mapping
+@JBossLog
+@Singleton
+public class CustomerAsyncRepository implements ICustomerAsyncRepository {
+    // Count updates of one customer from concurrent batches, each of which makes the others read again
+    private static final int APPLY_ATTEMPTS = 5;
+
+    private final DynamoDbAsyncClient dynamoDbClient;
+    private final CustomerRepository repository;
+
+    @Inject
+    public CustomerAsyncRepository(DynamoDbAsyncClient dynamoDbAsyncClient, CustomerRepository customerRepository) {
+        dynamoDbClient = dynamoDbAsyncClient;
+        repository = customerRepository;
+    }
+
+    @Override
+    public CompletableFuture<Customer> getById(String id) {
+        if (repository.isOrderCountSharded(null)) {
+            return AbstractRepository.queryAll(dynamoDbClient, repository.getOrderCountQueryRequest(id, null))
+                    .thenApply(items -> repository.getCustomerFromItems(id, items));
+        }
+
+        return dynamoDbClient.getItem(repository.getItemRequest(id))
+                .thenApply(response -> repository.getCustomerFromItem(response.item()));
+    }
+
+    @Override
+    public CompletableFuture<Customer> getByOrderId(String orderId) {
+        final var request = repository.getPartitionQueryRequest(GSI1_PK_ATTRIBUTE,
+                OrderRepository.KEY_PREFIX + orderId, GSI1, null, null);
+        return AbstractRepository.queryAll(dynamoDbClient, request).thenApply(items -> {
+            final var customers = repository.getCustomersFromItems(items);
+            if (customers.size() > 0) {
+                return customers.get(0);
+            }
+
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> addCustomer(Customer customer) {
+        final var item = repository.getItemFromCustomer(customer);
+        return dynamoDbClient.putItem(repository.getPutNewItemRequest(item)).thenApply(response -> null);
+    }
+
+    @Override
+    public CompletableFuture<Customer> updateCustomer(UpdateCustomerRequest request) {
+        final var updateRequest = repository.getUpdateCustomerRequest(request);
+        if (updateRequest == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return dynamoDbClient.updateItem(updateRequest)
+                .thenApply(response -> repository.getCustomerFromItem(response.attributes()));
+    }
+
+    @Override
+    public CompletableFuture<Customer> incrementOrderCount(String id, Integer increment) {
+        return dynamoDbClient.updateItem(repository.getIncrementOrderCountRequest(id, increment))
+                .thenCompose(response -> {
+                    final var customer = repository.getCustomerFromItem(response.attributes());
+                    if (!repository.isOrderCountRollUpDue(response.attributes(), increment)) {
+                        return CompletableFuture.completedFuture(customer);
+                    }
+
+                    return rollUpOrderCount(id).thenApply(v -> customer);
+                });
+    }
+
+    // Changes are keyed by the stream record that caused them; those already counted, because their batch was
+    // re-delivered after a failure, are skipped
+    @Override
+    public CompletableFuture<Void> applyOrderCountChanges(String id, String batch,
+                                                          Map<String, Integer> changesByRecord) {
+        final var updates = new ArrayList<CompletableFuture<Void>>();
+        for (var changes : repository.getOrderCountChangesByKey(id, changesByRecord).entrySet()) {
+            updates.add(applyOrderCountChanges(id, changes.getKey(), batch, changes.getValue(), APPLY_ATTEMPTS));
+        }
+
+        return CompletableFuture.allOf(updates.toArray(new CompletableFuture[0]));
+    }
+
+    private CompletableFuture<Void> applyOrderCountChanges(String id, Map<String, AttributeValue> key, String batch,
+                                                           Map<String, Integer> changes, int attempts) {
+        return dynamoDbClient.getItem(repository.getAppliedBatchesRequest(key)).thenCompose(response -> {
+            final var request = repository.getApplyOrderCountChangesRequest(key, response.item(), batch, changes);
+            if (request == null) {
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+
+            final var increment = repository.getUnappliedOrderCountChange(response.item(), batch, changes);
+            return dynamoDbClient.updateItem(request)
+                    .thenCompose(update -> repository.isOrderCountRollUpDue(update.attributes(), increment)
+                            ? rollUpOrderCount(id)
+                            : CompletableFuture.<Void>completedFuture(null))
+                    .handle((v, e) -> {
+                        final var cause = e instanceof CompletionException ? e.getCause() : e;
+                        if (cause instanceof ConditionalCheckFailedException && attempts > 1) {
+                            return applyOrderCountChanges(id, key, batch, changes, attempts - 1);
+                        }
+
+                        return e == null
+                                ? CompletableFuture.<Void>completedFuture(null)
+                                : CompletableFuture.<Void>failedFuture(cause);
+                    })
+                    .thenCompose(future -> future);
+        });
+    }
+
+    // The increment already happened, so a failed roll-up is only logged and left to the next one
+    private CompletableFuture<Void> rollUpOrderCount(String id) {
+        return AbstractRepository.queryAll(dynamoDbClient, repository.getOrderCountRollUpQueryRequest(id))
+                .thenCompose(items -> {
+                    final var request = repository.getOrderCountRollUpRequest(id, items);
+                    if (request == null) {
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+
+                    return dynamoDbClient.transactWriteItems(request).thenApply(response -> (Void) null);
+                })
+                .exceptionally(e -> {
+                    final var cause = e instanceof CompletionException ? e.getCause() : e;
+                    if (cause instanceof TransactionCanceledException) {
+                        log.debugf("Order count roll-up of %s raced with another one", id);
+                    } else {
+                        log.warnf(cause, "Order count roll-up of %s failed", id);
+                    }
+
+                    return null;
+                });
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteCustomer(String id) {
+        final var request = repository.getDeleteItemRequest(repository.getItemKey(id));
+        return dynamoDbClient.deleteItem(request)
+                .thenCompose(response -> AbstractRepository.queryAll(dynamoDbClient,
+                        repository.getOrderCounterKeysQueryRequest(id)))
+                .thenCompose(counterKeys -> counterKeys.isEmpty()
+                        ? CompletableFuture.completedFuture(null)
+                        : BatchExecutor.writeItemsAsync(dynamoDbClient, repository.getTableName(),
+                                repository.getDeleteRequests(counterKeys)))
+                .thenApply(response -> null);
+    }
+}
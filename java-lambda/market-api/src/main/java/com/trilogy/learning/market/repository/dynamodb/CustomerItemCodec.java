@@ -0,0 +1,64 @@
+package com.trilogy.learning.market.repository.dynamodb;
+
+import com.trilogy.learning.market.model.Address;
+import com.trilogy.learning.market.model.Customer;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.trilogy.learning.market.repository.dynamodb.AbstractRepository.PK_ATTRIBUTE;
+import static com.trilogy.learning.market.repository.dynamodb.AbstractRepository.SEP;
+import static com.trilogy.learning.market.repository.dynamodb.AbstractRepository.SK_ATTRIBUTE;
+import static com.trilogy.learning.market.repository.dynamodb.CustomerRepository.*;
+
+// Maps the customer item CUST#<email>, indexed by CUST_ADDR#<country>#<city> on GSI1
+final class CustomerItemCodec {
+    private static final int ENTRIES = 5;
+
+    private CustomerItemCodec() {
+    }
+
+    // withOrderCount is false when the count is sharded and has to be summed from the counter items
+    static Customer decode(Map<String, AttributeValue> item, boolean withOrderCount) {
+        final var email = ItemValues.getSegment(item, PK_ATTRIBUTE, 1, "");
+        if (!isCustomer(item)) {
+            return Customer.builder().email(email).build();
+        }
+
+        final var countryCity = ItemValues.getString(item, COUNTRY_CITY_ATTRIBUTE, "");
+        return Customer.builder()
+                .email(email)
+                .name(ItemValues.getSegment(item, NAME_ATTRIBUTE, 1, ""))
+                .address(new Address(
+                        ItemValues.getSegment(countryCity, 1, ""),
+                        ItemValues.getSegment(countryCity, 2, ""),
+                        ItemValues.getString(item, STREET_ADDRESS_ATTRIBUTE, "")))
+                .orderCount(withOrderCount ? ItemValues.getInteger(item, ORDER_COUNT_ATTRIBUTE, 0) : null)
+                .build();
+    }
+
+    static Map<String, AttributeValue> encode(Customer customer) {
+        final var item = new HashMap<String, AttributeValue>(ENTRIES * 2);
+        ItemValues.putString(item, PK_ATTRIBUTE, KEY_PREFIX + customer.getEmail());
+        ItemValues.putString(item, SK_ATTRIBUTE, KEY_PREFIX + customer.getEmail());
+        if (customer.getName() != null) {
+            ItemValues.putString(item, NAME_ATTRIBUTE, KEY_PREFIX + customer.getName());
+        }
+
+        final var address = customer.getAddress();
+        if (address != null) {
+            ItemValues.putString(item, STREET_ADDRESS_ATTRIBUTE, address.getStreetAddress());
+            ItemValues.putString(item, COUNTRY_CITY_ATTRIBUTE,
+                    ADDR_PREFIX + address.getCountry() + SEP + address.getCity());
+        }
+
+        return item;
+    }
+
+    // Counter items share the CUST# sort key prefix but are not customers
+    private static boolean isCustomer(Map<String, AttributeValue> item) {
+        final var sortKey = ItemValues.getString(item, SK_ATTRIBUTE, "");
+        return sortKey.startsWith(KEY_PREFIX) && !sortKey.contains(ORDER_COUNT_SHARD_INFIX);
+    }
+}
@@ -1,44 +1,103 @@
 package com.trilogy.learning.market.repository.dynamodb;
 
-import com.trilogy.learning.market.model.Address;
 import com.trilogy.learning.market.model.Customer;
 import com.trilogy.learning.market.repository.ICustomerRepository;
 import com.trilogy.learning.market.requests.UpdateCustomerRequest;
 import lombok.extern.jbosslog.JBossLog;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
+import software.amazon.awssdk.services.dynamodb.model.Update;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 
 @JBossLog
 @Singleton
 public class CustomerRepository extends AbstractRepository<Customer> implements ICustomerRepository {
     static final String KEY_PREFIX = "CUST#";
     static final String ADDR_PREFIX = "CUST_ADDR#";
-    private static final String NAME_ATTRIBUTE = GSI1_SK_ATTRIBUTE;
-    private static final String COUNTRY_CITY_ATTRIBUTE = GSI1_PK_ATTRIBUTE;
-    private static final String STREET_ADDRESS_ATTRIBUTE = "StreetAddress";
-    private static final String ORDER_COUNT_ATTRIBUTE = DATA_ATTRIBUTE;
+    static final String NAME_ATTRIBUTE = GSI1_SK_ATTRIBUTE;
+    static final String COUNTRY_CITY_ATTRIBUTE = GSI1_PK_ATTRIBUTE;
+    static final String STREET_ADDRESS_ATTRIBUTE = "StreetAddress";
+    static final String ORDER_COUNT_ATTRIBUTE = DATA_ATTRIBUTE;
+    private static final String ORDER_COUNT_FIELD = "orderCount";
+    // Counter items sort right after the customer item: CUST#<email>#COUNT#<shard>
+    static final String ORDER_COUNT_SHARD_INFIX = SEP + "COUNT" + SEP;
+    // A roll-up transaction updates the customer item and at most this many counters
+    private static final int ROLL_UP_COUNTERS_MAX = 24;
+    // Per stream batch that changed a count item, oldest first, the last record whose change it added. A batch
+    // holds records of one stream shard in order and comes back starting with the same record, so its records
+    // up to that one were counted, however many there are. The stack retries a failed batch once, right away,
+    // so it only has to outlast the batches of other shards that change the item in the meantime.
+    private static final String APPLIED_BATCHES_ATTRIBUTE = "AppliedBatches";
+    private static final String BATCH_ATTRIBUTE = "Batch";
+    private static final String LAST_RECORD_ATTRIBUTE = "LastRecord";
+    private static final int APPLIED_BATCHES_KEPT = 100;
+    private static final Map<String, List<String>> FIELD_ATTRIBUTES = Map.of(
+            "email", List.of(),
+            "name", List.of(NAME_ATTRIBUTE),
+            "address", List.of(STREET_ADDRESS_ATTRIBUTE, COUNTRY_CITY_ATTRIBUTE),
+            ORDER_COUNT_FIELD, List.of(ORDER_COUNT_ATTRIBUTE));
 
+    private final int orderCountShards;
+    private final int orderCountRollUpEvery;
+
+    // With more than one shard, order count increments go to counter items in the customer partition
     @Inject
-    public CustomerRepository(DynamoDbClient dynamoDbClient) {
+    public CustomerRepository(DynamoDbClient dynamoDbClient,
+                              @ConfigProperty(name = "market.customers.order-count-shards", defaultValue = "1")
+                                      int orderCountShards,
+                              @ConfigProperty(name = "market.customers.order-count-roll-up-every", defaultValue = "100")
+                                      int orderCountRollUpEvery) {
         super(dynamoDbClient);
+        if (orderCountShards < 1) {
+            throw new IllegalArgumentException("market.customers.order-count-shards");
+        }
+
+        if (orderCountRollUpEvery < 1) {
+            throw new IllegalArgumentException("market.customers.order-count-roll-up-every");
+        }
+
+        this.orderCountShards = orderCountShards;
+        this.orderCountRollUpEvery = orderCountRollUpEvery;
     }
 
     @Override
     public Customer getById(String id) {
-        final var response = getItem(id);
+        return getById(id, null);
+    }
+
+    @Override
+    public Customer getById(String id, Set<String> fields) {
+        if (isOrderCountSharded(fields)) {
+            return getCustomerFromItems(id, queryAll(getOrderCountQueryRequest(id, fields)));
+        }
+
+        final var projection = Projection.of(fields, FIELD_ATTRIBUTES, PK_ATTRIBUTE, SK_ATTRIBUTE);
+        final var response = getItem(id, projection);
         return getCustomerFromItem(response.item());
     }
 
     @Override
     public Customer getByOrderId(String orderId) {
-        final var response = queryGsi1Partition(OrderRepository.KEY_PREFIX + orderId);
-        final var customers = getCustomersFromItems(response.items());
+        final var items = queryGsi1Partition(OrderRepository.KEY_PREFIX + orderId);
+        final var customers = getCustomersFromItems(items);
         if (customers.size() > 0) {
             return customers.get(0);
         }
@@ -54,6 +113,16 @@ public class CustomerRepository extends AbstractRepository<Customer> implements
 
     @Override
     public Customer updateCustomer(UpdateCustomerRequest request) {
+        final var updateRequest = getUpdateCustomerRequest(request);
+        if (updateRequest == null) {
+            return null;
+        }
+
+        final var response = dynamoDbClient.updateItem(updateRequest);
+        return getCustomerFromItem(response.attributes());
+    }
+
+    UpdateItemRequest getUpdateCustomerRequest(UpdateCustomerRequest request) {
         final var updateValues = new HashMap<String, AttributeValue>();
         String updateExpression = "SET ";
         if (request.getName() != null) {
@@ -75,9 +144,8 @@ public class CustomerRepository extends AbstractRepository<Customer> implements
         }
 
         if (updateValues.size() > 0) {
-            final var response = updateItem(getCustomerKey(request.getId()),
+            return getUpdateItemRequest(getCustomerKey(request.getId()),
                     updateExpression, null, updateValues);
-            return getCustomerFromItem(response.attributes());
         }
 
         return null;
@@ -86,85 +154,327 @@ public class CustomerRepository extends AbstractRepository<Customer> implements
     @Override
     public void deleteCustomer(String id) {
         deleteItem(getItemKey(id));
+        final var counterKeys = queryAll(getOrderCounterKeysQueryRequest(id));
+        if (!counterKeys.isEmpty()) {
+            BatchExecutor.writeItems(dynamoDbClient, getTableName(), getDeleteRequests(counterKeys));
+        }
     }
 
     @Override
     public Customer incrementOrderCount(String id, Integer increment) {
+        final var response = dynamoDbClient.updateItem(getIncrementOrderCountRequest(id, increment));
+        if (isOrderCountRollUpDue(response.attributes(), increment)) {
+            rollUpOrderCount(id);
+        }
+
+        return getCustomerFromItem(response.attributes());
+    }
+
+    // Sharded increments pick a random counter so that one busy customer spreads over all of them
+    UpdateItemRequest getIncrementOrderCountRequest(String id, Integer increment) {
         final var updateExpression = "ADD #cnt :inc";
         final var updateValues = Map.of(":inc", AttributeValue.builder().n(increment.toString()).build());
         final var updateNames = Map.of("#cnt", ORDER_COUNT_ATTRIBUTE);
-        final var response = updateItem(getCustomerKey(id), updateExpression, updateNames, updateValues);
-        return getCustomerFromItem(response.attributes());
+        final var key = orderCountShards == 1
+                ? getCustomerKey(id)
+                : getKeyAttributes(getPartitonKey(id),
+                        getOrderCountShardKey(id, ThreadLocalRandom.current().nextInt(orderCountShards)));
+        return getUpdateItemRequest(key, updateExpression, updateNames, updateValues);
     }
 
-    static String getPartitonKey(String id) {
-        return KEY_PREFIX + id;
+    // Runs when a counter gained another roll-up interval since it was last emptied
+    boolean isOrderCountRollUpDue(Map<String, AttributeValue> counterItem, Integer increment) {
+        if (orderCountShards == 1) {
+            return false;
+        }
+
+        final long count = ItemValues.getInteger(counterItem, ORDER_COUNT_ATTRIBUTE, 0);
+        return Math.floorDiv(count, orderCountRollUpEvery) != Math.floorDiv(count - increment, orderCountRollUpEvery);
     }
 
-    private Map<String, AttributeValue> getItemFromCustomer(Customer customer) {
-        var item = new HashMap<String, AttributeValue>();
-        addPkSkIdAttribute(item, customer.getEmail());
-        addPrefixedStringAttribute(item, NAME_ATTRIBUTE, customer.getName());
-        addAddressValue(item, customer.getAddress());
-        return item;
+    // The increment already happened, so a failed roll-up is only logged and left to the next one
+    void rollUpOrderCount(String id) {
+        try {
+            final var items = queryAll(getOrderCountRollUpQueryRequest(id));
+            final var request = getOrderCountRollUpRequest(id, items);
+            if (request != null) {
+                dynamoDbClient.transactWriteItems(request);
+            }
+        } catch (TransactionCanceledException e) {
+            log.debugf("Order count roll-up of %s raced with another one", id);
+        } catch (SdkException e) {
+            log.warnf(e, "Order count roll-up of %s failed", id);
+        }
     }
 
-    private Customer getCustomerFromItem(Map<String, AttributeValue> item) {
-        if (item.isEmpty()) {
+    // The item a stream record's change is counted on, the same one whenever the record is re-delivered
+    Map<String, AttributeValue> getOrderCountKey(String id, String record) {
+        if (orderCountShards == 1) {
+            return getCustomerKey(id);
+        }
+
+        return getKeyAttributes(getPartitonKey(id),
+                getOrderCountShardKey(id, Math.floorMod(record.hashCode(), orderCountShards)));
+    }
+
+    // Changes by the stream record that caused them, grouped by the item they are counted on
+    Map<Map<String, AttributeValue>, Map<String, Integer>> getOrderCountChangesByKey(String id,
+                                                                                    Map<String, Integer> changes) {
+        final var changesByKey = new LinkedHashMap<Map<String, AttributeValue>, Map<String, Integer>>();
+        for (var change : changes.entrySet()) {
+            changesByKey.computeIfAbsent(getOrderCountKey(id, change.getKey()), k -> new LinkedHashMap<>())
+                    .put(change.getKey(), change.getValue());
+        }
+
+        return changesByKey;
+    }
+
+    GetItemRequest getAppliedBatchesRequest(Map<String, AttributeValue> key) {
+        return GetItemRequest.builder()
+                .tableName(getTableName())
+                .key(key)
+                .projectionExpression("#applied")
+                .expressionAttributeNames(Map.of("#applied", APPLIED_BATCHES_ATTRIBUTE))
+                .consistentRead(true)
+                .build();
+    }
+
+    // The sum of the batch's changes past the last record of the batch already counted on the item
+    int getUnappliedOrderCountChange(Map<String, AttributeValue> countItem, String batch,
+                                     Map<String, Integer> changes) {
+        final var lastApplied = getAppliedBatches(countItem).get(batch);
+        var delta = 0;
+        for (var change : changes.entrySet()) {
+            if (isAfter(change.getKey(), lastApplied)) {
+                delta += change.getValue();
+            }
+        }
+
+        return delta;
+    }
+
+    // Adds the changes not yet counted and moves the batch's last applied record, or returns null when there are
+    // none. The condition fails when another batch updated the item since it was read, so the caller reads it
+    // again.
+    UpdateItemRequest getApplyOrderCountChangesRequest(Map<String, AttributeValue> key,
+                                                       Map<String, AttributeValue> countItem,
+                                                       String batch, Map<String, Integer> changes) {
+        final var applied = getAppliedBatches(countItem);
+        final var lastApplied = applied.get(batch);
+        var last = lastApplied;
+        for (var record : changes.keySet()) {
+            if (isAfter(record, last)) {
+                last = record;
+            }
+        }
+
+        if (Objects.equals(last, lastApplied)) {
+            return null;
+        }
+
+        // The batch moves to the end, so the batches dropped first are the ones that changed the item longest ago
+        applied.remove(batch);
+        applied.put(batch, last);
+        final var batches = new ArrayList<AttributeValue>();
+        for (var entry : applied.entrySet()) {
+            batches.add(AttributeValue.builder().m(Map.of(
+                    BATCH_ATTRIBUTE, AttributeValue.builder().s(entry.getKey()).build(),
+                    LAST_RECORD_ATTRIBUTE, AttributeValue.builder().s(entry.getValue()).build())).build());
+        }
+
+        final var kept = batches.subList(Math.max(0, batches.size() - APPLIED_BATCHES_KEPT), batches.size());
+
+        final var names = Map.of("#cnt", ORDER_COUNT_ATTRIBUTE, "#applied", APPLIED_BATCHES_ATTRIBUTE);
+        final var values = new HashMap<String, AttributeValue>();
+        values.put(":delta", AttributeValue.builder()
+                .n(Integer.toString(getUnappliedOrderCountChange(countItem, batch, changes))).build());
+        values.put(":applied", AttributeValue.builder().l(kept).build());
+        final String condition;
+        if (countItem.containsKey(APPLIED_BATCHES_ATTRIBUTE)) {
+            values.put(":read", countItem.get(APPLIED_BATCHES_ATTRIBUTE));
+            condition = "#applied = :read";
+        } else {
+            condition = "attribute_not_exists(#applied)";
+        }
+
+        return getUpdateItemRequest(key, "SET #applied = :applied ADD #cnt :delta", names, values).toBuilder()
+                .conditionExpression(condition)
+                .build();
+    }
+
+    // Last applied record by batch, oldest batch first
+    private Map<String, String> getAppliedBatches(Map<String, AttributeValue> countItem) {
+        final var batches = new LinkedHashMap<String, String>();
+        final var value = countItem.get(APPLIED_BATCHES_ATTRIBUTE);
+        if (value != null && value.hasL()) {
+            for (var batch : value.l()) {
+                batches.put(batch.m().get(BATCH_ATTRIBUTE).s(), batch.m().get(LAST_RECORD_ATTRIBUTE).s());
+            }
+        }
+
+        return batches;
+    }
+
+    // Sequence numbers grow within a shard but not in length, so they compare as numbers
+    private static boolean isAfter(String record, String lastApplied) {
+        return lastApplied == null || new BigInteger(record).compareTo(new BigInteger(lastApplied)) > 0;
+    }
+
+    boolean isOrderCountSharded(Set<String> fields) {
+        return orderCountShards > 1 && (fields == null || fields.isEmpty() || fields.contains(ORDER_COUNT_FIELD));
+    }
+
+    // The customer item and its counter items in one query
+    // Consistent, so a count read right after an order was counted includes it, as the customer item read does
+    QueryRequest getOrderCountQueryRequest(String id, Set<String> fields) {
+        final var request = getParentQueryRequest(PK_ATTRIBUTE, getPartitonKey(id),
+                SK_ATTRIBUTE, getPartitonKey(id), null, null).toBuilder()
+                .consistentRead(true)
+                .build();
+        return Projection.apply(request, Projection.of(fields, FIELD_ATTRIBUTES,
+                PK_ATTRIBUTE, SK_ATTRIBUTE, ORDER_COUNT_ATTRIBUTE));
+    }
+
+    QueryRequest getOrderCountRollUpQueryRequest(String id) {
+        return getOrderCountQueryRequest(id, null);
+    }
+
+    // Every counter shard the customer ever had, including those of a higher shard count used before
+    QueryRequest getOrderCounterKeysQueryRequest(String id) {
+        return getParentQueryRequest(PK_ATTRIBUTE, getPartitonKey(id),
+                SK_ATTRIBUTE, getPartitonKey(id) + ORDER_COUNT_SHARD_INFIX, null, null).toBuilder()
+                .projectionExpression("#pk, #sk")
+                .build();
+    }
+
+    // Moves the counts of the counters into the customer item. Each counter loses in the same transaction what
+    // the customer gains, so customer + sum(counters) stays exact, and a counter changed since it was read fails
+    // its condition and cancels the whole roll-up, which the next one repeats. Emptied counters are left in
+    // place, so order count reads keep querying one partition.
+    TransactWriteItemsRequest getOrderCountRollUpRequest(String id, List<Map<String, AttributeValue>> items) {
+        if (getCustomerItem(id, items) == null) {
             return null;
         }
 
-        if (isCustomerEntity(item)) {
-            return Customer.builder()
-                    .email(getSecondValueOrDefault(item, PK_ATTRIBUTE, ""))
-                    .name(getSecondValueOrDefault(item, NAME_ATTRIBUTE, ""))
-                    .address(getAddressFromItem(item))
-                    .orderCount(getIntegerOrDefault(item, ORDER_COUNT_ATTRIBUTE, 0))
+        final var requests = new ArrayList<TransactWriteItem>();
+        var delta = 0L;
+        for (var counterItem : getCounterItems(id, items).values()) {
+            final long folded = ItemValues.getInteger(counterItem, ORDER_COUNT_ATTRIBUTE, 0);
+            if (folded == 0) {
+                continue;
+            }
+
+            delta += folded;
+            final var counterUpdate = Update.builder()
+                    .tableName(getTableName())
+                    .key(getKeyAttributes(ItemValues.getString(counterItem, PK_ATTRIBUTE, ""),
+                            ItemValues.getString(counterItem, SK_ATTRIBUTE, "")))
+                    .conditionExpression("#cnt = :read")
+                    .updateExpression("ADD #cnt :fold")
+                    .expressionAttributeNames(Map.of("#cnt", ORDER_COUNT_ATTRIBUTE))
+                    .expressionAttributeValues(Map.of(":read", counterItem.get(ORDER_COUNT_ATTRIBUTE),
+                            ":fold", AttributeValue.builder().n(Long.toString(-folded)).build()))
                     .build();
+            requests.add(TransactWriteItem.builder().update(counterUpdate).build());
+            if (requests.size() == ROLL_UP_COUNTERS_MAX) {
+                break;
+            }
+        }
+
+        if (requests.isEmpty()) {
+            return null;
         }
 
-        return Customer.builder()
-                .email(getSecondValueOrDefault(item, PK_ATTRIBUTE, ""))
+        final var customerUpdate = Update.builder()
+                .tableName(getTableName())
+                .key(getCustomerKey(id))
+                .conditionExpression("attribute_exists(#pk)")
+                .updateExpression("ADD #cnt :fold")
+                .expressionAttributeNames(Map.of("#pk", PK_ATTRIBUTE, "#cnt", ORDER_COUNT_ATTRIBUTE))
+                .expressionAttributeValues(Map.of(":fold", AttributeValue.builder().n(Long.toString(delta)).build()))
+                .build();
+        requests.add(TransactWriteItem.builder().update(customerUpdate).build());
+        return TransactWriteItemsRequest.builder()
+                .transactItems(requests)
                 .build();
     }
 
-    private boolean isCustomerEntity(Map<String, AttributeValue> item) {
-        return getStringOrDefault(item, SK_ATTRIBUTE, "").startsWith(KEY_PREFIX);
+    // Reads the exact count as customer + sum(counters); emptied counters add nothing
+    Customer getCustomerFromItems(String id, List<Map<String, AttributeValue>> items) {
+        final var customerItem = getCustomerItem(id, items);
+        if (customerItem == null) {
+            return null;
+        }
+
+        long orderCount = ItemValues.getInteger(customerItem, ORDER_COUNT_ATTRIBUTE, 0);
+        for (var counterItem : getCounterItems(id, items).values()) {
+            orderCount += ItemValues.getInteger(counterItem, ORDER_COUNT_ATTRIBUTE, 0);
+        }
+
+        final var customer = getCustomerFromItem(customerItem);
+        customer.setOrderCount(Math.toIntExact(orderCount));
+        return customer;
     }
 
-    private List<Customer> getCustomersFromItems(List<Map<String, AttributeValue>> items) {
-        final var customers = new ArrayList<Customer>();
+    private Map<String, AttributeValue> getCustomerItem(String id, List<Map<String, AttributeValue>> items) {
+        final var customerKey = getPartitonKey(id);
         for (var item : items) {
-            final var customer = getCustomerFromItem(item);
-            if (customer != null) {
-                customers.add(customer);
+            if (customerKey.equals(ItemValues.getString(item, SK_ATTRIBUTE, ""))) {
+                return item;
             }
         }
 
-        return customers;
+        return null;
+    }
+
+    private Map<Integer, Map<String, AttributeValue>> getCounterItems(String id,
+                                                                     List<Map<String, AttributeValue>> items) {
+        final var prefix = getPartitonKey(id) + ORDER_COUNT_SHARD_INFIX;
+        final var counterItems = new HashMap<Integer, Map<String, AttributeValue>>();
+        for (var item : items) {
+            final var sortKey = ItemValues.getString(item, SK_ATTRIBUTE, "");
+            if (sortKey.startsWith(prefix)) {
+                counterItems.put(Integer.parseInt(sortKey.substring(prefix.length())), item);
+            }
+        }
+
+        return counterItems;
+    }
+
+    private String getOrderCountShardKey(String id, int shard) {
+        return getPartitonKey(id) + ORDER_COUNT_SHARD_INFIX + shard;
+    }
+
+    static String getPartitonKey(String id) {
+        return KEY_PREFIX + id;
     }
 
-    private Address getAddressFromItem(Map<String, AttributeValue> item) {
-        var combinedAddress = getStringOrDefault(item, COUNTRY_CITY_ATTRIBUTE, "");
-        var parts = combinedAddress.split(SEP);
-        var streetAddress = getStringOrDefault(item, STREET_ADDRESS_ATTRIBUTE, "");
-        return new Address(
-                getSubValueOrDefault(parts, 1, ""),
-                getSubValueOrDefault(parts, 2, ""),
-                streetAddress);
+    Map<String, AttributeValue> getItemFromCustomer(Customer customer) {
+        return CustomerItemCodec.encode(customer);
     }
 
-    private void addAddressValue(Map<String, AttributeValue> item, Address address) {
-        if (address == null) {
-            return;
+    // A sharded order count is only known after summing the counters, so a single item leaves it out
+    Customer getCustomerFromItem(Map<String, AttributeValue> item) {
+        if (item.isEmpty()) {
+            return null;
         }
 
-        addStringAttribute(item, STREET_ADDRESS_ATTRIBUTE, address.getStreetAddress());
-        addStringAttribute(item, COUNTRY_CITY_ATTRIBUTE,
-                ADDR_PREFIX + address.getCountry() + SEP + address.getCity());
+        return CustomerItemCodec.decode(item, orderCountShards == 1);
+    }
+
+    List<Customer> getCustomersFromItems(List<Map<String, AttributeValue>> items) {
+        final var customers = new ArrayList<Customer>();
+        for (var item : items) {
+            final var customer = getCustomerFromItem(item);
+            if (customer != null) {
+                customers.add(customer);
+            }
+        }
+
+        return customers;
     }
 
-    private Map<String, AttributeValue> getCustomerKey(String id) {
+    Map<String, AttributeValue> getCustomerKey(String id) {
         return getKeyAttributes(KEY_PREFIX + id, KEY_PREFIX + id);
     }
 
@@ -0,0 +1,147 @@
+package com.trilogy.learning.market.repository.dynamodb;
+
+import com.trilogy.learning.market.model.IdempotencyRecord;
+import com.trilogy.learning.market.repository.IIdempotencyRepository;
+import lombok.extern.jbosslog.JBossLog;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+// Idempotency keys live in the main table with a TTL; the stream handler ignores them as they have no entity type
+@JBossLog
+@Singleton
+public class IdempotencyRepository extends AbstractRepository<IdempotencyRecord> implements IIdempotencyRepository {
+    static final String KEY_PREFIX = "IDEMPOTENCY#";
+    private static final String STATUS_ATTRIBUTE = "Status";
+    private static final String REQUEST_HASH_ATTRIBUTE = "RequestHash";
+    private static final String RESPONSE_ATTRIBUTE = DATA_ATTRIBUTE;
+    private static final String LOCKED_UNTIL_ATTRIBUTE = "LockedUntil";
+    private static final String OWNER_ATTRIBUTE = "Owner";
+    // The table's TTL attribute; expired items may linger until DynamoDB deletes them, so claims check it too
+    private static final String EXPIRES_AT_ATTRIBUTE = "ExpiresAt";
+
+    private final Duration ttl;
+    private final Duration lockTimeout;
+
+    // The lock timeout must exceed the function timeout, or a slow request loses its key to a retry while it runs
+    @Inject
+    public IdempotencyRepository(DynamoDbClient dynamoDbClient,
+                                 @ConfigProperty(name = "market.idempotency.ttl", defaultValue = "24H") Duration ttl,
+                                 @ConfigProperty(name = "market.idempotency.lock-timeout", defaultValue = "90S")
+                                         Duration lockTimeout) {
+        super(dynamoDbClient);
+        this.ttl = ttl;
+        this.lockTimeout = lockTimeout;
+    }
+
+    // A key can be claimed when it is new, expired, or held by a request that did not finish in time
+    @Override
+    public IdempotencyRecord claim(String key, String requestHash, String owner) {
+        final var now = Instant.now();
+        final var item = getItemKey(key);
+        addStringAttribute(item, STATUS_ATTRIBUTE, IdempotencyRecord.Status.IN_PROGRESS.toString());
+        addStringAttribute(item, REQUEST_HASH_ATTRIBUTE, requestHash);
+        addStringAttribute(item, OWNER_ATTRIBUTE, owner);
+        addEpochSecondAttribute(item, LOCKED_UNTIL_ATTRIBUTE, now.plus(lockTimeout));
+        addEpochSecondAttribute(item, EXPIRES_AT_ATTRIBUTE, now.plus(ttl));
+        final var request = PutItemRequest.builder()
+                .tableName(getTableName())
+                .item(item)
+                .conditionExpression("attribute_not_exists(#pk) OR #exp < :now"
+                        + " OR (#st = :inProgress AND #lock < :now)")
+                .expressionAttributeNames(Map.of(
+                        "#pk", PK_ATTRIBUTE,
+                        "#exp", EXPIRES_AT_ATTRIBUTE,
+                        "#st", STATUS_ATTRIBUTE,
+                        "#lock", LOCKED_UNTIL_ATTRIBUTE))
+                .expressionAttributeValues(Map.of(
+                        ":now", getEpochSecondValue(now),
+                        ":inProgress", getStringValue(IdempotencyRecord.Status.IN_PROGRESS.toString())))
+                .build();
+        try {
+            dynamoDbClient.putItem(request);
+            return null;
+        } catch (ConditionalCheckFailedException e) {
+            log.debugf("Idempotency key %s is already claimed", key);
+        }
+
+        final var response = dynamoDbClient.getItem(getItemRequest(key).toBuilder().consistentRead(true).build());
+        if (!response.hasItem() || response.item().isEmpty()) {
+            // Released by the request holding it between the put and the read
+            return claim(key, requestHash, owner);
+        }
+
+        return getRecordFromItem(response.item());
+    }
+
+    // A request that lost its claim after the lock timed out leaves the key to the one that took it over
+    @Override
+    public void complete(String key, String owner, String requestHash, String response) {
+        final var item = getItemKey(key);
+        addStringAttribute(item, STATUS_ATTRIBUTE, IdempotencyRecord.Status.COMPLETED.toString());
+        addStringAttribute(item, REQUEST_HASH_ATTRIBUTE, requestHash);
+        addStringAttribute(item, OWNER_ATTRIBUTE, owner);
+        addStringAttribute(item, RESPONSE_ATTRIBUTE, response);
+        addEpochSecondAttribute(item, EXPIRES_AT_ATTRIBUTE, Instant.now().plus(ttl));
+        try {
+            dynamoDbClient.putItem(PutItemRequest.builder()
+                    .tableName(getTableName())
+                    .item(item)
+                    .conditionExpression("#owner = :owner")
+                    .expressionAttributeNames(Map.of("#owner", OWNER_ATTRIBUTE))
+                    .expressionAttributeValues(Map.of(":owner", getStringValue(owner)))
+                    .build());
+        } catch (ConditionalCheckFailedException e) {
+            log.warnf("Idempotency key %s was claimed by another request before this one completed", key);
+        }
+    }
+
+    // Lets a retry run the request again after this attempt failed
+    @Override
+    public void release(String key, String owner) {
+        try {
+            dynamoDbClient.deleteItem(DeleteItemRequest.builder()
+                    .tableName(getTableName())
+                    .key(getItemKey(key))
+                    .conditionExpression("#owner = :owner")
+                    .expressionAttributeNames(Map.of("#owner", OWNER_ATTRIBUTE))
+                    .expressionAttributeValues(Map.of(":owner", getStringValue(owner)))
+                    .build());
+        } catch (ConditionalCheckFailedException e) {
+            log.debugf("Idempotency key %s was claimed by another request before this one released it", key);
+        }
+    }
+
+    private IdempotencyRecord getRecordFromItem(Map<String, AttributeValue> item) {
+        return IdempotencyRecord.builder()
+                .key(getStringOrDefault(item, PK_ATTRIBUTE, "").substring(KEY_PREFIX.length()))
+                .status(IdempotencyRecord.Status.valueOf(getStringOrDefault(item, STATUS_ATTRIBUTE,
+                        IdempotencyRecord.Status.IN_PROGRESS.toString())))
+                .requestHash(getStringOrDefault(item, REQUEST_HASH_ATTRIBUTE, null))
+                .response(getStringOrDefault(item, RESPONSE_ATTRIBUTE, null))
+                .build();
+    }
+
+    private static void addEpochSecondAttribute(Map<String, AttributeValue> item, String attributeName,
+                                                Instant value) {
+        item.put(attributeName, getEpochSecondValue(value));
+    }
+
+    private static AttributeValue getEpochSecondValue(Instant value) {
+        return AttributeValue.builder().n(Long.toString(value.getEpochSecond())).build();
+    }
+
+    @Override
+    protected String getKeyPrefix() {
+        return KEY_PREFIX;
+    }
+}
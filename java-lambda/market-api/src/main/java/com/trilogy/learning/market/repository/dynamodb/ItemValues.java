@@ -0,0 +1,208 @@
+package com.trilogy.learning.market.repository.dynamodb;
+
+import org.joda.time.DateTime;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.Map;
+
+// Attribute readers and writers for the item codecs: one map lookup per attribute, key segments found with
+// indexOf instead of regex splits, and dates converted by arithmetic instead of through Joda objects
+final class ItemValues {
+    private static final char SEP = '#';
+    private static final int SECONDS_PER_DAY = 86400;
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+    // Null for zones with daylight saving; Lambda runs in UTC where the offset is fixed
+    private static final Integer FIXED_OFFSET_SECONDS = ZONE.getRules().isFixedOffset()
+            ? ZONE.getRules().getOffset(Instant.EPOCH).getTotalSeconds() : null;
+
+    private ItemValues() {
+    }
+
+    static String getString(Map<String, AttributeValue> item, String attribute, String defaultValue) {
+        final var value = item.get(attribute);
+        return value == null || value.s() == null ? defaultValue : value.s();
+    }
+
+    // The index-th part of a "#" separated value, e.g. 1 for the id in ORDER#<id>
+    static String getSegment(Map<String, AttributeValue> item, String attribute, int index, String defaultValue) {
+        final var value = getString(item, attribute, null);
+        return value == null ? defaultValue : getSegment(value, index, defaultValue);
+    }
+
+    static String getSegment(String value, int index, String defaultValue) {
+        var start = 0;
+        for (var i = 0; i < index; i++) {
+            start = value.indexOf(SEP, start) + 1;
+            if (start == 0) {
+                return defaultValue;
+            }
+        }
+
+        final var end = value.indexOf(SEP, start);
+        final var segment = end < 0 ? value.substring(start) : value.substring(start, end);
+        return segment.isEmpty() ? defaultValue : segment;
+    }
+
+    static boolean startsWith(Map<String, AttributeValue> item, String attribute, String prefix) {
+        final var value = item.get(attribute);
+        return value != null && value.s() != null && value.s().startsWith(prefix);
+    }
+
+    static BigDecimal getBigDecimal(Map<String, AttributeValue> item, String attribute) {
+        final var value = item.get(attribute);
+        return value == null || value.n() == null ? null : new BigDecimal(value.n());
+    }
+
+    static Integer getInteger(Map<String, AttributeValue> item, String attribute, Integer defaultValue) {
+        final var value = item.get(attribute);
+        return value == null || value.n() == null ? defaultValue : Integer.valueOf(value.n());
+    }
+
+    static Date getDate(Map<String, AttributeValue> item, String attribute) {
+        final var value = getString(item, attribute, null);
+        return value == null ? null : parseDate(value);
+    }
+
+    static void putString(Map<String, AttributeValue> item, String attribute, String value) {
+        if (value != null) {
+            item.put(attribute, AttributeValue.builder().s(value).build());
+        }
+    }
+
+    static void putNumber(Map<String, AttributeValue> item, String attribute, Integer value) {
+        if (value != null) {
+            item.put(attribute, AttributeValue.builder().n(value.toString()).build());
+        }
+    }
+
+    static void putNumber(Map<String, AttributeValue> item, String attribute, BigDecimal value) {
+        if (value != null) {
+            item.put(attribute, AttributeValue.builder().n(value.toPlainString()).build());
+        }
+    }
+
+    static void putDate(Map<String, AttributeValue> item, String attribute, Date value) {
+        if (value != null) {
+            item.put(attribute, AttributeValue.builder().s(formatDate(value)).build());
+        }
+    }
+
+    // Dates are stored as local yyyy-MM-dd'T'HH:mm:ss; anything else, including out of range fields such as
+    // February 31st, is left to the Joda ISO parser to parse or reject
+    static Date parseDate(String value) {
+        if (value.length() != 19 || value.charAt(4) != '-' || value.charAt(7) != '-' || value.charAt(10) != 'T'
+                || value.charAt(13) != ':' || value.charAt(16) != ':') {
+            return new DateTime(value).toDate();
+        }
+
+        final var year = parseDigits(value, 0, 4);
+        final var month = parseDigits(value, 5, 2);
+        final var day = parseDigits(value, 8, 2);
+        final var hour = parseDigits(value, 11, 2);
+        final var minute = parseDigits(value, 14, 2);
+        final var second = parseDigits(value, 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > getDaysInMonth(year, month) || hour < 0 || hour > 23
+                || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return new DateTime(value).toDate();
+        }
+
+        if (FIXED_OFFSET_SECONDS == null) {
+            return Date.from(LocalDateTime.of(year, month, day, hour, minute, second).atZone(ZONE).toInstant());
+        }
+
+        final var localSeconds = getEpochDay(year, month, day) * SECONDS_PER_DAY
+                + hour * 3600L + minute * 60L + second;
+        return new Date((localSeconds - FIXED_OFFSET_SECONDS) * 1000);
+    }
+
+    static String formatDate(Date value) {
+        final var local = getLocalSeconds(value);
+        final var time = (int) Math.floorMod(local, (long) SECONDS_PER_DAY);
+        final var chars = new char[19];
+        formatDay(chars, Math.floorDiv(local, (long) SECONDS_PER_DAY), '-');
+        chars[10] = 'T';
+        putDigits(chars, 11, time / 3600, 2);
+        chars[13] = ':';
+        putDigits(chars, 14, time / 60 % 60, 2);
+        chars[16] = ':';
+        putDigits(chars, 17, time % 60, 2);
+        return new String(chars);
+    }
+
+    // yyyy_MM, the month suffix of delivered order keys
+    static String formatMonth(Date value) {
+        final var chars = new char[10];
+        formatDay(chars, Math.floorDiv(getLocalSeconds(value), (long) SECONDS_PER_DAY), '_');
+        return new String(chars, 0, 7);
+    }
+
+    private static long getLocalSeconds(Date value) {
+        final var seconds = Math.floorDiv(value.getTime(), 1000L);
+        final int offset = FIXED_OFFSET_SECONDS != null
+                ? FIXED_OFFSET_SECONDS
+                : ZONE.getRules().getOffset(value.toInstant()).getTotalSeconds();
+        return seconds + offset;
+    }
+
+    // Writes yyyy<sep>MM-dd into the first 10 chars
+    private static void formatDay(char[] chars, long epochDay, char monthSeparator) {
+        // Civil date from day count, see http://howardhinnant.github.io/date_algorithms.html
+        final var shifted = epochDay + 719468;
+        final var era = Math.floorDiv(shifted, 146097L);
+        final var dayOfEra = shifted - era * 146097;
+        final var yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        final var dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        final var monthIndex = (5 * dayOfYear + 2) / 153;
+        final var day = dayOfYear - (153 * monthIndex + 2) / 5 + 1;
+        final var month = monthIndex < 10 ? monthIndex + 3 : monthIndex - 9;
+        final var year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        putDigits(chars, 0, (int) year, 4);
+        chars[4] = monthSeparator;
+        putDigits(chars, 5, (int) month, 2);
+        chars[7] = '-';
+        putDigits(chars, 8, (int) day, 2);
+    }
+
+    private static int getDaysInMonth(int year, int month) {
+        if (month == 2) {
+            return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+        }
+
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    private static long getEpochDay(int year, int month, int day) {
+        final long y = month <= 2 ? year - 1 : year;
+        final var era = Math.floorDiv(y, 400L);
+        final var yearOfEra = y - era * 400;
+        final var dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        final var dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int parseDigits(String value, int start, int length) {
+        var result = 0;
+        for (var i = start; i < start + length; i++) {
+            final var digit = value.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+
+            result = result * 10 + digit;
+        }
+
+        return result;
+    }
+
+    private static void putDigits(char[] chars, int start, int value, int length) {
+        for (var i = start + length - 1; i >= start; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.trilogy.learning.market.repository.dynamodb;
+
+import com.trilogy.learning.market.model.Order;
+import com.trilogy.learning.market.model.ResultPage;
+import com.trilogy.learning.market.repository.IOrderAsyncRepository;
+import com.trilogy.learning.market.requests.UpdateOrderRequest;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static com.trilogy.learning.market.repository.dynamodb.AbstractRepository.GSI1;
+import static com.trilogy.learning.market.repository.dynamodb.AbstractRepository.GSI1_PK_ATTRIBUTE;
+import static com.trilogy.learning.market.repository.dynamodb.AbstractRepository.PK_ATTRIBUTE;
+import static com.trilogy.learning.market.repository.dynamodb.AbstractRepository.SK_ATTRIBUTE;
+
+// Non-blocking counterpart of OrderRepository, sharing its request building and item mapping
+@Singleton
+public class OrderAsyncRepository implements IOrderAsyncRepository {
+    private final DynamoDbAsyncClient dynamoDbClient;
+    private final OrderRepository repository;
+
+    @Inject
+    public OrderAsyncRepository(DynamoDbAsyncClient dynamoDbAsyncClient, OrderRepository orderRepository) {
+        dynamoDbClient = dynamoDbAsyncClient;
+        repository = orderRepository;
+    }
+
+    @Override
+    public String getTableName() {
+        return repository.getTableName();
+    }
+
+    @Override
+    public CompletableFuture<Order> getById(String id) {
+        return dynamoDbClient.getItem(repository.getItemRequest(id))
+                .thenApply(response -> repository.getOrderFromItem(response.item()));
+    }
+
+    @Override
+    public CompletableFuture<Order> getByIdDetails(String id) {
+        final var request = repository.getPartitionQueryRequest(PK_ATTRIBUTE, OrderRepository.KEY_PREFIX + id,
+                null, null, null);
+        return queryAll(request).thenApply(repository::getOrderDetailsFromItems);
+    }
+
+    @Override
+    public CompletableFuture<List<Order>> getByCustomerEmail(String email) {
+        final var request = repository.getParentQueryRequest(PK_ATTRIBUTE, CustomerRepository.KEY_PREFIX + email,
+                SK_ATTRIBUTE, OrderRepository.KEY_PREFIX, null, null);
+        return queryAll(request).thenApply(items -> repository.getCustomerOrdersFromItems(items, email));
+    }
+
+    @Override
+    public CompletableFuture<ResultPage<Order>> getByCustomerEmail(String email, Integer limit, String nextToken) {
+        final var request = repository.getParentQueryRequest(PK_ATTRIBUTE, CustomerRepository.KEY_PREFIX + email,
+                SK_ATTRIBUTE, OrderRepository.KEY_PREFIX, limit, nextToken);
+        return dynamoDbClient.query(request).thenApply(response -> ResultPage.<Order>builder()
+                .items(repository.getCustomerOrdersFromItems(response.items(), email))
+                .nextToken(repository.getNextToken(response))
+                .build());
+    }
+
+    @Override
+    public CompletableFuture<List<Order>> getByProductId(String productId) {
+        final var request = repository.getPartitionQueryRequest(GSI1_PK_ATTRIBUTE,
+                ProductRepository.KEY_PREFIX + productId, GSI1, null, null);
+        return queryAll(request).thenApply(repository::getOrdersFromItems);
+    }
+
+    @Override
+    public CompletableFuture<ResultPage<Order>> getByProductId(String productId, Integer limit, String nextToken) {
+        final var request = repository.getPartitionQueryRequest(GSI1_PK_ATTRIBUTE,
+                ProductRepository.KEY_PREFIX + productId, GSI1, limit, nextToken);
+        return queryPage(request);
+    }
+
+    @Override
+    public CompletableFuture<List<Order>> getByStatus(Order.Status status, String month) {
+        return repository.getStatusQuery(status, month, null).queryAll(this::queryAll)
+                .thenApply(repository::getOrdersFromItems);
+    }
+
+    @Override
+    public CompletableFuture<ResultPage<Order>> getByStatus(Order.Status status, String month,
+                                                            Integer limit, String nextToken) {
+        return repository.getStatusQuery(status, month, null)
+                .queryPage(dynamoDbClient::query, limit, nextToken)
+                .thenApply(page -> ResultPage.<Order>builder()
+                        .items(repository.getOrdersFromItems(page.getItems()))
+                        .nextToken(page.getNextToken())
+                        .build());
+    }
+
+    @Override
+    public CompletableFuture<Void> addOrder(Order order) {
+        final var items = repository.getItemsFromOrderDetails(order);
+        return BatchExecutor.writeItemsAsync(dynamoDbClient, getTableName(), repository.getPutRequests(items))
+                .thenApply(capacities -> null);
+    }
+
+    @Override
+    public CompletableFuture<Order> updateOrder(UpdateOrderRequest order) {
+        final var request = repository.getUpdateOrderRequest(order);
+        if (request == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return dynamoDbClient.updateItem(request)
+                .thenApply(response -> repository.getOrderFromItem(response.attributes()));
+    }
+
+    @Override
+    public CompletableFuture<Order> deleteOrder(String id) {
+        final var request = repository.getDeleteItemRequest(repository.getOrderKey(id));
+        return dynamoDbClient.deleteItem(request)
+                .thenApply(response -> repository.getOrderFromItem(response.attributes()));
+    }
+
+    private CompletableFuture<List<Map<String, AttributeValue>>> queryAll(QueryRequest request) {
+        return AbstractRepository.queryAll(dynamoDbClient, request);
+    }
+
+    private CompletableFuture<ResultPage<Order>> queryPage(QueryRequest request) {
+        return dynamoDbClient.query(request).thenApply(response -> ResultPage.<Order>builder()
+                .items(repository.getOrdersFromItems(response.items()))
+                .nextToken(repository.getNextToken(response))
+                .build());
+    }
+}
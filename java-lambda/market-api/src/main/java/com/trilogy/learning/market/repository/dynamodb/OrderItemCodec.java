@@ -0,0 +1,85 @@
+package com.trilogy.learning.market.repository.dynamodb;
+
+import com.trilogy.learning.market.model.Order;
+import com.trilogy.learning.market.repository.dynamodb.entity.EntityType;
+import com.trilogy.learning.market.repository.dynamodb.entity.Metadata;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.trilogy.learning.market.repository.dynamodb.AbstractRepository.PK_ATTRIBUTE;
+import static com.trilogy.learning.market.repository.dynamodb.AbstractRepository.SEP;
+import static com.trilogy.learning.market.repository.dynamodb.AbstractRepository.SK_ATTRIBUTE;
+import static com.trilogy.learning.market.repository.dynamodb.OrderRepository.*;
+
+// Maps the order item ORDER#<id> and the customer's copy of it CUST#<email> / ORDER#<status>#<id>
+final class OrderItemCodec {
+    private static final int ENTRIES = 8;
+
+    private OrderItemCodec() {
+    }
+
+    static Order decodeOrder(Map<String, AttributeValue> item) {
+        final var id = ItemValues.getSegment(item, PK_ATTRIBUTE, 1, null);
+        if (!ItemValues.startsWith(item, SK_ATTRIBUTE, KEY_PREFIX)) {
+            return Order.builder().id(id).build();
+        }
+
+        // Projected reads may leave the status out
+        final var status = ItemValues.getSegment(item, STATUS_ATTRIBUTE, 1, null);
+        return Order.builder()
+                .id(id)
+                .status(status != null ? Order.Status.valueOf(status) : null)
+                .createdAt(ItemValues.getDate(item, DATE_CREATED_ATTRIBUTE))
+                .deliveredAt(ItemValues.getDate(item, DATE_DELIVERED_ATTRIBUTE))
+                .customerEmail(ItemValues.getString(item, CUSTOMER_EMAIL_ATTRIBUTE, ""))
+                .total(ItemValues.getBigDecimal(item, TOTAL_ATTRIBUTE))
+                .build();
+    }
+
+    static Order decodeCustomerOrder(Map<String, AttributeValue> item, String email) {
+        final var statusAndId = ItemValues.getString(item, CUSTOMERS_ORDER_STATUS_AND_ID_ATTRIBUTE, "");
+        final var status = ItemValues.getSegment(statusAndId, 1, null);
+        final var id = ItemValues.getSegment(statusAndId, 2, null);
+        if (status == null || id == null) {
+            return null;
+        }
+
+        return Order.builder()
+                .status(Order.Status.valueOf(status))
+                .id(id)
+                .createdAt(ItemValues.getDate(item, CUSTOMERS_ORDER_DATE_CREATED_ATTRIBUTE))
+                .deliveredAt(ItemValues.getDate(item, CUSTOMERS_ORDER_DATE_DELIVERED_ATTRIBUTE))
+                .total(ItemValues.getBigDecimal(item, CUSTOMERS_ORDER_TOTAL_ATTRIBUTE))
+                .customerEmail(email)
+                .build();
+    }
+
+    // The status value carries the delivery month and shard suffix, so the repository computes it
+    static Map<String, AttributeValue> encodeOrder(Order order, String statusValue) {
+        final var item = new HashMap<String, AttributeValue>(ENTRIES * 2);
+        ItemValues.putString(item, PK_ATTRIBUTE, KEY_PREFIX + order.getId());
+        ItemValues.putString(item, SK_ATTRIBUTE, KEY_PREFIX + order.getId());
+        ItemValues.putString(item, CUSTOMER_EMAIL_ATTRIBUTE, order.getCustomerEmail());
+        ItemValues.putDate(item, DATE_CREATED_ATTRIBUTE, order.getCreatedAt());
+        ItemValues.putDate(item, DATE_DELIVERED_ATTRIBUTE, order.getDeliveredAt());
+        ItemValues.putString(item, STATUS_ATTRIBUTE, statusValue);
+        ItemValues.putNumber(item, TOTAL_ATTRIBUTE, order.getTotal());
+        ItemValues.putString(item, Metadata.getEntityTypeAttributeName(), EntityType.Order.toString());
+        return item;
+    }
+
+    static Map<String, AttributeValue> encodeCustomerOrder(Order order) {
+        final var item = new HashMap<String, AttributeValue>(ENTRIES * 2);
+        ItemValues.putString(item, PK_ATTRIBUTE, CustomerRepository.getPartitonKey(order.getCustomerEmail()));
+        ItemValues.putString(item, CUSTOMERS_ORDER_STATUS_AND_ID_ATTRIBUTE,
+                KEY_PREFIX + order.getStatus() + SEP + order.getId());
+        ItemValues.putDate(item, CUSTOMERS_ORDER_DATE_CREATED_ATTRIBUTE, order.getCreatedAt());
+        ItemValues.putDate(item, CUSTOMERS_ORDER_DATE_DELIVERED_ATTRIBUTE, order.getDeliveredAt());
+        ItemValues.putNumber(item, CUSTOMERS_ORDER_TOTAL_ATTRIBUTE, order.getTotal());
+        ItemValues.putString(item, CUSTOMERS_ORDER_ID_ATTRIBUTE, KEY_PREFIX + order.getId());
+        ItemValues.putString(item, Metadata.getEntityTypeAttributeName(), EntityType.CustomerOrder.toString());
+        return item;
+    }
+}
@@ -2,12 +2,11 @@ package com.trilogy.learning.market.repository.dynamodb;
 
 import com.trilogy.learning.market.model.Order;
 import com.trilogy.learning.market.model.OrderedProduct;
+import com.trilogy.learning.market.model.ResultPage;
 import com.trilogy.learning.market.repository.IOrderRepository;
-import com.trilogy.learning.market.repository.dynamodb.entity.EntityType;
-import com.trilogy.learning.market.repository.dynamodb.entity.Metadata;
 import com.trilogy.learning.market.requests.UpdateOrderRequest;
 import lombok.extern.jbosslog.JBossLog;
-import org.joda.time.DateTime;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 
@@ -23,28 +22,72 @@ import static java.lang.String.format;
 public class OrderRepository extends AbstractRepository<Order> implements IOrderRepository {
     static final String KEY_PREFIX = "ORDER#";
     // Order Entity
-    private static final String CUSTOMER_EMAIL_ATTRIBUTE = "CustomerEmail";
-    private static final String DATE_DELIVERED_ATTRIBUTE = "DateDelivered";
-    private static final String STATUS_ATTRIBUTE = GSI1_PK_ATTRIBUTE;
-    private static final String DATE_CREATED_ATTRIBUTE = GSI1_SK_ATTRIBUTE;
-    private static final String TOTAL_ATTRIBUTE = DATA_ATTRIBUTE;
+    static final String CUSTOMER_EMAIL_ATTRIBUTE = "CustomerEmail";
+    static final String DATE_DELIVERED_ATTRIBUTE = "DateDelivered";
+    static final String STATUS_ATTRIBUTE = GSI1_PK_ATTRIBUTE;
+    static final String DATE_CREATED_ATTRIBUTE = GSI1_SK_ATTRIBUTE;
+    static final String TOTAL_ATTRIBUTE = DATA_ATTRIBUTE;
     // Orders in the Customer -> Order relation
-    private static final String CUSTOMERS_ORDER_STATUS_AND_ID_ATTRIBUTE = SK_ATTRIBUTE;
-    private static final String CUSTOMERS_ORDER_ID_ATTRIBUTE = GSI1_PK_ATTRIBUTE;
-    private static final String CUSTOMERS_ORDER_DATE_CREATED_ATTRIBUTE = GSI1_SK_ATTRIBUTE;
-    private static final String CUSTOMERS_ORDER_DATE_DELIVERED_ATTRIBUTE = DATE_DELIVERED_ATTRIBUTE;
-    private static final String CUSTOMERS_ORDER_TOTAL_ATTRIBUTE = DATA_ATTRIBUTE;
+    static final String CUSTOMERS_ORDER_STATUS_AND_ID_ATTRIBUTE = SK_ATTRIBUTE;
+    static final String CUSTOMERS_ORDER_ID_ATTRIBUTE = GSI1_PK_ATTRIBUTE;
+    static final String CUSTOMERS_ORDER_DATE_CREATED_ATTRIBUTE = GSI1_SK_ATTRIBUTE;
+    static final String CUSTOMERS_ORDER_DATE_DELIVERED_ATTRIBUTE = DATE_DELIVERED_ATTRIBUTE;
+    static final String CUSTOMERS_ORDER_TOTAL_ATTRIBUTE = DATA_ATTRIBUTE;
     // OrderedProduct Entity
-    private static final String ORDERED_PRODUCT_ID_ATTRIBUTE = SK_ATTRIBUTE;
-    private static final String ORDERED_PRODUCT_ID_PK_ATTRIBUTE = GSI1_PK_ATTRIBUTE;
-    private static final String ORDERED_PRODUCT_ORDER_ID_ATTRIBUTE = GSI1_SK_ATTRIBUTE;
-    private static final String ORDERED_PRODUCT_NAME_ATTRIBUTE = "Name";
-    private static final String ORDERED_PRODUCT_PRICE_ATTRIBUTE = "Price";
-    private static final String ORDERED_PRODUCT_QUANTITY_ATTRIBUTE = DATA_ATTRIBUTE;
+    static final String ORDERED_PRODUCT_ID_ATTRIBUTE = SK_ATTRIBUTE;
+    static final String ORDERED_PRODUCT_ID_PK_ATTRIBUTE = GSI1_PK_ATTRIBUTE;
+    static final String ORDERED_PRODUCT_ORDER_ID_ATTRIBUTE = GSI1_SK_ATTRIBUTE;
+    static final String ORDERED_PRODUCT_NAME_ATTRIBUTE = "Name";
+    static final String ORDERED_PRODUCT_PRICE_ATTRIBUTE = "Price";
+    static final String ORDERED_PRODUCT_QUANTITY_ATTRIBUTE = DATA_ATTRIBUTE;
+    // Attributes backing each Order field, id and status come from the keys where not listed
+    private static final Map<String, List<String>> ORDER_FIELD_ATTRIBUTES = Map.of(
+            "id", List.of(),
+            "status", List.of(STATUS_ATTRIBUTE),
+            "total", List.of(TOTAL_ATTRIBUTE),
+            "createdAt", List.of(DATE_CREATED_ATTRIBUTE),
+            "deliveredAt", List.of(DATE_DELIVERED_ATTRIBUTE),
+            "customerEmail", List.of(CUSTOMER_EMAIL_ATTRIBUTE));
+    private static final Map<String, List<String>> CUSTOMER_ORDER_FIELD_ATTRIBUTES = Map.of(
+            "id", List.of(),
+            "status", List.of(),
+            "total", List.of(CUSTOMERS_ORDER_TOTAL_ATTRIBUTE),
+            "createdAt", List.of(CUSTOMERS_ORDER_DATE_CREATED_ATTRIBUTE),
+            "deliveredAt", List.of(CUSTOMERS_ORDER_DATE_DELIVERED_ATTRIBUTE),
+            "customerEmail", List.of());
+
+    private final int statusShards;
+    private final int maxStatusShards;
+    private final boolean readUnshardedStatus;
+
+    public OrderRepository(DynamoDbClient dynamoDbClient, int statusShards) {
+        this(dynamoDbClient, statusShards, Optional.empty(), true);
+    }
 
+    // Orders of one status are spread over statusShards GSI1 partitions to avoid a write hotspot. Queries read
+    // every shard up to maxStatusShards, the most orders were ever written with, so lowering statusShards does not
+    // hide orders in the shards no longer written. Migrating from one partition to shards:
+    // 1. raise status-shards; queries keep reading the unsharded key, so older orders stay visible
+    // 2. backfill: move GSI1PK of every order still at the unsharded key to its shard, see getStatusDateValue
+    // 3. set read-unsharded-status=false to save the extra query per status read
     @Inject
-    public OrderRepository(DynamoDbClient dynamoDbClient) {
+    public OrderRepository(DynamoDbClient dynamoDbClient,
+                           @ConfigProperty(name = "market.orders.status-shards", defaultValue = "1") int statusShards,
+                           @ConfigProperty(name = "market.orders.max-status-shards") Optional<Integer> maxStatusShards,
+                           @ConfigProperty(name = "market.orders.read-unsharded-status", defaultValue = "true")
+                                   boolean readUnshardedStatus) {
         super(dynamoDbClient);
+        if (statusShards < 1) {
+            throw new IllegalArgumentException("market.orders.status-shards");
+        }
+
+        if (maxStatusShards.orElse(statusShards) < statusShards) {
+            throw new IllegalArgumentException("market.orders.max-status-shards");
+        }
+
+        this.statusShards = statusShards;
+        this.maxStatusShards = maxStatusShards.orElse(statusShards);
+        this.readUnshardedStatus = readUnshardedStatus;
     }
 
     @Override
@@ -55,32 +98,72 @@ public class OrderRepository extends AbstractRepository<Order> implements IOrder
 
     @Override
     public Order getByIdDetails(String id) {
-        final var response = queryPartition(KEY_PREFIX + id);
-        return getOrderDetailsFromResponse(response);
+        final var items = queryPartition(KEY_PREFIX + id);
+        return getOrderDetailsFromItems(items);
     }
 
     @Override
     public List<Order> getByCustomerEmail(String email) {
+        return getByCustomerEmail(email, (Set<String>) null);
+    }
+
+    @Override
+    public List<Order> getByCustomerEmail(String email, Set<String> fields) {
+        final var items = queryParent(PK_ATTRIBUTE, CustomerRepository.KEY_PREFIX + email,
+                SK_ATTRIBUTE, KEY_PREFIX, getCustomerOrderProjection(fields));
+        return getCustomerOrdersFromItems(items, email);
+    }
+
+    @Override
+    public ResultPage<Order> getByCustomerEmail(String email, Integer limit, String nextToken, Set<String> fields) {
         final var response = queryParent(PK_ATTRIBUTE, CustomerRepository.KEY_PREFIX + email,
-                SK_ATTRIBUTE, KEY_PREFIX);
-        return getCustomerOrdersFromResponse(response, email);
+                SK_ATTRIBUTE, KEY_PREFIX, limit, nextToken, getCustomerOrderProjection(fields));
+        return ResultPage.<Order>builder()
+                .items(getCustomerOrdersFromItems(response.items(), email))
+                .nextToken(getNextToken(response))
+                .build();
     }
 
     @Override
     public List<Order> getByProductId(String productId) {
-        final var response = queryGsi1Partition(ProductRepository.KEY_PREFIX + productId);
-        return getOrdersFromResponse(response);
+        return getByProductId(productId, (Set<String>) null);
+    }
+
+    @Override
+    public List<Order> getByProductId(String productId, Set<String> fields) {
+        final var items = queryGsi1Partition(ProductRepository.KEY_PREFIX + productId, getOrderProjection(fields));
+        return getOrdersFromItems(items);
+    }
+
+    @Override
+    public ResultPage<Order> getByProductId(String productId, Integer limit, String nextToken, Set<String> fields) {
+        final var response = queryGsi1Partition(ProductRepository.KEY_PREFIX + productId, limit, nextToken,
+                getOrderProjection(fields));
+        return ResultPage.<Order>builder()
+                .items(getOrdersFromItems(response.items()))
+                .nextToken(getNextToken(response))
+                .build();
     }
 
     @Override
     public List<Order> getByStatus(Order.Status status, String month) {
-        var key = KEY_PREFIX + status.toString();
-        if (month != null && month.length() > 0) {
-            key += SEP + month;
-        }
+        return getByStatus(status, month, null);
+    }
 
-        final var response = queryGsi1Partition(key);
-        return getOrdersFromResponse(response);
+    @Override
+    public List<Order> getByStatus(Order.Status status, String month, Set<String> fields) {
+        final var items = queryAll(getStatusQuery(status, month, fields));
+        return getOrdersFromItems(items);
+    }
+
+    @Override
+    public ResultPage<Order> getByStatus(Order.Status status, String month, Integer limit, String nextToken,
+                                         Set<String> fields) {
+        final var page = queryPage(getStatusQuery(status, month, fields), limit, nextToken);
+        return ResultPage.<Order>builder()
+                .items(getOrdersFromItems(page.getItems()))
+                .nextToken(page.getNextToken())
+                .build();
     }
 
     @Override
@@ -91,16 +174,24 @@ public class OrderRepository extends AbstractRepository<Order> implements IOrder
 
     @Override
     public Order updateOrder(UpdateOrderRequest order) {
+        final var request = getUpdateOrderRequest(order);
+        if (request == null) {
+            return null;
+        }
+
+        final var response = dynamoDbClient.updateItem(request);
+        return getOrderFromItem(response.attributes());
+    }
+
+    UpdateItemRequest getUpdateOrderRequest(UpdateOrderRequest order) {
         final var updateValues = new HashMap<String, AttributeValue>();
         String updateExpression = "";
         if (order.getStatus() != null) {
             updateExpression += "SET " + STATUS_ATTRIBUTE + "=:status";
             final var now = new Date();
-            final var value = getStatusDateValue(order.getStatus(), now);
+            final var value = getStatusDateValue(order.getStatus(), now, order.getId());
             if (order.getStatus() == Order.Status.DELIVERED) {
-                var date = new DateTime(now);
-                updateValues.put(":dateDelivered", AttributeValue.builder()
-                        .s(date.toString("yyyy-MM-dd'T'HH:mm:ss")).build());
+                updateValues.put(":dateDelivered", AttributeValue.builder().s(ItemValues.formatDate(now)).build());
                 updateExpression += ", " + DATE_DELIVERED_ATTRIBUTE + "=:dateDelivered";
             }
 
@@ -108,21 +199,57 @@ public class OrderRepository extends AbstractRepository<Order> implements IOrder
         }
 
         if (updateValues.size() > 0) {
-            final var response = updateItem(getOrderKey(order.getId()), updateExpression, null, updateValues);
-            return getOrderFromItem(response.attributes());
+            return getUpdateItemRequest(getOrderKey(order.getId()), updateExpression, null, updateValues);
         }
 
         return null;
     }
 
-    private String getStatusDateValue(Order.Status status, Date date) {
+    ShardedQuery getStatusQuery(Order.Status status, String month, Set<String> fields) {
+        return getGsi1ShardedQuery(getStatusKeys(status, month), getOrderProjection(fields));
+    }
+
+    // The unsharded key holds orders written before sharding was enabled, until they are backfilled
+    List<String> getStatusKeys(Order.Status status, String month) {
+        final var key = getStatusKey(status, month);
+        final var keys = new ArrayList<String>(maxStatusShards + 1);
+        if (readUnshardedStatus || statusShards == 1) {
+            keys.add(key);
+        }
+
+        if (maxStatusShards > 1) {
+            for (var shard = 0; shard < maxStatusShards; shard++) {
+                keys.add(key + SEP + shard);
+            }
+        }
+
+        return keys;
+    }
+
+    private String getStatusShardSuffix(String orderId) {
+        if (statusShards == 1) {
+            return "";
+        }
+
+        return SEP + Math.floorMod(orderId.hashCode(), statusShards);
+    }
+
+    String getStatusKey(Order.Status status, String month) {
+        var key = KEY_PREFIX + status.toString();
+        if (month != null && month.length() > 0) {
+            key += SEP + month;
+        }
+
+        return key;
+    }
+
+    private String getStatusDateValue(Order.Status status, Date date, String orderId) {
         var value = KEY_PREFIX + status.toString();
         if (status == Order.Status.DELIVERED) {
-            var dateFormatter = new DateTime(date);
-            value += SEP + dateFormatter.toString("yyyy_MM");
+            value += SEP + ItemValues.formatMonth(date);
         }
 
-        return value;
+        return value + getStatusShardSuffix(orderId);
     }
 
     @Override
@@ -131,18 +258,21 @@ public class OrderRepository extends AbstractRepository<Order> implements IOrder
         return getOrderFromItem(response.attributes());
     }
 
-    private Map<String, AttributeValue> getOrderKey(String id) {
+    private Projection getOrderProjection(Set<String> fields) {
+        return Projection.of(fields, ORDER_FIELD_ATTRIBUTES,
+                PK_ATTRIBUTE, SK_ATTRIBUTE, GSI1_PK_ATTRIBUTE, GSI1_SK_ATTRIBUTE);
+    }
+
+    private Projection getCustomerOrderProjection(Set<String> fields) {
+        return Projection.of(fields, CUSTOMER_ORDER_FIELD_ATTRIBUTES, PK_ATTRIBUTE, SK_ATTRIBUTE);
+    }
+
+    Map<String, AttributeValue> getOrderKey(String id) {
         return getKeyAttributes(KEY_PREFIX + id, KEY_PREFIX + id);
     }
 
-    private List<Order> getCustomerOrdersFromResponse(QueryResponse response, String email) {
+    List<Order> getCustomerOrdersFromItems(List<Map<String, AttributeValue>> items, String email) {
         final var orders = new ArrayList<Order>();
-        if (!response.hasItems()) {
-            return orders;
-        }
-
-        final var items = response.items();
-        System.out.println("getOrdersFromResponse(): response.items()=" + items.toString());
         for (var item : items) {
             final var order = getCustomerOrderFromItem(item, email);
             if (order != null) {
@@ -153,14 +283,13 @@ public class OrderRepository extends AbstractRepository<Order> implements IOrder
         return orders;
     }
 
-    private Order getOrderDetailsFromResponse(QueryResponse response) {
-        if (!response.hasItems()) {
+    Order getOrderDetailsFromItems(List<Map<String, AttributeValue>> items) {
+        if (items.isEmpty()) {
             return null;
         }
 
         Order order = null;
         final var products = new ArrayList<OrderedProduct>();
-        final var items = response.items();
         for (var item : items) {
             if (item.get(SK_ATTRIBUTE).s().startsWith(KEY_PREFIX)) {
                 order = getOrderFromItem(item);
@@ -180,13 +309,8 @@ public class OrderRepository extends AbstractRepository<Order> implements IOrder
         return order;
     }
 
-    private List<Order> getOrdersFromResponse(QueryResponse response) {
+    List<Order> getOrdersFromItems(List<Map<String, AttributeValue>> items) {
         final var orders = new ArrayList<Order>();
-        if (!response.hasItems()) {
-            return orders;
-        }
-
-        final var items = response.items();
         for (var item : items) {
             if (item.get(PK_ATTRIBUTE).s().startsWith(KEY_PREFIX)) {
                 final var order = getOrderFromItem(item);
@@ -199,21 +323,7 @@ public class OrderRepository extends AbstractRepository<Order> implements IOrder
 
     @Override
     public Order getOrderFromItem(Map<String, AttributeValue> item) {
-        log.info(item);
-        if (isOrderEntity(item)) {
-            return Order.builder()
-                    .id(getSecondValueOrDefault(item, PK_ATTRIBUTE, null))
-                    .status(Order.Status.valueOf(getSecondValueOrDefault(item, STATUS_ATTRIBUTE, null)))
-                    .createdAt(getDateOrDefault(item, DATE_CREATED_ATTRIBUTE, null))
-                    .deliveredAt(getDateOrDefault(item, DATE_DELIVERED_ATTRIBUTE, null))
-                    .customerEmail(getStringOrDefault(item, CUSTOMER_EMAIL_ATTRIBUTE, ""))
-                    .total(getBigDecimalOrDefault(item, TOTAL_ATTRIBUTE, null))
-                    .build();
-        }
-
-        return Order.builder()
-                .id(getSecondValueOrDefault(item, PK_ATTRIBUTE, null))
-                .build();
+        return OrderItemCodec.decodeOrder(item);
     }
 
     @Override
@@ -223,11 +333,12 @@ public class OrderRepository extends AbstractRepository<Order> implements IOrder
         final var updateRequest = Update.builder()
                 .tableName(getTableName())
                 .key(getOrderKey(orderId))
-                .conditionExpression(format("%s = :old", STATUS_ATTRIBUTE))
+                // Matches the open status in any shard, so changing the shard count keeps old orders payable
+                .conditionExpression(format("begins_with(%s, :old)", STATUS_ATTRIBUTE))
                 .updateExpression(format("SET %s = :new", STATUS_ATTRIBUTE))
                 .expressionAttributeValues(Map.of(
-                        ":new" , getStatusAttributeValue(newStatus),
-                        ":old" , getStatusAttributeValue(Order.Status.OPEN)))
+                        ":new" , getStatusAttributeValue(newStatus, orderId),
+                        ":old" , getStringValue(KEY_PREFIX + Order.Status.OPEN)))
                 .build();
         requests.add(TransactWriteItem.builder().update(updateRequest).build());
         final var deleteRequest = Delete.builder()
@@ -254,77 +365,34 @@ public class OrderRepository extends AbstractRepository<Order> implements IOrder
         return key;
     }
 
-    private AttributeValue getStatusAttributeValue(Order.Status status) {
-        return AttributeValue.builder().s(getStatusDateValue(status, new Date())).build();
+    private AttributeValue getStatusAttributeValue(Order.Status status, String orderId) {
+        return AttributeValue.builder().s(getStatusDateValue(status, new Date(), orderId)).build();
     }
 
     private String getCustomerOrderStatusValue(Order.Status status, String orderId) {
         return format("%s#%s", status.toString(), orderId);
     }
 
-    private boolean isOrderEntity(Map<String, AttributeValue> item) {
-        return getStringOrDefault(item, SK_ATTRIBUTE, "").startsWith(KEY_PREFIX);
-    }
-
     private Order getCustomerOrderFromItem(Map<String, AttributeValue> item, String email) {
-        final var orderStatusAndId = item.get(CUSTOMERS_ORDER_STATUS_AND_ID_ATTRIBUTE).s();
-        var parts = orderStatusAndId.split(SEP);
-        if (parts.length < 3) {
-            return null;
-        }
-
-        return Order.builder()
-                .status(Order.Status.valueOf(parts[1]))
-                .id(parts[2])
-                .createdAt(getDateOrDefault(item, CUSTOMERS_ORDER_DATE_CREATED_ATTRIBUTE, null))
-                .deliveredAt(getDateOrDefault(item, CUSTOMERS_ORDER_DATE_DELIVERED_ATTRIBUTE, null))
-                .total(getBigDecimalOrDefault(item, CUSTOMERS_ORDER_TOTAL_ATTRIBUTE, null))
-                .customerEmail(email)
-                .build();
+        return OrderItemCodec.decodeCustomerOrder(item, email);
     }
 
     private OrderedProduct getOrderedProductFromAttributeValue(Map<String, AttributeValue> value) {
-        log.info("getOrderedProductFromAttributeValue(): value=" + value.toString());
-        return OrderedProduct.builder()
-                .id(getSecondValueOrDefault(value, ORDERED_PRODUCT_ID_ATTRIBUTE, null))
-                .orderId(getSecondValueOrDefault(value, ORDERED_PRODUCT_ORDER_ID_ATTRIBUTE, null))
-                .name(getStringOrDefault(value, ORDERED_PRODUCT_NAME_ATTRIBUTE, ""))
-                .price(getBigDecimalOrDefault(value, ORDERED_PRODUCT_PRICE_ATTRIBUTE, null))
-                .quantity(getIntegerOrDefault(value, ORDERED_PRODUCT_QUANTITY_ATTRIBUTE, null))
-                .build();
+        return OrderedProductItemCodec.decode(value);
     }
 
-    private Map<String, AttributeValue> getItemFromOrderedProduct(OrderedProduct product, String orderId) {
-        var item = new HashMap<String, AttributeValue>();
-        addPkSkIdAttribute(item, orderId, ProductRepository.KEY_PREFIX + product.getId());
-        addPrefixedStringAttribute(item, ORDERED_PRODUCT_ORDER_ID_ATTRIBUTE, orderId);
-        addStringAttribute(item, ORDERED_PRODUCT_ID_PK_ATTRIBUTE, ProductRepository.KEY_PREFIX + product.getId());
-        addIntegerAttribute(item, ORDERED_PRODUCT_QUANTITY_ATTRIBUTE, product.getQuantity());
-        addBigDecimalAttribute(item, ORDERED_PRODUCT_PRICE_ATTRIBUTE, product.getPrice());
-        addStringAttribute(item, ORDERED_PRODUCT_NAME_ATTRIBUTE, product.getName());
-        return item;
+    private Map<String, AttributeValue> getItemFromOrder(Order order) {
+        return OrderItemCodec.encodeOrder(order, getStatusDateValue(order.getStatus(), new Date(), order.getId()));
     }
 
-    private Map<String, AttributeValue> getItemFromOrder(Order order) {
-        var item = new HashMap<String, AttributeValue>();
-        addPkSkIdAttribute(item, order.getId());
-        addStringAttribute(item, CUSTOMER_EMAIL_ATTRIBUTE, order.getCustomerEmail());
-        addDateAttribute(item, DATE_CREATED_ATTRIBUTE, order.getCreatedAt());
-        addDateAttribute(item, DATE_DELIVERED_ATTRIBUTE, order.getDeliveredAt());
-        addStringAttribute(item, STATUS_ATTRIBUTE, getStatusDateValue(order.getStatus(), new Date()));
-        addBigDecimalAttribute(item, TOTAL_ATTRIBUTE, order.getTotal());
-        addStringAttribute(item, Metadata.getEntityTypeAttributeName(), EntityType.Order.toString());
-        return item;
-    }
-
-    private List<Map<String, AttributeValue>> getItemsFromOrderDetails(Order order) {
+    List<Map<String, AttributeValue>> getItemsFromOrderDetails(Order order) {
         var orderItem = getItemFromOrder(order);
         var items = new ArrayList<Map<String, AttributeValue>>();
         items.add(orderItem);
         var customerOrderRelationItem = getCustomerOrderItemFromOrder(order);
         items.add(customerOrderRelationItem);
         for (var product : order.getProducts()) {
-            var orderedProductItem = getItemFromOrderedProduct(product, order.getId());
+            var orderedProductItem = OrderedProductItemCodec.encode(product, order.getId());
             items.add(orderedProductItem);
         }
 
@@ -332,15 +400,7 @@ public class OrderRepository extends AbstractRepository<Order> implements IOrder
     }
 
     private Map<String, AttributeValue> getCustomerOrderItemFromOrder(Order order) {
-        var item = new HashMap<String, AttributeValue>();
-        addPkSkIdAttributeIntoParent(item, order.getStatus().toString() + SEP + order.getId(),
-                CustomerRepository.getPartitonKey(order.getCustomerEmail()));
-        addDateAttribute(item, CUSTOMERS_ORDER_DATE_CREATED_ATTRIBUTE, order.getCreatedAt());
-        addDateAttribute(item, CUSTOMERS_ORDER_DATE_DELIVERED_ATTRIBUTE, order.getDeliveredAt());
-        addBigDecimalAttribute(item, CUSTOMERS_ORDER_TOTAL_ATTRIBUTE, order.getTotal());
-        addPrefixedStringAttribute(item, CUSTOMERS_ORDER_ID_ATTRIBUTE, order.getId());
-        addStringAttribute(item, Metadata.getEntityTypeAttributeName(), EntityType.CustomerOrder.toString());
-        return item;
+        return OrderItemCodec.encodeCustomerOrder(order);
     }
 
     @Override
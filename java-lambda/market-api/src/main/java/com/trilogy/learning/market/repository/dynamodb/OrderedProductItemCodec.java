@@ -0,0 +1,41 @@
+package com.trilogy.learning.market.repository.dynamodb;
+
+import com.trilogy.learning.market.model.OrderedProduct;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.trilogy.learning.market.repository.dynamodb.AbstractRepository.PK_ATTRIBUTE;
+import static com.trilogy.learning.market.repository.dynamodb.OrderRepository.*;
+
+// Maps an order line ORDER#<orderId> / PROD#<id>, indexed by product on GSI1
+final class OrderedProductItemCodec {
+    private static final int ENTRIES = 7;
+
+    private OrderedProductItemCodec() {
+    }
+
+    static OrderedProduct decode(Map<String, AttributeValue> item) {
+        return OrderedProduct.builder()
+                .id(ItemValues.getSegment(item, ORDERED_PRODUCT_ID_ATTRIBUTE, 1, null))
+                .orderId(ItemValues.getSegment(item, ORDERED_PRODUCT_ORDER_ID_ATTRIBUTE, 1, null))
+                .name(ItemValues.getString(item, ORDERED_PRODUCT_NAME_ATTRIBUTE, ""))
+                .price(ItemValues.getBigDecimal(item, ORDERED_PRODUCT_PRICE_ATTRIBUTE))
+                .quantity(ItemValues.getInteger(item, ORDERED_PRODUCT_QUANTITY_ATTRIBUTE, null))
+                .build();
+    }
+
+    static Map<String, AttributeValue> encode(OrderedProduct product, String orderId) {
+        final var item = new HashMap<String, AttributeValue>(ENTRIES * 2);
+        final var productKey = ProductRepository.KEY_PREFIX + product.getId();
+        ItemValues.putString(item, PK_ATTRIBUTE, KEY_PREFIX + orderId);
+        ItemValues.putString(item, ORDERED_PRODUCT_ID_ATTRIBUTE, productKey);
+        ItemValues.putString(item, ORDERED_PRODUCT_ORDER_ID_ATTRIBUTE, KEY_PREFIX + orderId);
+        ItemValues.putString(item, ORDERED_PRODUCT_ID_PK_ATTRIBUTE, productKey);
+        ItemValues.putNumber(item, ORDERED_PRODUCT_QUANTITY_ATTRIBUTE, product.getQuantity());
+        ItemValues.putNumber(item, ORDERED_PRODUCT_PRICE_ATTRIBUTE, product.getPrice());
+        ItemValues.putString(item, ORDERED_PRODUCT_NAME_ATTRIBUTE, product.getName());
+        return item;
+    }
+}
@@ -0,0 +1,75 @@
+package com.trilogy.learning.market.repository.dynamodb;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+// Converts DynamoDB LastEvaluatedKey into an opaque URL-safe token and back
+final class PageToken {
+    private static final String STRING_TYPE = "S";
+    private static final String NUMBER_TYPE = "N";
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final TypeReference<Map<String, Map<String, String>>> TOKEN_TYPE = new TypeReference<>() {};
+
+    private PageToken() {
+    }
+
+    static String encode(Map<String, AttributeValue> lastEvaluatedKey) {
+        if (lastEvaluatedKey == null || lastEvaluatedKey.isEmpty()) {
+            return null;
+        }
+
+        final var values = new HashMap<String, Map<String, String>>();
+        for (var entry : lastEvaluatedKey.entrySet()) {
+            final var value = entry.getValue();
+            if (value.s() != null) {
+                values.put(entry.getKey(), Map.of(STRING_TYPE, value.s()));
+            } else if (value.n() != null) {
+                values.put(entry.getKey(), Map.of(NUMBER_TYPE, value.n()));
+            } else {
+                throw new IllegalArgumentException("Unsupported key attribute type: " + entry.getKey());
+            }
+        }
+
+        try {
+            final var json = objectMapper.writeValueAsBytes(values);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(json);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Page token encoding failed", e);
+        }
+    }
+
+    static Map<String, AttributeValue> decode(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+
+        final Map<String, Map<String, String>> values;
+        try {
+            final var json = Base64.getUrlDecoder().decode(token);
+            values = objectMapper.readValue(new String(json, StandardCharsets.UTF_8), TOKEN_TYPE);
+        } catch (IllegalArgumentException | JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid page token", e);
+        }
+
+        final var key = new HashMap<String, AttributeValue>();
+        for (var entry : values.entrySet()) {
+            final var value = entry.getValue();
+            if (value.containsKey(STRING_TYPE)) {
+                key.put(entry.getKey(), AttributeValue.builder().s(value.get(STRING_TYPE)).build());
+            } else if (value.containsKey(NUMBER_TYPE)) {
+                key.put(entry.getKey(), AttributeValue.builder().n(value.get(NUMBER_TYPE)).build());
+            } else {
+                throw new IllegalArgumentException("Invalid page token");
+            }
+        }
+
+        return key;
+    }
+}
@@ -0,0 +1,42 @@
+package com.trilogy.learning.market.repository.dynamodb;
+
+import com.trilogy.learning.market.model.Payment;
+import com.trilogy.learning.market.repository.IPaymentAsyncRepository;
+import com.trilogy.learning.market.service.RestrictedDynamoDbService;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedAsyncClient;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional.keyEqualTo;
+
+// Non-blocking counterpart of PaymentRepository using the restricted per-user client
+@Singleton
+public class PaymentAsyncRepository implements IPaymentAsyncRepository {
+    private final RestrictedDynamoDbService connectionService;
+    private final PaymentRepository repository;
+
+    @Inject
+    public PaymentAsyncRepository(RestrictedDynamoDbService dbConnectionService, PaymentRepository paymentRepository) {
+        connectionService = dbConnectionService;
+        repository = paymentRepository;
+    }
+
+    @Override
+    public CompletableFuture<List<Payment>> getByCustomerId(String authId, String customerId) {
+        final var pk = repository.getPartitionKey(customerId);
+        return connectionService.withAsyncClient(authId, client -> {
+            final var enhancedClient = DynamoDbEnhancedAsyncClient.builder()
+                    .dynamoDbClient(client)
+                    .build();
+            final var table = enhancedClient.table(repository.getTableName(), PaymentRepository.TABLE_SCHEMA);
+            final var payments = new ArrayList<Payment>();
+            return table.query(keyEqualTo(k -> k.partitionValue(pk)))
+                    .subscribe(p -> payments.addAll(p.items()))
+                    .thenApply(v -> payments);
+        });
+    }
+}
@@ -7,6 +7,7 @@ import lombok.extern.jbosslog.JBossLog;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.StaticTableSchema;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.Put;
 import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
 
@@ -31,7 +32,7 @@ public class PaymentRepository implements IPaymentRepository {
     private static final String DATE_ATTRIBUTE = SK_ATTRIBUTE;
     private static final String AMOUNT_ATTRIBUTE = "Amount";
     private static final PrefixAttributeConverter idConverter = new PrefixAttributeConverter(KEY_PREFIX);
-    private static final StaticTableSchema<Payment> TABLE_SCHEMA =
+    static final StaticTableSchema<Payment> TABLE_SCHEMA =
             StaticTableSchema.builder(Payment.class)
                     .newItemSupplier(Payment::new)
                     .addAttribute(String.class, a -> a.name(ID_ATTRIBUTE)
@@ -48,24 +49,19 @@ public class PaymentRepository implements IPaymentRepository {
                             .setter(Payment::setAmount))
                     .build();
 
-    private DynamoDbTable<Payment> table;
-    private RestrictedDynamoDbService connectionService;
+    private final RestrictedDynamoDbService connectionService;
 
     @Inject
     public PaymentRepository(RestrictedDynamoDbService dbConnectionService) {
         connectionService = dbConnectionService;
     }
 
-    private DynamoDbTable<Payment> getTable() {
-        if (table == null) {
-            final var dynamoDbClient = connectionService.getClient();
-            final var enhancedClient = DynamoDbEnhancedClient.builder()
-                    .dynamoDbClient(dynamoDbClient)
-                    .build();
-            table = enhancedClient.table(getTableName(), TABLE_SCHEMA);
-        }
-
-        return table;
+    // The table handle is cheap and bound to the caller's restricted client, so it is never shared
+    private DynamoDbTable<Payment> getTable(DynamoDbClient client) {
+        final var enhancedClient = DynamoDbEnhancedClient.builder()
+                .dynamoDbClient(client)
+                .build();
+        return enhancedClient.table(getTableName(), TABLE_SCHEMA);
     }
 
     public String getTableName() {
@@ -84,16 +80,19 @@ public class PaymentRepository implements IPaymentRepository {
     }
 
     @Override
-    public List<Payment> getByCustomerId(String customerId) {
+    public List<Payment> getByCustomerId(String authId, String customerId) {
         final var pk = getPartitionKey(customerId);
-        final var payments = new ArrayList<Payment>();
-        getTable().query(keyEqualTo(k -> k.partitionValue(pk))).stream()
-                .forEach(p -> payments.addAll(p.items()));
+        final var payments = connectionService.withClient(authId, client -> {
+            final var items = new ArrayList<Payment>();
+            getTable(client).query(keyEqualTo(k -> k.partitionValue(pk))).stream()
+                    .forEach(p -> items.addAll(p.items()));
+            return items;
+        });
         log.info(payments);
         return payments;
     }
 
-    private String getPartitionKey(String id) {
+    String getPartitionKey(String id) {
         return KEY_PREFIX + id;
     }
 }
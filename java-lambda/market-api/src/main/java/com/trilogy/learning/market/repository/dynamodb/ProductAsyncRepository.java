@@ -0,0 +1,102 @@
+package com.trilogy.learning.market.repository.dynamodb;
+
+import com.trilogy.learning.market.model.Product;
+import com.trilogy.learning.market.repository.IProductAsyncRepository;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbAsyncIndex;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbAsyncTable;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+import static com.trilogy.learning.market.repository.dynamodb.AbstractRepository.GSI1;
+import static software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional.keyEqualTo;
+
+// Non-blocking counterpart of ProductRepository backed by the enhanced async client
+@Singleton
+public class ProductAsyncRepository implements IProductAsyncRepository {
+    private final DynamoDbAsyncClient dynamoDbClient;
+    private final ProductRepository repository;
+    private final DynamoDbAsyncTable<Product> productTable;
+    private final DynamoDbAsyncIndex<Product> productsByCategoryIndex;
+
+    @Inject
+    public ProductAsyncRepository(DynamoDbAsyncClient dynamoDbAsyncClient, ProductRepository productRepository) {
+        dynamoDbClient = dynamoDbAsyncClient;
+        repository = productRepository;
+        final var enhancedClient = DynamoDbEnhancedAsyncClient.builder()
+                .dynamoDbClient(dynamoDbAsyncClient)
+                .build();
+        productTable = enhancedClient.table(repository.getTableName(), repository.getTableSchema());
+        productsByCategoryIndex = productTable.index(GSI1);
+    }
+
+    @Override
+    public CompletableFuture<Product> getById(String id) {
+        final var productCache = repository.getProductCache();
+        final var cached = productCache.get(id);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        return productTable.getItem(repository.getPrimaryKey(id)).thenApply(product -> {
+            productCache.put(product);
+            return product;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Product>> getByIds(Set<String> ids) {
+        final var products = repository.getProductCache().getAll(ids);
+        final var keys = repository.getEntityKeys(repository.getMissingIds(ids, products));
+        if (keys.isEmpty()) {
+            return CompletableFuture.completedFuture(products);
+        }
+
+        return BatchExecutor.getItemsAsync(dynamoDbClient, repository.getTableName(), keys).thenApply(items -> {
+            repository.putProductsFromItems(products, items);
+            return products;
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<Product>> getByCategory(String category) {
+        final var pk = repository.getCategoryKey(category);
+        final var products = new ArrayList<Product>();
+        return productsByCategoryIndex.query(keyEqualTo(k -> k.partitionValue(pk)))
+                .subscribe(p -> products.addAll(p.items()))
+                .thenApply(v -> products);
+    }
+
+    @Override
+    public CompletableFuture<List<Product>> getIfOutOfStock() {
+        return repository.getOutOfStockQuery(null)
+                .queryAll(request -> AbstractRepository.queryAll(dynamoDbClient, request))
+                .thenApply(repository::getProductsFromItems);
+    }
+
+    @Override
+    public CompletableFuture<Void> addProduct(Product product) {
+        return productTable.putItem(product)
+                .thenRun(() -> repository.getProductCache().invalidate(product.getId()));
+    }
+
+    @Override
+    public CompletableFuture<Product> updateProduct(Product product) {
+        return productTable.updateItem(product).thenApply(updated -> {
+            repository.getProductCache().invalidate(product.getId());
+            return updated;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Product> deleteProduct(String id) {
+        return productTable.deleteItem(repository.getPrimaryKey(id)).thenApply(deleted -> {
+            repository.getProductCache().invalidate(id);
+            return deleted;
+        });
+    }
+}
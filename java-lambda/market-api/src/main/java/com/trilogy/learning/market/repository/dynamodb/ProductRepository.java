@@ -1,9 +1,12 @@
 package com.trilogy.learning.market.repository.dynamodb;
 
 import com.trilogy.learning.market.model.Product;
+import com.trilogy.learning.market.model.ResultPage;
 import com.trilogy.learning.market.repository.IProductRepository;
 import com.trilogy.learning.market.repository.dynamodb.entity.Metadata;
+import com.trilogy.learning.market.service.ProductCache;
 import lombok.extern.jbosslog.JBossLog;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import software.amazon.awssdk.enhanced.dynamodb.*;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.StaticTableSchema;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.UpdateBehavior;
@@ -22,7 +25,6 @@ import static software.amazon.awssdk.enhanced.dynamodb.mapper.StaticAttributeTag
 public class ProductRepository extends AbstractRepository<Product> implements IProductRepository {
     static final String KEY_PREFIX = "PROD#";
     static final String CATEGORY_PREFIX = "CAT#";
-    static final String OUT_OF_STOCK_MARKER = "OUT_OF_STOCK";
 
     private static final String CATEGORY_ATTRIBUTE = GSI1_PK_ATTRIBUTE;
     private static final String NAME_ATTRIBUTE = GSI1_SK_ATTRIBUTE;
@@ -30,67 +32,123 @@ public class ProductRepository extends AbstractRepository<Product> implements IP
 
     private static final PrefixAttributeConverter idConverter = new PrefixAttributeConverter(KEY_PREFIX);
     private static final PrefixAttributeConverter categoryConverter = new PrefixAttributeConverter(CATEGORY_PREFIX);
-    private static final StaticTableSchema<Product> TABLE_SCHEMA =
-            StaticTableSchema.builder(Product.class)
-                    .newItemSupplier(Product::new)
-                    .extend(Metadata.getSchema())
-                    .addAttribute(String.class, a -> a.name(PK_ATTRIBUTE)
-                            .getter(Product::getId)
-                            .setter(Product::setId)
-                            .tags(primaryPartitionKey())
-                            .attributeConverter(idConverter))
-                    .addAttribute(String.class, a -> a.name(SK_ATTRIBUTE)
-                            .getter(Product::getId)
-                            .setter(Product::setId)
-                            .tags(primarySortKey())
-                            .attributeConverter(idConverter))
-                    .addAttribute(String.class, a -> a.name(GSI1_PK_ATTRIBUTE)
-                            .getter(Product::getCategory)
-                            .setter(Product::setCategory)
-                            .attributeConverter(categoryConverter)
-                            .tags(secondaryPartitionKey(GSI1), updateBehavior(UpdateBehavior.WRITE_IF_NOT_EXISTS)))
-                    .addAttribute(String.class, a -> a.name(GSI1_SK_ATTRIBUTE)
-                            .getter(Product::getName)
-                            .setter(Product::setName)
-                            .tags(secondarySortKey(GSI1), updateBehavior(UpdateBehavior.WRITE_IF_NOT_EXISTS)))
-                    .addAttribute(BigDecimal.class, a -> a.name(DATA_ATTRIBUTE)
-                            .getter(Product::getPrice)
-                            .setter(Product::setPrice)
-                            .tags(updateBehavior(UpdateBehavior.WRITE_IF_NOT_EXISTS)))
-                    .addAttribute(String.class, a -> a.name(GSI2_PK_ATTRIBUTE)
-                            .getter(Product::getOutOfStockMarker)
-                            .setter(Product::setOutOfStockMarker)
-                            .tags(secondaryPartitionKey(GSI2)))
-                    .addAttribute(String.class, a -> a.name(GSI2_SK_ATTRIBUTE)
-                            .getter(Product::getOutOfStockName)
-                            .setter(Product::setOutOfStockName)
-                            .tags(secondarySortKey(GSI2)))
-                    .build();
+    private static final Map<String, List<String>> FIELD_ATTRIBUTES = Map.of(
+            "id", List.of(),
+            "name", List.of(NAME_ATTRIBUTE, GSI2_SK_ATTRIBUTE),
+            "price", List.of(PRICE_ATTRIBUTE),
+            "category", List.of(CATEGORY_ATTRIBUTE),
+            "outOfStock", List.of(GSI2_PK_ATTRIBUTE));
 
+    private final int maxOutOfStockShards;
+    private final StaticTableSchema<Product> tableSchema;
     private final DynamoDbTable<Product> productTable;
     private final DynamoDbIndex<Product> productsByCategoryIndex;
-    private final DynamoDbIndex<Product> outOfStockIndex;
+    private final ProductCache productCache;
 
+    // Out-of-stock products are spread over outOfStockShards GSI2 partitions to avoid a write hotspot. Reads query
+    // every shard up to maxOutOfStockShards, the most products were ever written with, so lowering
+    // out-of-stock-shards does not hide products in the shards no longer written
     @Inject
-    public ProductRepository(DynamoDbClient dynamoDbClient) {
+    public ProductRepository(DynamoDbClient dynamoDbClient, ProductCache productCache,
+                             @ConfigProperty(name = "market.products.out-of-stock-shards", defaultValue = "8")
+                                     int outOfStockShards,
+                             @ConfigProperty(name = "market.products.max-out-of-stock-shards")
+                                     Optional<Integer> maxOutOfStockShards) {
         super(dynamoDbClient);
+        if (outOfStockShards < 1) {
+            throw new IllegalArgumentException("market.products.out-of-stock-shards");
+        }
+
+        if (maxOutOfStockShards.orElse(outOfStockShards) < outOfStockShards) {
+            throw new IllegalArgumentException("market.products.max-out-of-stock-shards");
+        }
+
+        this.maxOutOfStockShards = maxOutOfStockShards.orElse(outOfStockShards);
+        this.productCache = productCache;
+        tableSchema = getTableSchema(outOfStockShards);
         final var enhancedClient = DynamoDbEnhancedClient.builder()
                 .dynamoDbClient(dynamoDbClient)
                 .build();
-        productTable = enhancedClient.table(getTableName(), TABLE_SCHEMA);
+        productTable = enhancedClient.table(getTableName(), tableSchema);
         productsByCategoryIndex = productTable.index(GSI1);
-        outOfStockIndex = productTable.index(GSI2);
+    }
+
+    static StaticTableSchema<Product> getTableSchema(int outOfStockShards) {
+        return StaticTableSchema.builder(Product.class)
+            .newItemSupplier(Product::new)
+            .extend(Metadata.getSchema())
+            .addAttribute(String.class, a -> a.name(PK_ATTRIBUTE)
+                    .getter(Product::getId)
+                    .setter(Product::setId)
+                    .tags(primaryPartitionKey())
+                    .attributeConverter(idConverter))
+            .addAttribute(String.class, a -> a.name(SK_ATTRIBUTE)
+                    .getter(Product::getId)
+                    .setter(Product::setId)
+                    .tags(primarySortKey())
+                    .attributeConverter(idConverter))
+            .addAttribute(String.class, a -> a.name(GSI1_PK_ATTRIBUTE)
+                    .getter(Product::getCategory)
+                    .setter(Product::setCategory)
+                    .attributeConverter(categoryConverter)
+                    .tags(secondaryPartitionKey(GSI1), updateBehavior(UpdateBehavior.WRITE_IF_NOT_EXISTS)))
+            .addAttribute(String.class, a -> a.name(GSI1_SK_ATTRIBUTE)
+                    .getter(Product::getName)
+                    .setter(Product::setName)
+                    .tags(secondarySortKey(GSI1), updateBehavior(UpdateBehavior.WRITE_IF_NOT_EXISTS)))
+            .addAttribute(BigDecimal.class, a -> a.name(DATA_ATTRIBUTE)
+                    .getter(Product::getPrice)
+                    .setter(Product::setPrice)
+                    .tags(updateBehavior(UpdateBehavior.WRITE_IF_NOT_EXISTS)))
+            .addAttribute(String.class, a -> a.name(GSI2_PK_ATTRIBUTE)
+                    .getter(product -> product.getOutOfStockMarker(outOfStockShards))
+                    .setter(Product::setOutOfStockMarker)
+                    .tags(secondaryPartitionKey(GSI2)))
+            .addAttribute(String.class, a -> a.name(GSI2_SK_ATTRIBUTE)
+                    .getter(Product::getOutOfStockName)
+                    .setter(Product::setOutOfStockName)
+                    .tags(secondarySortKey(GSI2)))
+            .build();
     }
 
     @Override
     public Product getById(String id) {
+        return getById(id, null);
+    }
+
+    // A cached product has every field, so it also serves projected reads; partial products are not cached
+    @Override
+    public Product getById(String id, Set<String> fields) {
+        final var cached = productCache.get(id);
+        if (cached != null) {
+            return cached;
+        }
+
+        final var projection = getProjection(fields);
+        if (projection != null) {
+            final var response = getItem(id, projection);
+            return response.hasItem() && !response.item().isEmpty() ? getProductFromItem(response.item()) : null;
+        }
+
         final var key = getPrimaryKey(id);
-        return productTable.getItem(key);
+        final var product = productTable.getItem(key);
+        productCache.put(product);
+        return product;
     }
 
     @Override
     public List<Product> getByCategory(String category) {
+        return getByCategory(category, null);
+    }
+
+    @Override
+    public List<Product> getByCategory(String category, Set<String> fields) {
         final var pk = getCategoryKey(category);
+        final var projection = getProjection(fields);
+        if (projection != null) {
+            return getProductsFromItems(queryGsi1Partition(pk, projection));
+        }
+
         final var products = new ArrayList<Product>();
         productsByCategoryIndex.query(keyEqualTo(k -> k.partitionValue(pk))).stream()
                 .forEach(p -> products.addAll(p.items()));
@@ -99,47 +157,94 @@ public class ProductRepository extends AbstractRepository<Product> implements IP
 
     @Override
     public List<Product> getIfOutOfStock() {
-        final var pk = getOutOfStockKey();
-        final var products = new ArrayList<Product>();
-        outOfStockIndex.query(keyEqualTo(k -> k.partitionValue(pk))).stream()
-                .forEach(p -> products.addAll(p.items()));
-        return products;
+        return getIfOutOfStock(null);
+    }
+
+    @Override
+    public List<Product> getIfOutOfStock(Set<String> fields) {
+        return getProductsFromItems(queryAll(getOutOfStockQuery(fields)));
+    }
+
+    @Override
+    public ResultPage<Product> getIfOutOfStock(Integer limit, String nextToken, Set<String> fields) {
+        final var page = queryPage(getOutOfStockQuery(fields), limit, nextToken);
+        return ResultPage.<Product>builder()
+                .items(getProductsFromItems(page.getItems()))
+                .nextToken(page.getNextToken())
+                .build();
     }
 
     @Override
     public Map<String, Product> getByIds(Set<String> ids) {
-        final var products = new HashMap<String, Product>();
-        final var response = getItemsByIds(ids);
-        if (!response.responses().containsKey(getTableName())) {
-            return products;
-        }
+        final var products = productCache.getAll(ids);
+        final var items = getItemsByIds(getMissingIds(ids, products));
+        putProductsFromItems(products, items);
+        return products;
+    }
 
-        final var items = response.responses().get(getTableName());
+    Set<String> getMissingIds(Set<String> ids, Map<String, Product> products) {
+        final var missingIds = new HashSet<>(ids);
+        missingIds.removeAll(products.keySet());
+        log.debugf("Products cached: %d of %d", products.size(), ids.size());
+        return missingIds;
+    }
+
+    void putProductsFromItems(Map<String, Product> products, List<Map<String, AttributeValue>> items) {
         for (var item : items) {
             final var product = getProductFromItem(item);
             products.put(product.getId(), product);
+            productCache.put(product);
         }
-
-        return products;
     }
 
     @Override
     public void addProduct(Product product) {
         productTable.putItem(product);
+        productCache.invalidate(product.getId());
     }
 
     @Override
     public Product updateProduct(Product product) {
-        return productTable.updateItem(product);
+        final var updated = productTable.updateItem(product);
+        productCache.invalidate(product.getId());
+        return updated;
     }
 
     @Override
     public Product deleteProduct(String id) {
         final var key = getPrimaryKey(id);
-        return productTable.deleteItem(key);
+        final var deleted = productTable.deleteItem(key);
+        productCache.invalidate(id);
+        return deleted;
+    }
+
+    @Override
+    public Product getProductFromItem(Map<String, AttributeValue> item) {
+        return tableSchema.mapToItem(item);
+    }
+
+    private Projection getProjection(Set<String> fields) {
+        return Projection.of(fields, FIELD_ATTRIBUTES, PK_ATTRIBUTE, SK_ATTRIBUTE);
     }
 
-    private Key getPrimaryKey(String id) {
+    List<Product> getProductsFromItems(List<Map<String, AttributeValue>> items) {
+        final var products = new ArrayList<Product>();
+        for (var item : items) {
+            products.add(getProductFromItem(item));
+        }
+
+        return products;
+    }
+
+    StaticTableSchema<Product> getTableSchema() {
+        return tableSchema;
+    }
+
+    ProductCache getProductCache() {
+        return productCache;
+    }
+
+    Key getPrimaryKey(String id) {
         final var pk = getPartitionKey(id);
         final var sk = getSortKey(id);
         return Key.builder().partitionValue(pk).sortValue(sk).build();
@@ -153,16 +258,23 @@ public class ProductRepository extends AbstractRepository<Product> implements IP
         return KEY_PREFIX + id;
     }
 
-    private String getCategoryKey(String category) {
+    String getCategoryKey(String category) {
         return CATEGORY_PREFIX + category;
     }
 
-    private String getOutOfStockKey() {
-        return OUT_OF_STOCK_MARKER;
+    ShardedQuery getOutOfStockQuery(Set<String> fields) {
+        return getGsi2ShardedQuery(getOutOfStockKeys(), getProjection(fields));
     }
 
-    private Product getProductFromItem(Map<String, AttributeValue> item) {
-        return TABLE_SCHEMA.mapToItem(item);
+    // The unsharded marker is read as well, it holds products written before the index was sharded
+    List<String> getOutOfStockKeys() {
+        final var keys = new ArrayList<String>(maxOutOfStockShards + 1);
+        keys.add(Product.OUT_OF_STOCK_MARKER);
+        for (var shard = 0; shard < maxOutOfStockShards; shard++) {
+            keys.add(Product.OUT_OF_STOCK_MARKER + SEP + shard);
+        }
+
+        return keys;
     }
 
     @Override
@@ -0,0 +1,98 @@
+package com.trilogy.learning.market.repository.dynamodb;
+
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+// Attributes to read for a set of requested model fields, rendered as a ProjectionExpression
+final class Projection {
+    private final Set<String> attributes;
+
+    private Projection(Set<String> attributes) {
+        this.attributes = attributes;
+    }
+
+    // Returns null when every field is wanted; keyAttributes are always read so items can still be mapped
+    static Projection of(Set<String> fields, Map<String, List<String>> attributesByField,
+                         String... keyAttributes) {
+        if (fields == null || fields.isEmpty()) {
+            return null;
+        }
+
+        final var attributes = new TreeSet<>(List.of(keyAttributes));
+        for (var field : fields) {
+            final var fieldAttributes = attributesByField.get(field);
+            if (fieldAttributes == null) {
+                throw new IllegalArgumentException("fields: " + field);
+            }
+
+            attributes.addAll(fieldAttributes);
+        }
+
+        return new Projection(attributes);
+    }
+
+    // A query on an INCLUDE index may only ask for the attributes the index projects
+    Projection restrictTo(Collection<String> available) {
+        final var restricted = new TreeSet<>(attributes);
+        restricted.retainAll(available);
+        return new Projection(restricted);
+    }
+
+    // A sharded page resumes each shard from the keys of its last item, so those must be read whatever was asked
+    Projection with(Collection<String> keyAttributes) {
+        final var extended = new TreeSet<>(attributes);
+        extended.addAll(keyAttributes);
+        return new Projection(extended);
+    }
+
+    static GetItemRequest apply(GetItemRequest request, Projection projection) {
+        if (projection == null) {
+            return request;
+        }
+
+        return request.toBuilder()
+                .projectionExpression(projection.getExpression())
+                .expressionAttributeNames(projection.getNames())
+                .build();
+    }
+
+    static QueryRequest apply(QueryRequest request, Projection projection) {
+        if (projection == null) {
+            return request;
+        }
+
+        final var names = new HashMap<String, String>();
+        if (request.hasExpressionAttributeNames()) {
+            names.putAll(request.expressionAttributeNames());
+        }
+
+        names.putAll(projection.getNames());
+        return request.toBuilder()
+                .projectionExpression(projection.getExpression())
+                .expressionAttributeNames(names)
+                .build();
+    }
+
+    private String getExpression() {
+        return String.join(", ", getNames().keySet());
+    }
+
+    // Placeholders avoid clashes with reserved words such as Data and Name
+    private Map<String, String> getNames() {
+        final var names = new LinkedHashMap<String, String>();
+        var index = 0;
+        for (var attribute : attributes) {
+            names.put("#p" + index++, attribute);
+        }
+
+        return names;
+    }
+}
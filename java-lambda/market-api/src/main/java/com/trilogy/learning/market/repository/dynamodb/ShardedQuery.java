@@ -0,0 +1,196 @@
+package com.trilogy.learning.market.repository.dynamodb;
+
+import lombok.Value;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+// Scatter-gather over the write shards of one index partition; results are merged on the index sort key
+final class ShardedQuery {
+    private static final String SHARD_SEPARATOR = ":";
+
+    private final List<QueryRequest> shardRequests;
+    private final String sortAttribute;
+    private final List<String> keyAttributes;
+
+    // keyAttributes are the table and index keys that make up a LastEvaluatedKey for the index
+    ShardedQuery(List<QueryRequest> shardRequests, String sortAttribute, List<String> keyAttributes) {
+        this.shardRequests = shardRequests;
+        this.sortAttribute = sortAttribute;
+        this.keyAttributes = keyAttributes;
+    }
+
+    CompletableFuture<List<Map<String, AttributeValue>>> queryAll(
+            Function<QueryRequest, CompletableFuture<List<Map<String, AttributeValue>>>> query) {
+        final var futures = new ArrayList<CompletableFuture<List<Map<String, AttributeValue>>>>();
+        for (var request : shardRequests) {
+            futures.add(query.apply(request));
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(v -> {
+            final var items = new ArrayList<Map<String, AttributeValue>>();
+            for (var future : futures) {
+                items.addAll(future.join());
+            }
+
+            items.sort(Comparator.comparing(this::getSortValue));
+            return items;
+        });
+    }
+
+    // Reads up to limit items from every shard still open and keeps the lowest limit items overall;
+    // each shard resumes after the last of its items that made it into the page
+    CompletableFuture<Page> queryPage(Function<QueryRequest, CompletableFuture<QueryResponse>> query,
+                                      Integer limit, String nextToken) {
+        if (limit != null && limit <= 0) {
+            throw new IllegalArgumentException("limit");
+        }
+
+        final var cursors = decodeCursors(nextToken);
+        final var futures = new HashMap<Integer, CompletableFuture<QueryResponse>>();
+        for (var shard = 0; shard < shardRequests.size(); shard++) {
+            final var cursor = cursors.get(shard);
+            if (cursor == null || !cursor.isEmpty()) {
+                final var request = shardRequests.get(shard).toBuilder()
+                        .limit(limit)
+                        .exclusiveStartKey(cursor)
+                        .build();
+                futures.put(shard, query.apply(request));
+            }
+        }
+
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0]))
+                .thenApply(v -> getPage(futures, cursors, limit));
+    }
+
+    private Page getPage(Map<Integer, CompletableFuture<QueryResponse>> futures,
+                         Map<Integer, Map<String, AttributeValue>> cursors, Integer limit) {
+        final var results = new ArrayList<ShardItem>();
+        final var responses = new HashMap<Integer, QueryResponse>();
+        for (var entry : futures.entrySet()) {
+            final var response = entry.getValue().join();
+            responses.put(entry.getKey(), response);
+            for (var item : response.items()) {
+                results.add(new ShardItem(entry.getKey(), item));
+            }
+        }
+
+        results.sort(Comparator.comparing((ShardItem result) -> getSortValue(result.getItem()))
+                .thenComparing(ShardItem::getShard));
+        final var page = limit == null ? results : results.subList(0, Math.min(limit, results.size()));
+        final var taken = new HashMap<Integer, Integer>();
+        final var lastTaken = new HashMap<Integer, Map<String, AttributeValue>>();
+        final var items = new ArrayList<Map<String, AttributeValue>>(page.size());
+        for (var result : page) {
+            items.add(result.getItem());
+            taken.merge(result.getShard(), 1, Integer::sum);
+            lastTaken.put(result.getShard(), result.getItem());
+        }
+
+        final var nextCursors = new HashMap<>(cursors);
+        var open = false;
+        for (var entry : responses.entrySet()) {
+            final var shard = entry.getKey();
+            final var response = entry.getValue();
+            final var allTaken = taken.getOrDefault(shard, 0) == response.items().size();
+            if (allTaken && !response.hasLastEvaluatedKey()) {
+                nextCursors.put(shard, Map.of());
+                continue;
+            }
+
+            open = true;
+            if (allTaken) {
+                nextCursors.put(shard, response.lastEvaluatedKey());
+            } else if (lastTaken.containsKey(shard)) {
+                nextCursors.put(shard, getKey(lastTaken.get(shard)));
+            }
+        }
+
+        return new Page(items, open ? encodeCursors(nextCursors) : null);
+    }
+
+    private String getSortValue(Map<String, AttributeValue> item) {
+        final var value = item.get(sortAttribute);
+        return value == null || value.s() == null ? "" : value.s();
+    }
+
+    private Map<String, AttributeValue> getKey(Map<String, AttributeValue> item) {
+        final var key = new HashMap<String, AttributeValue>();
+        for (var attribute : keyAttributes) {
+            final var value = item.get(attribute);
+            if (value == null) {
+                throw new IllegalStateException("Sharded page item misses key attribute " + attribute);
+            }
+
+            key.put(attribute, value);
+        }
+
+        return key;
+    }
+
+    // Cursors are flattened into one key map: "<shard>:<attribute>", and "<shard>:" for exhausted shards
+    private static String encodeCursors(Map<Integer, Map<String, AttributeValue>> cursors) {
+        final var flat = new HashMap<String, AttributeValue>();
+        for (var cursor : cursors.entrySet()) {
+            if (cursor.getValue().isEmpty()) {
+                flat.put(cursor.getKey() + SHARD_SEPARATOR, AttributeValue.builder().s("").build());
+            }
+
+            for (var attribute : cursor.getValue().entrySet()) {
+                flat.put(cursor.getKey() + SHARD_SEPARATOR + attribute.getKey(), attribute.getValue());
+            }
+        }
+
+        return PageToken.encode(flat);
+    }
+
+    private static Map<Integer, Map<String, AttributeValue>> decodeCursors(String nextToken) {
+        final var cursors = new HashMap<Integer, Map<String, AttributeValue>>();
+        final var flat = PageToken.decode(nextToken);
+        if (flat == null) {
+            return cursors;
+        }
+
+        for (var entry : flat.entrySet()) {
+            final var separator = entry.getKey().indexOf(SHARD_SEPARATOR);
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Invalid page token");
+            }
+
+            final int shard;
+            try {
+                shard = Integer.parseInt(entry.getKey().substring(0, separator));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid page token", e);
+            }
+
+            final var cursor = cursors.computeIfAbsent(shard, s -> new HashMap<>());
+            final var attribute = entry.getKey().substring(separator + 1);
+            if (!attribute.isEmpty()) {
+                cursor.put(attribute, entry.getValue());
+            }
+        }
+
+        return cursors;
+    }
+
+    @Value
+    private static class ShardItem {
+        int shard;
+        Map<String, AttributeValue> item;
+    }
+
+    @Value
+    static class Page {
+        List<Map<String, AttributeValue>> items;
+        String nextToken;
+    }
+}
@@ -0,0 +1,24 @@
+package com.trilogy.learning.market.repository.dynamodb;
+
+import com.trilogy.learning.market.repository.ITransactionAsyncService;
+import lombok.AllArgsConstructor;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsResponse;
+
+import javax.inject.Singleton;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
+@Singleton
+@AllArgsConstructor
+public class TransactionAsyncService implements ITransactionAsyncService {
+    protected final DynamoDbAsyncClient dynamoDbClient;
+
+    @Override
+    public CompletableFuture<TransactWriteItemsResponse> commit(Collection<TransactWriteItem> requests) {
+        final var request = TransactWriteItemsRequest.builder().transactItems(requests).build();
+        return dynamoDbClient.transactWriteItems(request);
+    }
+}
@@ -1,11 +1,13 @@
 package com.trilogy.learning.market.service;
 
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
-import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
 import software.amazon.awssdk.auth.credentials.EnvironmentVariableCredentialsProvider;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Produces;
+import javax.inject.Inject;
+import javax.inject.Singleton;
 import java.util.Optional;
 
 @ApplicationScoped
@@ -14,11 +16,27 @@ public class AwsClientFactory {
 
     private final String regionName = Optional.ofNullable(System.getenv("AWS_REGION")).orElse(DEFAULT_REGION);
 
+    @Inject
+    HttpClientFactory httpClientFactory;
+
     @Produces
+    @Singleton
     public DynamoDbClient getDynamoDbClient() {
         return DynamoDbClient.builder()
                 .region(Region.of(regionName))
-                .httpClientBuilder(UrlConnectionHttpClient.builder())
+                .httpClient(httpClientFactory.getHttpClient())
+                .overrideConfiguration(httpClientFactory.getOverrideConfiguration())
+                .credentialsProvider(EnvironmentVariableCredentialsProvider.create())
+                .build();
+    }
+
+    @Produces
+    @Singleton
+    public DynamoDbAsyncClient getDynamoDbAsyncClient() {
+        return DynamoDbAsyncClient.builder()
+                .region(Region.of(regionName))
+                .httpClient(httpClientFactory.getAsyncHttpClient())
+                .overrideConfiguration(httpClientFactory.getOverrideConfiguration())
                 .credentialsProvider(EnvironmentVariableCredentialsProvider.create())
                 .build();
     }
@@ -0,0 +1,56 @@
+package com.trilogy.learning.market.service;
+
+import software.amazon.awssdk.http.HttpMetric;
+import software.amazon.awssdk.metrics.MetricCollection;
+import software.amazon.awssdk.metrics.MetricPublisher;
+import software.amazon.awssdk.metrics.SdkMetric;
+
+import java.util.List;
+
+// Passes the connection pool gauges the SDK HTTP clients report with every request on to the EMF flush, by
+// client name; the last values before the flush are written
+public class ConnectionPoolMetrics implements MetricPublisher {
+    private static final String DIMENSION = "HttpClient";
+
+    private final DynamoDbMetrics dynamoDbMetrics;
+
+    public ConnectionPoolMetrics(DynamoDbMetrics dynamoDbMetrics) {
+        this.dynamoDbMetrics = dynamoDbMetrics;
+    }
+
+    @Override
+    public void publish(MetricCollection metrics) {
+        record(metrics);
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private void record(MetricCollection metrics) {
+        final var clientNames = metrics.metricValues(HttpMetric.HTTP_CLIENT_NAME);
+        if (!clientNames.isEmpty()) {
+            final var name = clientNames.get(0);
+            set(name, "MaxConnections", getLast(metrics, HttpMetric.MAX_CONCURRENCY));
+            set(name, "LeasedConnections", getLast(metrics, HttpMetric.LEASED_CONCURRENCY));
+            set(name, "AvailableConnections", getLast(metrics, HttpMetric.AVAILABLE_CONCURRENCY));
+            set(name, "PendingConnectionAcquires", getLast(metrics, HttpMetric.PENDING_CONCURRENCY_ACQUIRES));
+        }
+
+        for (var child : metrics.children()) {
+            record(child);
+        }
+    }
+
+    private static Integer getLast(MetricCollection metrics, SdkMetric<Integer> metric) {
+        final List<Integer> values = metrics.metricValues(metric);
+        return values.isEmpty() ? null : values.get(values.size() - 1);
+    }
+
+    // Clients report only the gauges they support
+    private void set(String clientName, String metric, Integer value) {
+        if (value != null) {
+            dynamoDbMetrics.setValue(DIMENSION, clientName, metric, "Count", value);
+        }
+    }
+}
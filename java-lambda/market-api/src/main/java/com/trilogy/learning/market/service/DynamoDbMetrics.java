@@ -0,0 +1,467 @@
+package com.trilogy.learning.market.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.Value;
+import lombok.extern.jbosslog.JBossLog;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import software.amazon.awssdk.core.SdkRequest;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttribute;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Times every DynamoDB call and sums its consumed capacity per operation, index and entity; flushed as
+// CloudWatch Embedded Metric Format lines at the end of each invocation, together with the values other
+// components report through addValue and setValue
+@JBossLog
+@Singleton
+public class DynamoDbMetrics implements ExecutionInterceptor {
+    static final String TABLE = "Table";
+    private static final String MIXED = "Mixed";
+    private static final String NONE = "None";
+    // EMF accepts at most 100 values per metric in one log line
+    private static final int MAX_VALUES_PER_LINE = 100;
+    private static final ExecutionAttribute<Call> CALL = new ExecutionAttribute<>("DynamoDbMetricsCall");
+
+    private final boolean enabled;
+    private final String namespace;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<Dimensions, Totals> totals = new ConcurrentHashMap<>();
+    private final Map<Dimension, Values> values = new ConcurrentHashMap<>();
+
+    @Inject
+    public DynamoDbMetrics(
+            @ConfigProperty(name = "market.metrics.enabled", defaultValue = "true") boolean enabled,
+            @ConfigProperty(name = "market.metrics.namespace", defaultValue = "LearningDynamoDb") String namespace) {
+        this.enabled = enabled;
+        this.namespace = namespace;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Summed until the next flush, e.g. cache hits; the dimension names what the metric is about
+    public void addValue(String dimension, String dimensionValue, String metric, String unit, double value) {
+        if (enabled) {
+            getValues(dimension, dimensionValue).add(metric, unit, value);
+        }
+    }
+
+    // The last value before the flush is written, for gauges such as pool usage
+    public void setValue(String dimension, String dimensionValue, String metric, String unit, double value) {
+        if (enabled) {
+            getValues(dimension, dimensionValue).set(metric, unit, value);
+        }
+    }
+
+    @Override
+    public SdkRequest modifyRequest(Context.ModifyRequest context, ExecutionAttributes executionAttributes) {
+        final var request = context.request();
+        if (!(request instanceof DynamoDbRequest)) {
+            return request;
+        }
+
+        final var operation = executionAttributes.getAttribute(SdkExecutionAttribute.OPERATION_NAME);
+        executionAttributes.putAttribute(CALL, new Call(operation, getIndex(request), getEntity(request),
+                System.nanoTime()));
+        return withConsumedCapacity(request);
+    }
+
+    @Override
+    public void afterExecution(Context.AfterExecution context, ExecutionAttributes executionAttributes) {
+        final var call = executionAttributes.getAttribute(CALL);
+        if (call == null) {
+            return;
+        }
+
+        getTotals(call.getOperation(), call.getIndex(), call.getEntity()).addCall(call.getElapsedMillis(), false);
+        final var consumed = context.response().getValueForField("ConsumedCapacity", Object.class);
+        if (consumed.isPresent() && consumed.get() instanceof ConsumedCapacity) {
+            addCapacity(call, (ConsumedCapacity) consumed.get());
+        } else if (consumed.isPresent() && consumed.get() instanceof Collection) {
+            for (var capacity : (Collection<?>) consumed.get()) {
+                addCapacity(call, (ConsumedCapacity) capacity);
+            }
+        }
+    }
+
+    @Override
+    public void onExecutionFailure(Context.FailedExecution context, ExecutionAttributes executionAttributes) {
+        final var call = executionAttributes.getAttribute(CALL);
+        if (call != null) {
+            getTotals(call.getOperation(), call.getIndex(), call.getEntity()).addCall(call.getElapsedMillis(), true);
+        }
+    }
+
+    // Writes the metrics gathered since the last flush; Lambda forwards stdout lines to CloudWatch Logs,
+    // where EMF lines become metrics without a call to CloudWatch. Entries stay in the map and are reset in
+    // place, since calls on other threads may still hold them
+    public void flush() {
+        final var timestamp = System.currentTimeMillis();
+        for (var entry : totals.entrySet()) {
+            final var snapshot = entry.getValue().reset();
+            if (snapshot.getCalls() > 0 || snapshot.getReadCapacity() > 0 || snapshot.getWriteCapacity() > 0) {
+                for (var line : getLines(entry.getKey(), snapshot, timestamp)) {
+                    System.out.println(line);
+                }
+            }
+        }
+
+        for (var entry : values.entrySet()) {
+            final var snapshot = entry.getValue().reset();
+            if (!snapshot.isEmpty()) {
+                System.out.println(getLine(entry.getKey(), timestamp, snapshot));
+            }
+        }
+    }
+
+    private List<String> getLines(Dimensions dimensions, Totals snapshot, long timestamp) {
+        final var lines = new ArrayList<String>();
+        final var latencies = snapshot.getLatencies();
+        var start = 0;
+        do {
+            final var end = Math.min(start + MAX_VALUES_PER_LINE, latencies.size());
+            // Totals go out once, with the first chunk of latencies
+            lines.add(getLine(dimensions, timestamp, latencies.subList(start, end), start == 0 ? snapshot : null)
+                    .toString());
+            start = end;
+        } while (start < latencies.size());
+
+        return lines;
+    }
+
+    private ObjectNode getLine(Dimensions dimensions, long timestamp, List<Double> latencies, Totals snapshot) {
+        final var node = objectMapper.createObjectNode();
+        final var metadata = node.putObject("_aws");
+        metadata.put("Timestamp", timestamp);
+        final var directive = metadata.putArray("CloudWatchMetrics").addObject();
+        directive.put("Namespace", namespace);
+        directive.putArray("Dimensions").addArray().add("Operation").add("Index").add("Entity");
+        final var metrics = directive.putArray("Metrics");
+        if (!latencies.isEmpty()) {
+            metrics.addObject().put("Name", "Latency").put("Unit", "Milliseconds");
+            final var values = node.putArray("Latency");
+            latencies.forEach(values::add);
+        }
+
+        // Every declared metric must have a value on the same line
+        if (snapshot != null) {
+            metrics.addObject().put("Name", "Calls").put("Unit", "Count");
+            metrics.addObject().put("Name", "Errors").put("Unit", "Count");
+            metrics.addObject().put("Name", "ConsumedReadCapacity").put("Unit", "Count");
+            metrics.addObject().put("Name", "ConsumedWriteCapacity").put("Unit", "Count");
+            node.put("Calls", snapshot.getCalls());
+            node.put("Errors", snapshot.getErrors());
+            node.put("ConsumedReadCapacity", snapshot.getReadCapacity());
+            node.put("ConsumedWriteCapacity", snapshot.getWriteCapacity());
+        }
+
+        node.put("Operation", dimensions.getOperation());
+        node.put("Index", dimensions.getIndex());
+        node.put("Entity", dimensions.getEntity());
+        return node;
+    }
+
+    private ObjectNode getLine(Dimension dimension, long timestamp, Map<String, Metric> snapshot) {
+        final var node = objectMapper.createObjectNode();
+        final var metadata = node.putObject("_aws");
+        metadata.put("Timestamp", timestamp);
+        final var directive = metadata.putArray("CloudWatchMetrics").addObject();
+        directive.put("Namespace", namespace);
+        directive.putArray("Dimensions").addArray().add(dimension.getName());
+        final var metrics = directive.putArray("Metrics");
+        for (var metric : snapshot.entrySet()) {
+            metrics.addObject().put("Name", metric.getKey()).put("Unit", metric.getValue().getUnit());
+            node.put(metric.getKey(), metric.getValue().getValue());
+        }
+
+        node.put(dimension.getName(), dimension.getValue());
+        return node;
+    }
+
+    // With INDEXES the table and each index report their own share; TOTAL only reports one sum
+    private void addCapacity(Call call, ConsumedCapacity capacity) {
+        if (capacity.table() == null) {
+            final var units = capacity.capacityUnits() == null ? 0 : capacity.capacityUnits();
+            final var read = capacity.readCapacityUnits() != null ? capacity.readCapacityUnits()
+                    : isRead(call.getOperation()) ? units : 0;
+            final var write = capacity.writeCapacityUnits() != null ? capacity.writeCapacityUnits()
+                    : isRead(call.getOperation()) ? 0 : units;
+            getTotals(call.getOperation(), call.getIndex(), call.getEntity()).addCapacity(read, write);
+            return;
+        }
+
+        addCapacity(call, TABLE, capacity.table());
+        if (capacity.hasGlobalSecondaryIndexes()) {
+            for (var index : capacity.globalSecondaryIndexes().entrySet()) {
+                addCapacity(call, index.getKey(), index.getValue());
+            }
+        }
+    }
+
+    private void addCapacity(Call call, String index, Capacity capacity) {
+        final var read = capacity.readCapacityUnits() != null ? capacity.readCapacityUnits() : 0;
+        final var write = capacity.writeCapacityUnits() != null ? capacity.writeCapacityUnits() : 0;
+        final var units = capacity.capacityUnits() != null ? capacity.capacityUnits() : 0;
+        // A query on an index reports a zero share for the table
+        if (read == 0 && write == 0 && units == 0) {
+            return;
+        }
+
+        if (read == 0 && write == 0) {
+            getTotals(call.getOperation(), index, call.getEntity())
+                    .addCapacity(isRead(call.getOperation()) ? units : 0, isRead(call.getOperation()) ? 0 : units);
+        } else {
+            getTotals(call.getOperation(), index, call.getEntity()).addCapacity(read, write);
+        }
+    }
+
+    private Totals getTotals(String operation, String index, String entity) {
+        return totals.computeIfAbsent(new Dimensions(operation, index, entity), d -> new Totals());
+    }
+
+    private Values getValues(String dimension, String dimensionValue) {
+        return values.computeIfAbsent(new Dimension(dimension, dimensionValue), d -> new Values());
+    }
+
+    private static boolean isRead(String operation) {
+        return operation.startsWith("Get") || operation.startsWith("BatchGet") || operation.startsWith("TransactGet")
+                || operation.equals("Query") || operation.equals("Scan");
+    }
+
+    private static String getIndex(SdkRequest request) {
+        return request.getValueForField("IndexName", String.class).orElse(TABLE);
+    }
+
+    // The key prefix of the partition key values the call touches, e.g. ORDER for ORDER#<id>
+    private static String getEntity(SdkRequest request) {
+        final var prefixes = new TreeSet<String>();
+        if (request instanceof GetItemRequest) {
+            addPrefix(prefixes, ((GetItemRequest) request).key());
+        } else if (request instanceof PutItemRequest) {
+            addPrefix(prefixes, ((PutItemRequest) request).item());
+        } else if (request instanceof UpdateItemRequest) {
+            addPrefix(prefixes, ((UpdateItemRequest) request).key());
+        } else if (request instanceof DeleteItemRequest) {
+            addPrefix(prefixes, ((DeleteItemRequest) request).key());
+        } else if (request instanceof QueryRequest) {
+            addPrefix(prefixes, (QueryRequest) request);
+        } else if (request instanceof BatchGetItemRequest) {
+            for (var keys : ((BatchGetItemRequest) request).requestItems().values()) {
+                keys.keys().forEach(key -> addPrefix(prefixes, key));
+            }
+        } else if (request instanceof BatchWriteItemRequest) {
+            for (var writes : ((BatchWriteItemRequest) request).requestItems().values()) {
+                for (var write : writes) {
+                    addPrefix(prefixes, write.putRequest() != null
+                            ? write.putRequest().item() : write.deleteRequest().key());
+                }
+            }
+        } else if (request instanceof TransactWriteItemsRequest) {
+            for (var item : ((TransactWriteItemsRequest) request).transactItems()) {
+                addPrefix(prefixes, item.put() != null ? item.put().item()
+                        : item.update() != null ? item.update().key()
+                        : item.delete() != null ? item.delete().key()
+                        : item.conditionCheck().key());
+            }
+        } else if (request instanceof TransactGetItemsRequest) {
+            for (var item : ((TransactGetItemsRequest) request).transactItems()) {
+                addPrefix(prefixes, item.get().key());
+            }
+        }
+
+        if (prefixes.isEmpty()) {
+            return NONE;
+        }
+
+        return prefixes.size() == 1 ? prefixes.first() : MIXED;
+    }
+
+    // The partition key value is the one compared first in the key condition, "#pk = :pk AND ..."
+    private static void addPrefix(Collection<String> prefixes, QueryRequest request) {
+        final var condition = request.keyConditionExpression();
+        if (condition == null || !request.hasExpressionAttributeValues()) {
+            return;
+        }
+
+        final var equals = condition.indexOf('=');
+        if (equals < 0) {
+            return;
+        }
+
+        final var rest = condition.substring(equals + 1).trim();
+        final var end = rest.indexOf(' ');
+        final var value = request.expressionAttributeValues().get(end < 0 ? rest : rest.substring(0, end));
+        if (value != null && value.s() != null) {
+            prefixes.add(getPrefix(value.s()));
+        }
+    }
+
+    private static void addPrefix(Collection<String> prefixes, Map<String, AttributeValue> key) {
+        final var value = key == null ? null : key.get("PK");
+        if (value != null && value.s() != null) {
+            prefixes.add(getPrefix(value.s()));
+        }
+    }
+
+    private static String getPrefix(String value) {
+        final var separator = value.indexOf('#');
+        return separator < 0 ? value : value.substring(0, separator);
+    }
+
+    // Requests that already ask for capacity keep their setting
+    private static SdkRequest withConsumedCapacity(SdkRequest request) {
+        final var capacity = ReturnConsumedCapacity.INDEXES;
+        if (request instanceof GetItemRequest && ((GetItemRequest) request).returnConsumedCapacity() == null) {
+            return ((GetItemRequest) request).toBuilder().returnConsumedCapacity(capacity).build();
+        } else if (request instanceof PutItemRequest && ((PutItemRequest) request).returnConsumedCapacity() == null) {
+            return ((PutItemRequest) request).toBuilder().returnConsumedCapacity(capacity).build();
+        } else if (request instanceof UpdateItemRequest
+                && ((UpdateItemRequest) request).returnConsumedCapacity() == null) {
+            return ((UpdateItemRequest) request).toBuilder().returnConsumedCapacity(capacity).build();
+        } else if (request instanceof DeleteItemRequest
+                && ((DeleteItemRequest) request).returnConsumedCapacity() == null) {
+            return ((DeleteItemRequest) request).toBuilder().returnConsumedCapacity(capacity).build();
+        } else if (request instanceof QueryRequest && ((QueryRequest) request).returnConsumedCapacity() == null) {
+            return ((QueryRequest) request).toBuilder().returnConsumedCapacity(capacity).build();
+        } else if (request instanceof ScanRequest && ((ScanRequest) request).returnConsumedCapacity() == null) {
+            return ((ScanRequest) request).toBuilder().returnConsumedCapacity(capacity).build();
+        } else if (request instanceof BatchGetItemRequest
+                && ((BatchGetItemRequest) request).returnConsumedCapacity() == null) {
+            return ((BatchGetItemRequest) request).toBuilder().returnConsumedCapacity(capacity).build();
+        } else if (request instanceof BatchWriteItemRequest
+                && ((BatchWriteItemRequest) request).returnConsumedCapacity() == null) {
+            return ((BatchWriteItemRequest) request).toBuilder().returnConsumedCapacity(capacity).build();
+        } else if (request instanceof TransactGetItemsRequest
+                && ((TransactGetItemsRequest) request).returnConsumedCapacity() == null) {
+            return ((TransactGetItemsRequest) request).toBuilder().returnConsumedCapacity(capacity).build();
+        } else if (request instanceof TransactWriteItemsRequest
+                && ((TransactWriteItemsRequest) request).returnConsumedCapacity() == null) {
+            return ((TransactWriteItemsRequest) request).toBuilder().returnConsumedCapacity(capacity).build();
+        }
+
+        return request;
+    }
+
+    @Value
+    private static class Call {
+        String operation;
+        String index;
+        String entity;
+        long startNanos;
+
+        double getElapsedMillis() {
+            return (System.nanoTime() - startNanos) / 1_000_000.0;
+        }
+    }
+
+    @Value
+    private static class Dimensions {
+        String operation;
+        String index;
+        String entity;
+    }
+
+    @Value
+    private static class Dimension {
+        String name;
+        String value;
+    }
+
+    @Value
+    private static class Metric {
+        String unit;
+        double value;
+    }
+
+    // Reset in place on flush, like Totals
+    private static class Values {
+        private final Map<String, Metric> metrics = new LinkedHashMap<>();
+
+        synchronized void add(String name, String unit, double value) {
+            final var current = metrics.get(name);
+            metrics.put(name, new Metric(unit, current == null ? value : current.getValue() + value));
+        }
+
+        synchronized void set(String name, String unit, double value) {
+            metrics.put(name, new Metric(unit, value));
+        }
+
+        synchronized Map<String, Metric> reset() {
+            final var snapshot = new LinkedHashMap<>(metrics);
+            metrics.clear();
+            return snapshot;
+        }
+    }
+
+    private static class Totals {
+        private final List<Double> latencies = new ArrayList<>();
+        private long calls;
+        private long errors;
+        private double readCapacity;
+        private double writeCapacity;
+
+        synchronized void addCall(double latency, boolean failed) {
+            latencies.add(latency);
+            calls++;
+            if (failed) {
+                errors++;
+            }
+        }
+
+        synchronized void addCapacity(double read, double write) {
+            readCapacity += read;
+            writeCapacity += write;
+        }
+
+        // Moves what was gathered into a new object and starts over
+        synchronized Totals reset() {
+            final var snapshot = new Totals();
+            snapshot.latencies.addAll(latencies);
+            snapshot.calls = calls;
+            snapshot.errors = errors;
+            snapshot.readCapacity = readCapacity;
+            snapshot.writeCapacity = writeCapacity;
+            latencies.clear();
+            calls = 0;
+            errors = 0;
+            readCapacity = 0;
+            writeCapacity = 0;
+            return snapshot;
+        }
+
+        synchronized List<Double> getLatencies() {
+            return new ArrayList<>(latencies);
+        }
+
+        synchronized long getCalls() {
+            return calls;
+        }
+
+        synchronized long getErrors() {
+            return errors;
+        }
+
+        synchronized double getReadCapacity() {
+            return readCapacity;
+        }
+
+        synchronized double getWriteCapacity() {
+            return writeCapacity;
+        }
+    }
+}
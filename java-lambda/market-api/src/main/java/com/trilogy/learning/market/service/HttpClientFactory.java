@@ -0,0 +1,98 @@
+package com.trilogy.learning.market.service;
+
+import io.netty.channel.ChannelOption;
+import lombok.extern.jbosslog.JBossLog;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.async.SdkAsyncHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.time.Duration;
+
+// Owns the pooled HTTP transports shared by every AWS SDK client in the process
+@JBossLog
+@Singleton
+public class HttpClientFactory {
+    private final int maxConnections;
+    private final Duration connectionTimeout;
+    private final Duration socketTimeout;
+    private final Duration connectionMaxIdleTime;
+    private final boolean tcpKeepAlive;
+    private final ConnectionPoolMetrics poolMetrics;
+    private final DynamoDbMetrics dynamoDbMetrics;
+
+    private SdkHttpClient httpClient;
+    private SdkAsyncHttpClient asyncHttpClient;
+
+    @Inject
+    public HttpClientFactory(
+            @ConfigProperty(name = "market.http.max-connections", defaultValue = "50") int maxConnections,
+            @ConfigProperty(name = "market.http.connection-timeout", defaultValue = "2S") Duration connectionTimeout,
+            @ConfigProperty(name = "market.http.socket-timeout", defaultValue = "10S") Duration socketTimeout,
+            @ConfigProperty(name = "market.http.connection-max-idle-time", defaultValue = "60S")
+                    Duration connectionMaxIdleTime,
+            @ConfigProperty(name = "market.http.tcp-keep-alive", defaultValue = "true") boolean tcpKeepAlive,
+            @ConfigProperty(name = "market.http.pool-metrics-enabled", defaultValue = "false")
+                    boolean poolMetricsEnabled,
+            DynamoDbMetrics dynamoDbMetrics) {
+        this.maxConnections = maxConnections;
+        this.connectionTimeout = connectionTimeout;
+        this.socketTimeout = socketTimeout;
+        this.connectionMaxIdleTime = connectionMaxIdleTime;
+        this.tcpKeepAlive = tcpKeepAlive;
+        poolMetrics = poolMetricsEnabled ? new ConnectionPoolMetrics(dynamoDbMetrics) : null;
+        this.dynamoDbMetrics = dynamoDbMetrics;
+    }
+
+    public synchronized SdkHttpClient getHttpClient() {
+        if (httpClient == null) {
+            log.debugf("Creating HTTP client: maxConnections=%d", maxConnections);
+            // Apache client keeps HTTP connections alive in its pool; TCP keep-alive is not configurable
+            // for it in this SDK version
+            httpClient = ApacheHttpClient.builder()
+                    .maxConnections(maxConnections)
+                    .connectionTimeout(connectionTimeout)
+                    .socketTimeout(socketTimeout)
+                    .connectionMaxIdleTime(connectionMaxIdleTime)
+                    .useIdleConnectionReaper(true)
+                    .build();
+        }
+
+        return httpClient;
+    }
+
+    public synchronized SdkAsyncHttpClient getAsyncHttpClient() {
+        if (asyncHttpClient == null) {
+            log.debugf("Creating async HTTP client: maxConcurrency=%d", maxConnections);
+            asyncHttpClient = NettyNioAsyncHttpClient.builder()
+                    .maxConcurrency(maxConnections)
+                    .connectionTimeout(connectionTimeout)
+                    .readTimeout(socketTimeout)
+                    .writeTimeout(socketTimeout)
+                    .connectionMaxIdleTime(connectionMaxIdleTime)
+                    .useIdleConnectionReaper(true)
+                    .putChannelOption(ChannelOption.SO_KEEPALIVE, tcpKeepAlive)
+                    .build();
+        }
+
+        return asyncHttpClient;
+    }
+
+    public ClientOverrideConfiguration getOverrideConfiguration() {
+        final var builder = ClientOverrideConfiguration.builder();
+        if (poolMetrics != null) {
+            builder.addMetricPublisher(poolMetrics);
+        }
+
+        // Sees only DynamoDB requests; every other request passes through untouched
+        if (dynamoDbMetrics.isEnabled()) {
+            builder.addExecutionInterceptor(dynamoDbMetrics);
+        }
+
+        return builder.build();
+    }
+}
@@ -4,8 +4,8 @@ import com.amirkhawaja.Ksuid;
 import com.trilogy.learning.market.model.Order;
 import com.trilogy.learning.market.model.OrderedProduct;
 import com.trilogy.learning.market.model.Product;
-import com.trilogy.learning.market.repository.IOrderRepository;
-import com.trilogy.learning.market.repository.IProductRepository;
+import com.trilogy.learning.market.repository.IOrderAsyncRepository;
+import com.trilogy.learning.market.repository.IProductAsyncRepository;
 import com.trilogy.learning.market.requests.NewOrderRequest;
 import com.trilogy.learning.market.requests.NewOrderedProductRequest;
 import lombok.AllArgsConstructor;
@@ -16,31 +16,44 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletionException;
 
 @Singleton
 @AllArgsConstructor
 public class OrderService implements IOrderService {
-    private IOrderRepository orderRepository;
-    private IProductRepository productRepository;
+    private IOrderAsyncRepository orderRepository;
+    private IProductAsyncRepository productRepository;
 
     @Override
     public Order addOrder(NewOrderRequest orderRequest) throws IOException {
         final var uid = new Ksuid();
         final var orderId = uid.generate();
         final var productIds = orderRequest.getProducts().keySet();
-        final var products = productRepository.getByIds(productIds);
-        final var orderedProducts = getOrderedProducts(products, orderRequest.getProducts(), orderId);
-        final var total = OrderedProduct.getTotal(orderedProducts);
-        final var order = Order.builder()
-                .id(orderId)
-                .createdAt(new Date())
-                .customerEmail(orderRequest.getCustomerEmail())
-                .products(orderedProducts)
-                .status(Order.Status.OPEN)
-                .total(total)
-                .build();
-        orderRepository.addOrder(order);
-        return order;
+        // Priced through the product cache; another instance's price or stock change shows within
+        // market.product-cache.ttl, which bounds how stale an order's prices may be
+        final var future = productRepository.getByIds(productIds).thenCompose(products -> {
+            final var orderedProducts = getOrderedProducts(products, orderRequest.getProducts(), orderId);
+            final var total = OrderedProduct.getTotal(orderedProducts);
+            final var order = Order.builder()
+                    .id(orderId)
+                    .createdAt(new Date())
+                    .customerEmail(orderRequest.getCustomerEmail())
+                    .products(orderedProducts)
+                    .status(Order.Status.OPEN)
+                    .total(total)
+                    .build();
+            return orderRepository.addOrder(order).thenApply(v -> order);
+        });
+
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw e;
+        }
     }
 
     private List<OrderedProduct> getOrderedProducts(Map<String, Product> products,
@@ -0,0 +1,105 @@
+package com.trilogy.learning.market.service;
+
+import com.trilogy.learning.market.model.Product;
+import lombok.Value;
+import lombok.extern.jbosslog.JBossLog;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// In-process read-through cache of products by id, bounded by size and entry age. Hits, misses, evictions and
+// the entry count go out with the metrics of each invocation
+@JBossLog
+@Singleton
+public class ProductCache {
+    private static final String DIMENSION = "Cache";
+    private static final String NAME = "Product";
+
+    private final long ttlNanos;
+    private final DynamoDbMetrics metrics;
+
+    // Access-ordered, so the eldest entry is the least recently read product; guarded by this
+    private final LinkedHashMap<String, CachedProduct> entries;
+
+    @Inject
+    public ProductCache(
+            @ConfigProperty(name = "market.product-cache.max-size", defaultValue = "1000") int maxSize,
+            @ConfigProperty(name = "market.product-cache.ttl", defaultValue = "60S") Duration ttl,
+            DynamoDbMetrics metrics) {
+        ttlNanos = ttl.toNanos();
+        this.metrics = metrics;
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedProduct> eldest) {
+                if (size() > maxSize) {
+                    count("CacheEvictions");
+                    return true;
+                }
+
+                return false;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return ttlNanos > 0;
+    }
+
+    public synchronized Product get(String id) {
+        final var entry = entries.get(id);
+        if (entry != null && System.nanoTime() - entry.loadedAt < ttlNanos) {
+            count("CacheHits");
+            return entry.product;
+        }
+
+        if (entry != null) {
+            entries.remove(id);
+            count("CacheEvictions");
+        }
+
+        count("CacheMisses");
+        return null;
+    }
+
+    // Returns the cached products among ids; the caller loads the rest and puts them back
+    public Map<String, Product> getAll(Collection<String> ids) {
+        final var products = new HashMap<String, Product>();
+        for (var id : ids) {
+            final var product = get(id);
+            if (product != null) {
+                products.put(id, product);
+            }
+        }
+
+        return products;
+    }
+
+    public synchronized void put(Product product) {
+        if (product != null && product.getId() != null && isEnabled()) {
+            entries.put(product.getId(), new CachedProduct(product, System.nanoTime()));
+            metrics.setValue(DIMENSION, NAME, "CacheEntries", "Count", entries.size());
+        }
+    }
+
+    public synchronized void invalidate(String id) {
+        if (entries.remove(id) != null) {
+            log.debugf("Product %s invalidated", id);
+        }
+    }
+
+    private void count(String metric) {
+        metrics.addValue(DIMENSION, NAME, metric, "Count", 1);
+    }
+
+    @Value
+    private static class CachedProduct {
+        Product product;
+        long loadedAt;
+    }
+}
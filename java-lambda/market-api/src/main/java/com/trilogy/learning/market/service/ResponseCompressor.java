@@ -0,0 +1,149 @@
+package com.trilogy.learning.market.service;
+
+import lombok.Value;
+import lombok.extern.jbosslog.JBossLog;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Negotiates Content-Encoding for response bodies and reports the bytes it saved with the metrics of each
+// invocation
+@JBossLog
+@Singleton
+public class ResponseCompressor {
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+    // The one binary media type of the API in the stack; API Gateway decodes a base64 body only when the first
+    // media type the request accepts is binary, and passes it on as text otherwise
+    static final String BINARY_MEDIA_TYPE = "application/json";
+    private static final String DIMENSION = "Compression";
+
+    private final boolean enabled;
+    private final int minSize;
+    private final DynamoDbMetrics metrics;
+
+    @Inject
+    public ResponseCompressor(
+            @ConfigProperty(name = "market.compression.enabled", defaultValue = "true") boolean enabled,
+            @ConfigProperty(name = "market.compression.min-size", defaultValue = "1024") int minSize,
+            DynamoDbMetrics metrics) {
+        this.enabled = enabled;
+        this.minSize = minSize;
+        this.metrics = metrics;
+    }
+
+    // Returns null when the body should be sent as is
+    public CompressedBody compress(String body, String acceptEncoding, String accept) {
+        if (!enabled || body == null || acceptEncoding == null || !isBinaryAccepted(accept)) {
+            return null;
+        }
+
+        final var bytes = body.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length < minSize) {
+            return null;
+        }
+
+        final var encoding = getEncoding(acceptEncoding);
+        if (encoding == null) {
+            return null;
+        }
+
+        final var compressed = encode(bytes, encoding);
+        if (compressed.length >= bytes.length) {
+            return null;
+        }
+
+        log.debugf("Compressed response with %s: %d -> %d bytes", encoding, bytes.length, compressed.length);
+        metrics.addValue(DIMENSION, encoding, "CompressedResponses", "Count", 1);
+        metrics.addValue(DIMENSION, encoding, "BytesSaved", "Bytes", bytes.length - compressed.length);
+        return new CompressedBody(encoding, Base64.getEncoder().encodeToString(compressed));
+    }
+
+    // Clients that send no Accept header, or */* first, would get the base64 text instead of the compressed bytes
+    static boolean isBinaryAccepted(String accept) {
+        if (accept == null) {
+            return false;
+        }
+
+        final var first = accept.split(",")[0].split(";")[0].trim();
+        return BINARY_MEDIA_TYPE.equalsIgnoreCase(first);
+    }
+
+    // Prefers gzip, then deflate, honoring q=0 exclusions and the wildcard
+    static String getEncoding(String acceptEncoding) {
+        Double gzip = null;
+        Double deflate = null;
+        Double wildcard = null;
+        for (var part : acceptEncoding.split(",")) {
+            final var tokens = part.trim().split(";");
+            final var name = tokens[0].trim().toLowerCase(Locale.ROOT);
+            final var quality = getQuality(tokens);
+            if (GZIP.equals(name) || ("x-" + GZIP).equals(name)) {
+                gzip = quality;
+            } else if (DEFLATE.equals(name)) {
+                deflate = quality;
+            } else if ("*".equals(name)) {
+                wildcard = quality;
+            }
+        }
+
+        if (isAccepted(gzip, wildcard)) {
+            return GZIP;
+        }
+
+        if (isAccepted(deflate, wildcard)) {
+            return DEFLATE;
+        }
+
+        return null;
+    }
+
+    private static boolean isAccepted(Double quality, Double wildcard) {
+        if (quality != null) {
+            return quality > 0;
+        }
+
+        return wildcard != null && wildcard > 0;
+    }
+
+    private static double getQuality(String[] tokens) {
+        for (var i = 1; i < tokens.length; i++) {
+            final var parameter = tokens[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+
+        return 1;
+    }
+
+    private static byte[] encode(byte[] bytes, String encoding) {
+        final var buffer = new ByteArrayOutputStream(bytes.length / 4);
+        try (var stream = GZIP.equals(encoding) ? new GZIPOutputStream(buffer) : new DeflaterOutputStream(buffer)) {
+            stream.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return buffer.toByteArray();
+    }
+
+    @Value
+    public static class CompressedBody {
+        String encoding;
+        String base64Body;
+    }
+}
@@ -1,19 +1,23 @@
 package com.trilogy.learning.market.service;
 
 import lombok.extern.jbosslog.JBossLog;
-import software.amazon.awssdk.auth.credentials.AwsSessionCredentials;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import software.amazon.awssdk.auth.credentials.EnvironmentVariableCredentialsProvider;
-import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
-import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.sts.StsClient;
+import software.amazon.awssdk.services.sts.auth.StsAssumeRoleCredentialsProvider;
 import software.amazon.awssdk.services.sts.model.AssumeRoleRequest;
 
+import javax.inject.Inject;
 import javax.inject.Singleton;
-import java.util.HashMap;
+import java.time.Duration;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 import static java.lang.String.format;
 
@@ -43,53 +47,179 @@ public class RestrictedDynamoDbService {
                     "}";
 
     private final String regionName = Optional.ofNullable(System.getenv("AWS_REGION")).orElse(DEFAULT_REGION);
-    private final String roleArn = Optional.ofNullable(System.getenv("ROLE_ARN")).orElseThrow();
-    private final StsClient stsClient;
+    private final HttpClientFactory httpClientFactory;
+    private final Duration sessionDuration;
+    private final Duration refreshAhead;
 
-    private Map<String, DynamoDbClient> clients = new HashMap<>();
-    private DynamoDbClient currentClient;
+    // Access-ordered, so the eldest entry is the least recently used user; guarded by this, as are the lease counts
+    private final LinkedHashMap<String, UserClients> clients;
+    private StsClient stsClient;
 
-    public RestrictedDynamoDbService() {
-        stsClient = StsClient.builder()
-                .httpClientBuilder(UrlConnectionHttpClient.builder())
-                .credentialsProvider(EnvironmentVariableCredentialsProvider.create())
-                .build();
+    @Inject
+    public RestrictedDynamoDbService(
+            HttpClientFactory httpClientFactory,
+            @ConfigProperty(name = "market.restricted.max-users", defaultValue = "500") int maxUsers,
+            @ConfigProperty(name = "market.restricted.session-duration", defaultValue = "3600S")
+                    Duration sessionDuration,
+            @ConfigProperty(name = "market.restricted.refresh-ahead", defaultValue = "300S") Duration refreshAhead) {
+        this.httpClientFactory = httpClientFactory;
+        this.sessionDuration = sessionDuration;
+        this.refreshAhead = refreshAhead;
+        clients = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, UserClients> eldest) {
+                if (size() > maxUsers) {
+                    eldest.getValue().evict();
+                    return true;
+                }
+
+                return false;
+            }
+        };
+    }
+
+    // The client is leased to the call, so evicting its user while the call runs defers closing it until the call
+    // returns
+    public <T> T withClient(String authId, Function<DynamoDbClient, T> call) {
+        final var userClients = lease(authId);
+        try {
+            return call.apply(userClients.getClient());
+        } finally {
+            release(userClients);
+        }
+    }
+
+    // The lease ends when the returned future completes
+    public <T> CompletableFuture<T> withAsyncClient(String authId,
+                                                    Function<DynamoDbAsyncClient, CompletableFuture<T>> call) {
+        final var userClients = lease(authId);
+        try {
+            return call.apply(userClients.getAsyncClient()).whenComplete((result, e) -> release(userClients));
+        } catch (RuntimeException e) {
+            release(userClients);
+            throw e;
+        }
+    }
+
+    private synchronized UserClients lease(String id) {
+        if (id == null) {
+            throw new NullPointerException("authId");
+        }
+
+        final var now = System.nanoTime();
+        evictExpired(now);
+        var userClients = clients.get(id);
+        if (userClients == null) {
+            userClients = new UserClients(getCredentialsProvider(id));
+            clients.put(id, userClients);
+        }
+
+        userClients.lastUsed = now;
+        userClients.leases++;
+        return userClients;
     }
 
-    public void setAuthId(String id) {
-        if (!clients.containsKey(id)) {
-            final var policy = format(READ_POLICY, id);
-            log.info(policy);
-            log.info(roleArn);
-            final var assumeRoleRequest = AssumeRoleRequest.builder()
-                    .roleArn(roleArn)
-                    .roleSessionName("DynamoDbByUser" + id)
-                    .policy(policy)
+    private synchronized void release(UserClients userClients) {
+        userClients.leases--;
+        if (userClients.evicted && userClients.leases == 0) {
+            userClients.close();
+        }
+    }
+
+    // Entries idle for a whole session hold credentials that already expired without a refresh
+    private void evictExpired(long now) {
+        final var iterator = clients.values().iterator();
+        while (iterator.hasNext()) {
+            final var userClients = iterator.next();
+            if (now - userClients.lastUsed < sessionDuration.toNanos()) {
+                break;
+            }
+
+            userClients.evict();
+            iterator.remove();
+        }
+    }
+
+    // STS is called on first use and again once the session is within refresh-ahead of expiring; the request that
+    // finds it there refreshes the credentials while concurrent requests keep using the current ones
+    private StsAssumeRoleCredentialsProvider getCredentialsProvider(String id) {
+        // Created on first use so that nothing needs AWS settings until a restricted client is built
+        if (stsClient == null) {
+            stsClient = StsClient.builder()
+                    .httpClient(httpClientFactory.getHttpClient())
+                    .credentialsProvider(EnvironmentVariableCredentialsProvider.create())
                     .build();
-            final var assumeRoleResponse = stsClient.assumeRole(assumeRoleRequest);
-            log.info(assumeRoleResponse);
-            final var responseCredentials = assumeRoleResponse.credentials();
-            final var credentials = AwsSessionCredentials.create(responseCredentials.accessKeyId(),
-                    responseCredentials.secretAccessKey(), responseCredentials.sessionToken());
-            final var provider = StaticCredentialsProvider.create(credentials);
-            log.info(provider);
-            currentClient = DynamoDbClient.builder()
+        }
+
+        final var roleArn = Optional.ofNullable(System.getenv("ROLE_ARN")).orElseThrow();
+        final var policy = format(READ_POLICY, id);
+        log.info(policy);
+        log.info(roleArn);
+        final var assumeRoleRequest = AssumeRoleRequest.builder()
+                .roleArn(roleArn)
+                .roleSessionName("DynamoDbByUser" + id)
+                .policy(policy)
+                .durationSeconds((int) sessionDuration.getSeconds())
+                .build();
+        return StsAssumeRoleCredentialsProvider.builder()
+                .stsClient(stsClient)
+                .refreshRequest(assumeRoleRequest)
+                .prefetchTime(refreshAhead)
+                .staleTime(refreshAhead.dividedBy(5))
+                .build();
+    }
+
+    private class UserClients {
+        private final StsAssumeRoleCredentialsProvider provider;
+        private final DynamoDbClient client;
+        private DynamoDbAsyncClient asyncClient;
+        private long lastUsed;
+        // Calls running with these clients, and whether the clients close when the last one returns
+        private int leases;
+        private boolean evicted;
+
+        UserClients(StsAssumeRoleCredentialsProvider provider) {
+            this.provider = provider;
+            client = DynamoDbClient.builder()
                     .region(Region.of(regionName))
-                    .httpClientBuilder(UrlConnectionHttpClient.builder())
+                    .httpClient(httpClientFactory.getHttpClient())
+                    .overrideConfiguration(httpClientFactory.getOverrideConfiguration())
                     .credentialsProvider(provider)
                     .build();
-            clients.put(id, currentClient);
-            return;
         }
 
-        currentClient = clients.get(id);
-    }
+        DynamoDbClient getClient() {
+            return client;
+        }
+
+        synchronized DynamoDbAsyncClient getAsyncClient() {
+            if (asyncClient == null) {
+                asyncClient = DynamoDbAsyncClient.builder()
+                        .region(Region.of(regionName))
+                        .httpClient(httpClientFactory.getAsyncHttpClient())
+                        .overrideConfiguration(httpClientFactory.getOverrideConfiguration())
+                        .credentialsProvider(provider)
+                        .build();
+            }
 
-    public DynamoDbClient getClient() {
-        if (currentClient == null) {
-            throw new NullPointerException("currentClient");
+            return asyncClient;
         }
 
-        return currentClient;
+        void evict() {
+            evicted = true;
+            if (leases == 0) {
+                close();
+            }
+        }
+
+        // The shared HTTP transports are not owned by these clients and stay open
+        private synchronized void close() {
+            client.close();
+            if (asyncClient != null) {
+                asyncClient.close();
+            }
+
+            provider.close();
+        }
     }
 }
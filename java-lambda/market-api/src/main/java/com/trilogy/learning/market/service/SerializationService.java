@@ -0,0 +1,129 @@
+package com.trilogy.learning.market.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.trilogy.learning.market.model.Address;
+import com.trilogy.learning.market.model.Customer;
+import com.trilogy.learning.market.model.Order;
+import com.trilogy.learning.market.model.OrderedProduct;
+import com.trilogy.learning.market.model.Payment;
+import com.trilogy.learning.market.model.Product;
+import com.trilogy.learning.market.model.ResultPage;
+import com.trilogy.learning.market.requests.NewCustomerRequest;
+import com.trilogy.learning.market.requests.NewOrderRequest;
+import com.trilogy.learning.market.requests.NewPaymentRequest;
+import com.trilogy.learning.market.requests.UpdateCustomerRequest;
+import com.trilogy.learning.market.requests.UpdateOrderRequest;
+
+import javax.inject.Singleton;
+import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Shared JSON readers and writers for API payloads; they are immutable and built once per type
+@Singleton
+public class SerializationService {
+    private static final List<Class<?>> MODEL_TYPES = List.of(Order.class, Product.class, Customer.class, Payment.class);
+    private static final List<Class<?>> REQUEST_TYPES = List.of(NewOrderRequest.class, UpdateOrderRequest.class,
+            NewCustomerRequest.class, UpdateCustomerRequest.class, NewPaymentRequest.class);
+
+    // Not the Quarkus mapper: its DateModule writes dates as epoch seconds for the Lambda event format
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+    private final Map<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+    private final Map<Class<?>, ObjectWriter> listWriters = new ConcurrentHashMap<>();
+
+    public SerializationService() {
+        final var typeFactory = objectMapper.getTypeFactory();
+        for (var type : MODEL_TYPES) {
+            readers.put(type, objectMapper.readerFor(type));
+            writers.put(type, objectMapper.writerFor(type));
+            listWriters.put(type, objectMapper.writerFor(typeFactory.constructCollectionType(List.class, type)));
+        }
+    }
+
+    // Builds the request readers and writes a sample of each model, so the first request does not pay for
+    // introspecting types and loading the serializer classes
+    public void prime() throws JsonProcessingException {
+        for (var type : REQUEST_TYPES) {
+            getReader(type);
+        }
+
+        final var order = Order.builder()
+                .status(Order.Status.OPEN)
+                .createdAt(new Date())
+                .products(List.of(OrderedProduct.builder().build()))
+                .build();
+        final var customer = Customer.builder().address(new Address()).build();
+        final var payment = new Payment();
+        payment.setDate(LocalDateTime.now());
+        write(order);
+        write(List.of(order), Order.class);
+        write(ResultPage.<Order>builder().items(List.of(order)).build(), Set.of("id"));
+        write(new Product());
+        write(List.of(new Product()), Product.class);
+        write(customer);
+        write(List.of(payment), Payment.class);
+    }
+
+    public <T> T read(String json, Class<T> type) throws JsonProcessingException {
+        return getReader(type).readValue(json);
+    }
+
+    public String write(Object value) throws JsonProcessingException {
+        if (value == null) {
+            return objectMapper.writeValueAsString(null);
+        }
+
+        return getWriter(value.getClass()).writeValueAsString(value);
+    }
+
+    public <T> String write(List<T> values, Class<T> type) throws JsonProcessingException {
+        return listWriters.computeIfAbsent(type, t -> objectMapper.writerFor(
+                objectMapper.getTypeFactory().constructCollectionType(List.class, t))).writeValueAsString(values);
+    }
+
+    // Writes only the requested properties of a model, of each element of a list or of each item of a page
+    public String write(Object value, Set<String> fields) throws JsonProcessingException {
+        if (fields == null || fields.isEmpty() || value == null) {
+            return write(value);
+        }
+
+        final JsonNode tree = objectMapper.valueToTree(value);
+        retainFields(value instanceof ResultPage ? tree.get("items") : tree, fields);
+        return objectMapper.writeValueAsString(tree);
+    }
+
+    private static void retainFields(JsonNode node, Set<String> fields) {
+        if (node == null) {
+            return;
+        }
+
+        if (node.isArray()) {
+            for (var element : node) {
+                retainFields(element, fields);
+            }
+        } else if (node.isObject()) {
+            ((ObjectNode) node).retain(fields);
+        }
+    }
+
+    private ObjectReader getReader(Class<?> type) {
+        return readers.computeIfAbsent(type, objectMapper::readerFor);
+    }
+
+    private ObjectWriter getWriter(Class<?> type) {
+        return writers.computeIfAbsent(type, objectMapper::writerFor);
+    }
+}
@@ -0,0 +1,128 @@
+package com.trilogy.learning.market.service;
+
+import io.quarkus.runtime.StartupEvent;
+import lombok.extern.jbosslog.JBossLog;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+
+import javax.enterprise.event.Observes;
+import javax.enterprise.inject.Any;
+import javax.enterprise.inject.Instance;
+import javax.enterprise.inject.literal.NamedLiteral;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.StringJoiner;
+
+// Builds what the first request would otherwise build: the AWS clients, the handler of this function with its
+// repositories and table schemas, and the JSON readers and writers. Logs how long each phase took, starting
+// with the time from process start to the startup event
+@JBossLog
+@Singleton
+public class StartupPriming {
+    private static final String TABLE_ENV = "DYNAMODB_TABLE";
+    // Never written, so reading it only opens a connection and resolves credentials
+    private static final String PRIMING_KEY = "PRIMING#";
+
+    private final boolean enabled;
+    private final boolean warmConnection;
+    private final Optional<String> handlerName;
+    private final Instance<DynamoDbClient> dynamoDbClient;
+    private final Instance<DynamoDbAsyncClient> dynamoDbAsyncClient;
+    private final Instance<SerializationService> serializationService;
+    private final Instance<Object> beans;
+
+    @Inject
+    public StartupPriming(@ConfigProperty(name = "market.priming.enabled", defaultValue = "true") boolean enabled,
+                          @ConfigProperty(name = "market.priming.warm-connection", defaultValue = "false")
+                                  boolean warmConnection,
+                          @ConfigProperty(name = "quarkus.lambda.handler") Optional<String> handlerName,
+                          Instance<DynamoDbClient> dynamoDbClient,
+                          Instance<DynamoDbAsyncClient> dynamoDbAsyncClient,
+                          Instance<SerializationService> serializationService,
+                          @Any Instance<Object> beans) {
+        this.enabled = enabled;
+        this.warmConnection = warmConnection;
+        this.handlerName = handlerName;
+        this.dynamoDbClient = dynamoDbClient;
+        this.dynamoDbAsyncClient = dynamoDbAsyncClient;
+        this.serializationService = serializationService;
+        this.beans = beans;
+    }
+
+    void onStart(@Observes StartupEvent event) {
+        if (!enabled) {
+            return;
+        }
+
+        final var timeline = new LinkedHashMap<String, Long>();
+        ProcessHandle.current().info().startInstant().ifPresent(start ->
+                timeline.put("process", Duration.between(start, Instant.now()).toMillis()));
+        final var primingStart = System.nanoTime();
+        try {
+            time(timeline, "clients", () -> {
+                dynamoDbClient.get();
+                dynamoDbAsyncClient.get();
+            });
+            // Handlers are created per invocation, but the singletons they depend on are kept
+            handlerName.ifPresent(name -> time(timeline, "handler",
+                    () -> beans.select(NamedLiteral.of(name)).get()));
+            time(timeline, "serialization", () -> {
+                try {
+                    serializationService.get().prime();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            if (warmConnection) {
+                time(timeline, "connection", this::warmConnections);
+            }
+        } catch (RuntimeException e) {
+            log.warnf(e, "Priming stopped early");
+        }
+
+        timeline.put("priming", (System.nanoTime() - primingStart) / 1_000_000);
+        log.infof("Startup timeline (ms): %s", format(timeline));
+    }
+
+    // A failed read still did the TLS handshake and credential lookup, which is all this is for
+    private void warmConnections() {
+        final var request = GetItemRequest.builder()
+                .tableName(System.getenv(TABLE_ENV))
+                .key(Map.of(
+                        "PK", AttributeValue.builder().s(PRIMING_KEY).build(),
+                        "SK", AttributeValue.builder().s(PRIMING_KEY).build()))
+                .build();
+        warm(() -> dynamoDbClient.get().getItem(request));
+        warm(() -> dynamoDbAsyncClient.get().getItem(request).join());
+    }
+
+    private static void warm(Runnable read) {
+        try {
+            read.run();
+        } catch (RuntimeException e) {
+            log.debugf(e, "Priming read failed");
+        }
+    }
+
+    private static void time(Map<String, Long> timeline, String phase, Runnable action) {
+        final var start = System.nanoTime();
+        action.run();
+        timeline.put(phase, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static String format(Map<String, Long> timeline) {
+        final var joiner = new StringJoiner(", ");
+        timeline.forEach((phase, millis) -> joiner.add(phase + "=" + millis));
+        return joiner.toString();
+    }
+}
@@ -0,0 +1,118 @@
+package com.trilogy.learning.market.controller;
+
+import com.amazonaws.services.lambda.runtime.events.StreamsEventResponse;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.OperationType;
+import software.amazon.awssdk.services.dynamodb.model.Record;
+import software.amazon.awssdk.services.dynamodb.model.StreamRecord;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AbstractDynamoStreamLambdaTest {
+    @Test
+    void failedGroupStopsAllGroupsAndReDeliveryCountsEveryRecordOnce() {
+        final var lambda = new CountingStreamLambda(4, Set.of("105"));
+        final var records = new ArrayList<Record>();
+        for (var i = 0; i < 24; i++) {
+            records.add(getRecord(100 + i, "KEY#" + (i % 3)));
+        }
+
+        final var response = lambda.handleRecords(records);
+
+        assertEquals(List.of("105"), getFailedSequenceNumbers(response));
+        final var redelivered = getRecordsFrom(records, "105");
+        assertTrue(lambda.handleRecords(redelivered).getBatchItemFailures().isEmpty());
+        assertEquals(Map.of("KEY#0", 8, "KEY#1", 8, "KEY#2", 8), lambda.counts);
+    }
+
+    @Test
+    void failedRecordStopsInOrderHandling() {
+        final var lambda = new CountingStreamLambda(1, Set.of("102"));
+        final var records = new ArrayList<Record>();
+        for (var i = 0; i < 6; i++) {
+            records.add(getRecord(100 + i, "KEY#" + (i % 2)));
+        }
+
+        assertEquals(List.of("102"), getFailedSequenceNumbers(lambda.handleRecords(records)));
+        assertEquals(Map.of("KEY#0", 1, "KEY#1", 1), lambda.counts);
+
+        lambda.handleRecords(getRecordsFrom(records, "102"));
+        assertEquals(Map.of("KEY#0", 3, "KEY#1", 3), lambda.counts);
+    }
+
+    private static Record getRecord(int sequenceNumber, String key) {
+        final var keys = Map.of("PK", AttributeValue.builder().s(key).build());
+        final var item = Map.of("PK", AttributeValue.builder().s(key).build(),
+                "Seq", AttributeValue.builder().n(Integer.toString(sequenceNumber)).build());
+        return Record.builder()
+                .eventName(OperationType.INSERT)
+                .dynamodb(StreamRecord.builder()
+                        .sequenceNumber(Integer.toString(sequenceNumber))
+                        .keys(keys)
+                        .newImage(item)
+                        .build())
+                .build();
+    }
+
+    private static List<Record> getRecordsFrom(List<Record> records, String sequenceNumber) {
+        final var from = new BigInteger(sequenceNumber);
+        final var redelivered = new ArrayList<Record>();
+        for (var record : records) {
+            if (new BigInteger(record.dynamodb().sequenceNumber()).compareTo(from) >= 0) {
+                redelivered.add(record);
+            }
+        }
+
+        return redelivered;
+    }
+
+    private static List<String> getFailedSequenceNumbers(StreamsEventResponse response) {
+        final var sequenceNumbers = new ArrayList<String>();
+        for (var failure : response.getBatchItemFailures()) {
+            sequenceNumbers.add(failure.getItemIdentifier());
+        }
+
+        return sequenceNumbers;
+    }
+
+    // Counts records per key once per batch, like the order counts, and fails each given record once
+    private static class CountingStreamLambda extends AbstractDynamoStreamLambda<String> {
+        private final Map<String, Integer> counts = new ConcurrentHashMap<>();
+        private final Set<String> failing;
+
+        CountingStreamLambda(int parallelism, Set<String> failOnce) {
+            this.parallelism = parallelism;
+            reportBatchItemFailures = true;
+            failing = ConcurrentHashMap.newKeySet();
+            failing.addAll(failOnce);
+        }
+
+        @Override
+        protected String handle(Map<String, AttributeValue> oldItem,
+                                Map<String, AttributeValue> newItem,
+                                OperationType operationType) throws IOException {
+            if (failing.remove(newItem.get("Seq").n())) {
+                throw new IOException("Failing record " + newItem.get("Seq").n());
+            }
+
+            return newItem.get("PK").s();
+        }
+
+        @Override
+        protected void completeBatch(String batch, List<HandledRecord<String>> results) {
+            for (var result : results) {
+                counts.merge(result.getResult(), 1, Integer::sum);
+            }
+        }
+    }
+}
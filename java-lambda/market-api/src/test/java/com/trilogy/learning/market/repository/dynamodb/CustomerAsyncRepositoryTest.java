@@ -0,0 +1,93 @@
+package com.trilogy.learning.market.repository.dynamodb;
+
+import com.trilogy.learning.market.model.Customer;
+import com.trilogy.learning.market.service.inmemory.InMemoryDynamoDb;
+import com.trilogy.learning.market.service.inmemory.InMemoryDynamoDbAsyncClient;
+import com.trilogy.learning.market.service.inmemory.InMemoryDynamoDbClient;
+import com.trilogy.learning.market.service.inmemory.InMemoryIndex;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CustomerAsyncRepositoryTest {
+    private static final String EMAIL = "customer@example.com";
+
+    private final InMemoryDynamoDb database = new InMemoryDynamoDb("PK", "SK",
+            List.of(new InMemoryIndex("GSI1", "GSI1PK", "GSI1SK", Set.of("PK", "Data"))),
+            Duration.ZERO, Duration.ZERO, 0);
+    private final CustomerRepository repository = new CustomerRepository(new InMemoryDynamoDbClient(database), 1, 100);
+    private final CustomerAsyncRepository asyncRepository =
+            new CustomerAsyncRepository(new InMemoryDynamoDbAsyncClient(database), repository);
+    private final CustomerRepository shardedRepository =
+            new CustomerRepository(new InMemoryDynamoDbClient(database), 4, 5);
+    private final CustomerAsyncRepository shardedAsyncRepository =
+            new CustomerAsyncRepository(new InMemoryDynamoDbAsyncClient(database), shardedRepository);
+
+    @Test
+    void reDeliveredBatchCountsEveryRecordOnce() {
+        apply("1000", getChanges(1000, 30));
+        assertEquals(30, getOrderCount());
+
+        // Another shard's batch in between, then the first batch again with records added since
+        apply("5000", getChanges(5000, 5));
+        apply("1000", getChanges(1000, 40));
+        assertEquals(45, getOrderCount());
+
+        apply("1000", getChanges(1000, 40));
+        apply("5000", getChanges(5000, 5));
+        assertEquals(45, getOrderCount());
+    }
+
+    @Test
+    void retryFromFailedRecordCountsTheRestOnce() {
+        apply("1000", getChanges(1000, 25));
+        apply("1025", getChanges(1025, 25));
+        apply("1025", getChanges(1025, 25));
+
+        assertEquals(50, getOrderCount());
+    }
+
+    @Test
+    void rollUpMovesCountersIntoCustomer() {
+        shardedRepository.addCustomer(Customer.builder().email(EMAIL).name("Customer").build());
+        for (var order = 0; order < 60; order++) {
+            shardedAsyncRepository.incrementOrderCount(EMAIL, 1).join();
+        }
+
+        shardedAsyncRepository.applyOrderCountChanges(EMAIL, "1000", getChanges(1000, 30)).join();
+        shardedAsyncRepository.applyOrderCountChanges(EMAIL, "1000", getChanges(1000, 30)).join();
+
+        assertEquals(90, shardedAsyncRepository.getById(EMAIL).join().getOrderCount());
+        assertEquals(90, shardedRepository.getById(EMAIL).getOrderCount());
+        final var folded = getOrderCount();
+        assertTrue(folded > 0 && folded <= 90, "folded " + folded);
+    }
+
+    private void apply(String batch, Map<String, Integer> changes) {
+        asyncRepository.applyOrderCountChanges(EMAIL, batch, changes).join();
+    }
+
+    private static Map<String, Integer> getChanges(int firstRecord, int count) {
+        final var changes = new LinkedHashMap<String, Integer>();
+        for (var record = firstRecord; record < firstRecord + count; record++) {
+            changes.put(Integer.toString(record), 1);
+        }
+
+        return changes;
+    }
+
+    private int getOrderCount() {
+        final var response = new InMemoryDynamoDbClient(database).getItem(GetItemRequest.builder()
+                .key(repository.getCustomerKey(EMAIL))
+                .build());
+        return Integer.parseInt(response.item().get(CustomerRepository.ORDER_COUNT_ATTRIBUTE).n());
+    }
+}
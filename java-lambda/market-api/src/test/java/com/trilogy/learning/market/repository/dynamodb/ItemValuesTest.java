@@ -0,0 +1,55 @@
+package com.trilogy.learning.market.repository.dynamodb;
+
+import org.joda.time.DateTime;
+import org.joda.time.IllegalFieldValueException;
+import org.joda.time.LocalDate;
+import org.joda.time.format.ISODateTimeFormat;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// The arithmetic date conversions must agree with the Joda objects they replace
+class ItemValuesTest {
+    private static final List<String> TIMES = List.of("00:00:00", "00:59:59", "12:30:05", "23:59:59");
+
+    @Test
+    void parseDateMatchesJodaForEveryDay() {
+        for (var day = new LocalDate(1999, 1, 1); day.getYear() < 2005; day = day.plusDays(1)) {
+            for (var time : TIMES) {
+                final var value = day + "T" + time;
+                assertEquals(new DateTime(value).toDate(), ItemValues.parseDate(value), value);
+            }
+        }
+    }
+
+    @Test
+    void parseDateRejectsDaysPastTheEndOfTheMonth() {
+        for (var value : List.of("2021-02-29T10:00:00", "2021-02-31T10:00:00", "2020-02-30T10:00:00",
+                "1900-02-29T10:00:00", "2021-04-31T10:00:00", "2021-11-31T10:00:00")) {
+            assertThrows(IllegalFieldValueException.class, () -> new DateTime(value), value);
+            assertThrows(IllegalFieldValueException.class, () -> ItemValues.parseDate(value), value);
+        }
+    }
+
+    @Test
+    void parseDateLeavesOtherFormatsToJoda() {
+        for (var value : List.of("2021-03-04", "2021-03-04T05:06", "2021-03-04T05:06:07.890Z")) {
+            assertEquals(new DateTime(value).toDate(), ItemValues.parseDate(value), value);
+        }
+    }
+
+    @Test
+    void formatDateAndMonthMatchJoda() {
+        final var formatter = ISODateTimeFormat.dateHourMinuteSecond();
+        for (var day = new LocalDate(1999, 1, 1); day.getYear() < 2005; day = day.plusDays(1)) {
+            for (var time : TIMES) {
+                final var date = new DateTime(day + "T" + time).toDate();
+                assertEquals(formatter.print(date.getTime()), ItemValues.formatDate(date));
+                assertEquals(new DateTime(date).toString("yyyy_MM"), ItemValues.formatMonth(date));
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.trilogy.learning.market.repository.dynamodb;
+
+import com.trilogy.learning.market.model.Product;
+import com.trilogy.learning.market.service.DynamoDbMetrics;
+import com.trilogy.learning.market.service.ProductCache;
+import com.trilogy.learning.market.service.inmemory.InMemoryDynamoDb;
+import com.trilogy.learning.market.service.inmemory.InMemoryDynamoDbClient;
+import com.trilogy.learning.market.service.inmemory.InMemoryIndex;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardedQueryTest {
+    private final InMemoryDynamoDb database = new InMemoryDynamoDb("PK", "SK",
+            List.of(new InMemoryIndex("GSI1", "GSI1PK", "GSI1SK", Set.of("PK", "Data")),
+                    new InMemoryIndex("GSI2", "GSI2PK", "GSI2SK", Set.of("PK"))),
+            Duration.ZERO, Duration.ZERO, 0);
+    private final InMemoryDynamoDbClient client = new InMemoryDynamoDbClient(database);
+    private final ProductRepository repository = new ProductRepository(client,
+            new ProductCache(0, Duration.ZERO, new DynamoDbMetrics(false, "Test")), 4, Optional.of(4));
+
+    @Test
+    void projectedPagesResumeEveryShardInOrder() {
+        final var expected = new ArrayList<String>();
+        for (var index = 0; index < 20; index++) {
+            final var name = String.format("Product %02d", index);
+            repository.addProduct(new Product("p" + index, name, BigDecimal.ONE, "Books", true));
+            expected.add(name);
+        }
+
+        // Written before the index was sharded
+        client.putItem(PutItemRequest.builder()
+                .item(Map.of("PK", getString("PROD#legacy"), "SK", getString("PROD#legacy"),
+                        "GSI2PK", getString(Product.OUT_OF_STOCK_MARKER), "GSI2SK", getString("Product 07a")))
+                .build());
+        expected.add(8, "Product 07a");
+        repository.addProduct(new Product("in-stock", "Product 99", BigDecimal.ONE, "Books", false));
+
+        final var names = new ArrayList<String>();
+        String nextToken = null;
+        do {
+            final var page = repository.getIfOutOfStock(3, nextToken, Set.of("name"));
+            assertTrue(page.getItems().size() <= 3);
+            for (var product : page.getItems()) {
+                names.add(product.getName());
+                assertTrue(product.getOutOfStock());
+                assertNull(product.getPrice());
+            }
+
+            nextToken = page.getNextToken();
+        } while (nextToken != null);
+
+        assertEquals(expected, names);
+    }
+
+    private static AttributeValue getString(String value) {
+        return AttributeValue.builder().s(value).build();
+    }
+}
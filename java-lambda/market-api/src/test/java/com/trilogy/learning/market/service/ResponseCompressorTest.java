@@ -0,0 +1,30 @@
+package com.trilogy.learning.market.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ResponseCompressorTest {
+    private static final String BODY = "{\"items\":[" + "{\"name\":\"product\"},".repeat(100) + "{}]}";
+
+    private final ResponseCompressor compressor = new ResponseCompressor(true, 64,
+            new DynamoDbMetrics(false, "Test"));
+
+    @Test
+    void compressesOnlyWhenApiGatewayDecodesTheBody() {
+        assertNotNull(compressor.compress(BODY, "gzip", "application/json"));
+        assertNotNull(compressor.compress(BODY, "gzip", "Application/JSON; charset=utf-8, */*"));
+        assertNull(compressor.compress(BODY, "gzip", null));
+        assertNull(compressor.compress(BODY, "gzip", "*/*"));
+        assertNull(compressor.compress(BODY, "gzip", "*/*, application/json"));
+    }
+
+    @Test
+    void prefersGzipAndHonorsExclusions() {
+        assertEquals(ResponseCompressor.GZIP, ResponseCompressor.getEncoding("deflate, gzip"));
+        assertEquals(ResponseCompressor.DEFLATE, ResponseCompressor.getEncoding("gzip;q=0, *"));
+        assertNull(ResponseCompressor.getEncoding("identity"));
+    }
+}
@@ -0,0 +1,772 @@
+package com.trilogy.learning.market.service.inmemory;
+
+import lombok.Value;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.trilogy.learning.market.service.inmemory.InMemoryDynamoDb.validationError;
+
+// Parses the subset of the DynamoDB expression language the repositories use: conditions, key conditions,
+// update and projection expressions on top-level attributes
+final class Expressions {
+    private static final Map<String, AttributeValue> NO_ITEM = Map.of();
+
+    private final Map<String, String> names;
+    private final Map<String, AttributeValue> values;
+    private final Set<String> usedNames = new LinkedHashSet<>();
+    private final Set<String> usedValues = new LinkedHashSet<>();
+
+    private List<String> tokens;
+    private int position;
+
+    Expressions(Map<String, String> names, Map<String, AttributeValue> values) {
+        this.names = names == null ? Map.of() : names;
+        this.values = values == null ? Map.of() : values;
+    }
+
+    Condition parseCondition(String expression) {
+        start(expression);
+        final var condition = parseOr();
+        end();
+        return condition;
+    }
+
+    Update parseUpdate(String expression) {
+        start(expression);
+        final var update = new Update();
+        final var clauses = new LinkedHashSet<String>();
+        while (position < tokens.size()) {
+            final var clause = next().toUpperCase();
+            if (!clauses.add(clause)) {
+                throw validationError("Invalid UpdateExpression: The " + clause + " section can only be used once");
+            }
+
+            do {
+                switch (clause) {
+                    case "SET":
+                        final var path = parsePath();
+                        expect("=");
+                        update.sets.put(path, parseSetValue());
+                        break;
+                    case "REMOVE":
+                        update.removes.add(parsePath());
+                        break;
+                    case "ADD":
+                        update.adds.put(parsePath(), parseOperand());
+                        break;
+                    case "DELETE":
+                        update.deletes.put(parsePath(), parseOperand());
+                        break;
+                    default:
+                        throw validationError("Invalid UpdateExpression: Syntax error; token: \"" + clause + "\"");
+                }
+            } while (accept(","));
+        }
+
+        if (clauses.isEmpty()) {
+            throw validationError("Invalid UpdateExpression: The expression can not be empty");
+        }
+
+        return update;
+    }
+
+    Set<String> parseProjection(String expression) {
+        start(expression);
+        final var attributes = new LinkedHashSet<String>();
+        do {
+            attributes.add(parsePath());
+        } while (accept(","));
+        end();
+        return attributes;
+    }
+
+    // DynamoDB rejects requests that define placeholders no expression uses
+    void checkAllUsed() {
+        for (var name : names.keySet()) {
+            if (!usedNames.contains(name)) {
+                throw validationError("Value provided in ExpressionAttributeNames unused in expressions: keys: {"
+                        + name + "}");
+            }
+        }
+
+        for (var value : values.keySet()) {
+            if (!usedValues.contains(value)) {
+                throw validationError("Value provided in ExpressionAttributeValues unused in expressions: keys: {"
+                        + value + "}");
+            }
+        }
+    }
+
+    private Condition parseOr() {
+        var condition = parseAnd();
+        while (acceptKeyword("OR")) {
+            condition = new Or(condition, parseAnd());
+        }
+
+        return condition;
+    }
+
+    private Condition parseAnd() {
+        var condition = parseNot();
+        while (acceptKeyword("AND")) {
+            condition = new And(condition, parseNot());
+        }
+
+        return condition;
+    }
+
+    private Condition parseNot() {
+        if (acceptKeyword("NOT")) {
+            final var condition = parseNot();
+            return item -> !condition.test(item);
+        }
+
+        if (accept("(")) {
+            final var condition = parseOr();
+            expect(")");
+            return condition;
+        }
+
+        final var token = peek();
+        switch (token) {
+            case "attribute_exists":
+            case "attribute_not_exists": {
+                next();
+                expect("(");
+                final var path = parsePath();
+                expect(")");
+                final var exists = token.equals("attribute_exists");
+                return new Exists(path, exists);
+            }
+            case "attribute_type": {
+                next();
+                expect("(");
+                final var path = parsePath();
+                expect(",");
+                final var type = parseOperand();
+                expect(")");
+                return item -> item.containsKey(path)
+                        && getType(item.get(path)).equals(type.get(NO_ITEM).s());
+            }
+            case "begins_with": {
+                next();
+                expect("(");
+                final var path = new Path(parsePath());
+                expect(",");
+                final var prefix = parseOperand();
+                expect(")");
+                return new BeginsWith(path, prefix);
+            }
+            case "contains": {
+                next();
+                expect("(");
+                final var path = new Path(parsePath());
+                expect(",");
+                final var operand = parseOperand();
+                expect(")");
+                return item -> contains(path.get(item), operand.get(item));
+            }
+            default:
+                break;
+        }
+
+        final var left = parseOperand();
+        if (acceptKeyword("BETWEEN")) {
+            final var low = parseOperand();
+            expectKeyword("AND");
+            final var high = parseOperand();
+            return new Between(left, low, high);
+        }
+
+        if (acceptKeyword("IN")) {
+            expect("(");
+            final var candidates = new ArrayList<Operand>();
+            do {
+                candidates.add(parseOperand());
+            } while (accept(","));
+            expect(")");
+            return item -> candidates.stream().anyMatch(candidate -> isEqual(left.get(item), candidate.get(item)));
+        }
+
+        final var comparator = next();
+        switch (comparator) {
+            case "=":
+            case "<>":
+            case "<":
+            case "<=":
+            case ">":
+            case ">=":
+                return new Comparison(left, comparator, parseOperand());
+            default:
+                throw validationError("Invalid expression: Syntax error; token: \"" + comparator + "\"");
+        }
+    }
+
+    private Operand parseSetValue() {
+        final var left = parseSetTerm();
+        if (accept("+")) {
+            final var right = parseSetTerm();
+            return item -> arithmetic(left.get(item), right.get(item), true);
+        }
+
+        if (accept("-")) {
+            final var right = parseSetTerm();
+            return item -> arithmetic(left.get(item), right.get(item), false);
+        }
+
+        return left;
+    }
+
+    private Operand parseSetTerm() {
+        if (peek().equals("if_not_exists")) {
+            next();
+            expect("(");
+            final var path = new Path(parsePath());
+            expect(",");
+            final var fallback = parseSetTerm();
+            expect(")");
+            return item -> item.containsKey(path.getName()) ? path.get(item) : fallback.get(item);
+        }
+
+        if (peek().equals("list_append")) {
+            next();
+            expect("(");
+            final var first = parseSetTerm();
+            expect(",");
+            final var second = parseSetTerm();
+            expect(")");
+            return item -> {
+                final var firstList = first.get(item);
+                final var secondList = second.get(item);
+                if (firstList == null || secondList == null || !firstList.hasL() || !secondList.hasL()) {
+                    throw validationError("Invalid UpdateExpression: Incorrect operand type for operator or "
+                            + "function; operator or function: list_append");
+                }
+
+                final var list = new ArrayList<>(firstList.l());
+                list.addAll(secondList.l());
+                return AttributeValue.builder().l(list).build();
+            };
+        }
+
+        return parseOperand();
+    }
+
+    private Operand parseOperand() {
+        final var token = peek();
+        if (token.startsWith(":")) {
+            next();
+            usedValues.add(token);
+            final var value = values.get(token);
+            if (value == null) {
+                throw validationError("Value provided in ExpressionAttributeValues unused in expressions or "
+                        + "undefined: " + token);
+            }
+
+            return item -> value;
+        }
+
+        if (token.equals("size")) {
+            next();
+            expect("(");
+            final var path = new Path(parsePath());
+            expect(")");
+            return item -> {
+                final var value = path.get(item);
+                return value == null ? null : AttributeValue.builder().n(Integer.toString(size(value))).build();
+            };
+        }
+
+        return new Path(parsePath());
+    }
+
+    private String parsePath() {
+        final var token = next();
+        if (token.indexOf('.') >= 0 || token.indexOf('[') >= 0) {
+            throw validationError("Nested attribute paths are not supported: " + token);
+        }
+
+        if (token.startsWith("#")) {
+            usedNames.add(token);
+            final var name = names.get(token);
+            if (name == null) {
+                throw validationError("An expression attribute name used in the document path is not defined; "
+                        + "attribute name: " + token);
+            }
+
+            return name;
+        }
+
+        if (token.startsWith(":") || !Character.isLetter(token.charAt(0))) {
+            throw validationError("Invalid expression: Syntax error; token: \"" + token + "\"");
+        }
+
+        return token;
+    }
+
+    private void start(String expression) {
+        if (expression == null || expression.isBlank()) {
+            throw validationError("Invalid expression: The expression can not be empty");
+        }
+
+        tokens = tokenize(expression);
+        position = 0;
+    }
+
+    private void end() {
+        if (position < tokens.size()) {
+            throw validationError("Invalid expression: Syntax error; token: \"" + tokens.get(position) + "\"");
+        }
+    }
+
+    private String peek() {
+        if (position >= tokens.size()) {
+            throw validationError("Invalid expression: Syntax error; token: <EOF>");
+        }
+
+        return tokens.get(position);
+    }
+
+    private String next() {
+        final var token = peek();
+        position++;
+        return token;
+    }
+
+    private boolean accept(String token) {
+        if (position < tokens.size() && tokens.get(position).equals(token)) {
+            position++;
+            return true;
+        }
+
+        return false;
+    }
+
+    private boolean acceptKeyword(String keyword) {
+        if (position < tokens.size() && tokens.get(position).equalsIgnoreCase(keyword)) {
+            position++;
+            return true;
+        }
+
+        return false;
+    }
+
+    private void expect(String token) {
+        if (!accept(token)) {
+            throw validationError("Invalid expression: Syntax error; expected \"" + token + "\"");
+        }
+    }
+
+    private void expectKeyword(String keyword) {
+        if (!acceptKeyword(keyword)) {
+            throw validationError("Invalid expression: Syntax error; expected \"" + keyword + "\"");
+        }
+    }
+
+    private static List<String> tokenize(String expression) {
+        final var tokens = new ArrayList<String>();
+        var index = 0;
+        while (index < expression.length()) {
+            final var c = expression.charAt(index);
+            if (Character.isWhitespace(c)) {
+                index++;
+            } else if ("(),+-=".indexOf(c) >= 0) {
+                tokens.add(String.valueOf(c));
+                index++;
+            } else if (c == '<' || c == '>') {
+                final var next = index + 1 < expression.length() ? expression.charAt(index + 1) : ' ';
+                final var twoChars = next == '=' || (c == '<' && next == '>');
+                tokens.add(expression.substring(index, index + (twoChars ? 2 : 1)));
+                index += twoChars ? 2 : 1;
+            } else {
+                final var start = index;
+                while (index < expression.length() && isNameChar(expression.charAt(index))) {
+                    index++;
+                }
+
+                if (start == index) {
+                    throw validationError("Invalid expression: Syntax error; token: \"" + c + "\"");
+                }
+
+                tokens.add(expression.substring(start, index));
+            }
+        }
+
+        return tokens;
+    }
+
+    private static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '#' || c == ':' || c == '.' || c == '['
+                || c == ']';
+    }
+
+    // Orders two scalars of the same type, the way key attributes sort; null when they are not comparable
+    static Integer compare(AttributeValue left, AttributeValue right) {
+        if (left == null || right == null) {
+            return null;
+        }
+
+        if (left.s() != null && right.s() != null) {
+            return left.s().compareTo(right.s());
+        }
+
+        if (left.n() != null && right.n() != null) {
+            return new BigDecimal(left.n()).compareTo(new BigDecimal(right.n()));
+        }
+
+        if (left.b() != null && right.b() != null) {
+            return compare(left.b(), right.b());
+        }
+
+        return null;
+    }
+
+    static int compareKeys(AttributeValue left, AttributeValue right) {
+        final var result = compare(left, right);
+        if (result == null) {
+            throw validationError("Key attributes must be scalars of the same type");
+        }
+
+        return result;
+    }
+
+    private static int compare(SdkBytes left, SdkBytes right) {
+        final var leftBytes = left.asByteArrayUnsafe();
+        final var rightBytes = right.asByteArrayUnsafe();
+        for (var i = 0; i < Math.min(leftBytes.length, rightBytes.length); i++) {
+            final var result = Integer.compare(leftBytes[i] & 0xff, rightBytes[i] & 0xff);
+            if (result != 0) {
+                return result;
+            }
+        }
+
+        return Integer.compare(leftBytes.length, rightBytes.length);
+    }
+
+    static boolean isEqual(AttributeValue left, AttributeValue right) {
+        if (left == null || right == null) {
+            return false;
+        }
+
+        final var comparison = compare(left, right);
+        return comparison != null ? comparison == 0 : left.equals(right);
+    }
+
+    static String getType(AttributeValue value) {
+        if (value.s() != null) {
+            return "S";
+        } else if (value.n() != null) {
+            return "N";
+        } else if (value.b() != null) {
+            return "B";
+        } else if (value.bool() != null) {
+            return "BOOL";
+        } else if (Boolean.TRUE.equals(value.nul())) {
+            return "NULL";
+        } else if (value.hasSs()) {
+            return "SS";
+        } else if (value.hasNs()) {
+            return "NS";
+        } else if (value.hasBs()) {
+            return "BS";
+        } else if (value.hasL()) {
+            return "L";
+        } else if (value.hasM()) {
+            return "M";
+        }
+
+        return "";
+    }
+
+    static String formatNumber(BigDecimal number) {
+        return number.signum() == 0 ? "0" : number.stripTrailingZeros().toPlainString();
+    }
+
+    private static int size(AttributeValue value) {
+        if (value.s() != null) {
+            return value.s().length();
+        } else if (value.b() != null) {
+            return value.b().asByteArrayUnsafe().length;
+        } else if (value.hasSs()) {
+            return value.ss().size();
+        } else if (value.hasNs()) {
+            return value.ns().size();
+        } else if (value.hasBs()) {
+            return value.bs().size();
+        } else if (value.hasL()) {
+            return value.l().size();
+        } else if (value.hasM()) {
+            return value.m().size();
+        }
+
+        throw validationError("Invalid ConditionExpression: Incorrect operand type for operator or function; "
+                + "operator or function: size");
+    }
+
+    private static boolean contains(AttributeValue container, AttributeValue element) {
+        if (container == null || element == null) {
+            return false;
+        }
+
+        if (container.s() != null && element.s() != null) {
+            return container.s().contains(element.s());
+        } else if (container.hasSs() && element.s() != null) {
+            return container.ss().contains(element.s());
+        } else if (container.hasNs() && element.n() != null) {
+            final var number = new BigDecimal(element.n());
+            return container.ns().stream().anyMatch(n -> new BigDecimal(n).compareTo(number) == 0);
+        } else if (container.hasL()) {
+            return container.l().stream().anyMatch(value -> isEqual(value, element));
+        }
+
+        return false;
+    }
+
+    private static AttributeValue arithmetic(AttributeValue left, AttributeValue right, boolean add) {
+        if (left == null || right == null || left.n() == null || right.n() == null) {
+            throw validationError("Invalid UpdateExpression: Incorrect operand type for operator or function; "
+                    + "operator: " + (add ? "+" : "-"));
+        }
+
+        final var leftNumber = new BigDecimal(left.n());
+        final var rightNumber = new BigDecimal(right.n());
+        final var result = add ? leftNumber.add(rightNumber) : leftNumber.subtract(rightNumber);
+        return AttributeValue.builder().n(formatNumber(result)).build();
+    }
+
+    interface Condition {
+        boolean test(Map<String, AttributeValue> item);
+    }
+
+    interface Operand {
+        // Null when the operand is an attribute the item does not have
+        AttributeValue get(Map<String, AttributeValue> item);
+    }
+
+    @Value
+    static class Path implements Operand {
+        String name;
+
+        @Override
+        public AttributeValue get(Map<String, AttributeValue> item) {
+            return item.get(name);
+        }
+    }
+
+    @Value
+    static class And implements Condition {
+        Condition left;
+        Condition right;
+
+        @Override
+        public boolean test(Map<String, AttributeValue> item) {
+            return left.test(item) && right.test(item);
+        }
+    }
+
+    @Value
+    static class Or implements Condition {
+        Condition left;
+        Condition right;
+
+        @Override
+        public boolean test(Map<String, AttributeValue> item) {
+            return left.test(item) || right.test(item);
+        }
+    }
+
+    @Value
+    static class Exists implements Condition {
+        String name;
+        boolean exists;
+
+        @Override
+        public boolean test(Map<String, AttributeValue> item) {
+            return item.containsKey(name) == exists;
+        }
+    }
+
+    @Value
+    static class Comparison implements Condition {
+        Operand left;
+        String comparator;
+        Operand right;
+
+        @Override
+        public boolean test(Map<String, AttributeValue> item) {
+            final var leftValue = left.get(item);
+            final var rightValue = right.get(item);
+            if (comparator.equals("=")) {
+                return isEqual(leftValue, rightValue);
+            } else if (comparator.equals("<>")) {
+                return !isEqual(leftValue, rightValue);
+            }
+
+            final var result = compare(leftValue, rightValue);
+            if (result == null) {
+                return false;
+            }
+
+            switch (comparator) {
+                case "<":
+                    return result < 0;
+                case "<=":
+                    return result <= 0;
+                case ">":
+                    return result > 0;
+                default:
+                    return result >= 0;
+            }
+        }
+    }
+
+    @Value
+    static class Between implements Condition {
+        Operand operand;
+        Operand low;
+        Operand high;
+
+        @Override
+        public boolean test(Map<String, AttributeValue> item) {
+            final var value = operand.get(item);
+            final var lowResult = compare(value, low.get(item));
+            final var highResult = compare(value, high.get(item));
+            return lowResult != null && highResult != null && lowResult >= 0 && highResult <= 0;
+        }
+    }
+
+    @Value
+    static class BeginsWith implements Condition {
+        Path path;
+        Operand prefix;
+
+        @Override
+        public boolean test(Map<String, AttributeValue> item) {
+            final var value = path.get(item);
+            final var prefixValue = prefix.get(item);
+            if (value == null || prefixValue == null) {
+                return false;
+            }
+
+            if (value.s() != null && prefixValue.s() != null) {
+                return value.s().startsWith(prefixValue.s());
+            }
+
+            if (value.b() != null && prefixValue.b() != null) {
+                final var bytes = value.b().asByteArrayUnsafe();
+                final var prefixBytes = prefixValue.b().asByteArrayUnsafe();
+                return bytes.length >= prefixBytes.length && compare(
+                        SdkBytes.fromByteArrayUnsafe(Arrays.copyOf(bytes, prefixBytes.length)),
+                        prefixValue.b()) == 0;
+            }
+
+            return false;
+        }
+    }
+
+    // Actions keyed by attribute name, in expression order
+    static class Update {
+        private final Map<String, Operand> sets = new LinkedHashMap<>();
+        private final Set<String> removes = new LinkedHashSet<>();
+        private final Map<String, Operand> adds = new LinkedHashMap<>();
+        private final Map<String, Operand> deletes = new LinkedHashMap<>();
+
+        Set<String> getAttributeNames() {
+            final var attributes = new LinkedHashSet<String>(sets.keySet());
+            attributes.addAll(removes);
+            attributes.addAll(adds.keySet());
+            attributes.addAll(deletes.keySet());
+            return Collections.unmodifiableSet(attributes);
+        }
+
+        // All operands read the item as it was before the update
+        Map<String, AttributeValue> apply(Map<String, AttributeValue> item) {
+            final var attributeCount = sets.size() + removes.size() + adds.size() + deletes.size();
+            if (getAttributeNames().size() != attributeCount) {
+                throw validationError("Invalid UpdateExpression: Two document paths overlap with each other");
+            }
+
+            final var updated = new HashMap<>(item);
+            for (var set : sets.entrySet()) {
+                final var value = set.getValue().get(item);
+                if (value == null) {
+                    throw validationError("The provided expression refers to an attribute that does not exist "
+                            + "in the item");
+                }
+
+                updated.put(set.getKey(), value);
+            }
+
+            removes.forEach(updated::remove);
+            for (var add : adds.entrySet()) {
+                updated.put(add.getKey(), add(item.get(add.getKey()), add.getValue().get(item)));
+            }
+
+            for (var delete : deletes.entrySet()) {
+                final var remaining = delete(item.get(delete.getKey()), delete.getValue().get(item));
+                if (remaining == null) {
+                    updated.remove(delete.getKey());
+                } else {
+                    updated.put(delete.getKey(), remaining);
+                }
+            }
+
+            return updated;
+        }
+
+        private static AttributeValue add(AttributeValue current, AttributeValue value) {
+            if (value.n() != null && (current == null || current.n() != null)) {
+                final var base = current == null ? BigDecimal.ZERO : new BigDecimal(current.n());
+                return AttributeValue.builder().n(formatNumber(base.add(new BigDecimal(value.n())))).build();
+            }
+
+            if (value.hasSs() && (current == null || current.hasSs())) {
+                final var set = new LinkedHashSet<String>(current == null ? List.of() : current.ss());
+                set.addAll(value.ss());
+                return AttributeValue.builder().ss(set).build();
+            }
+
+            if (value.hasNs() && (current == null || current.hasNs())) {
+                final var set = new LinkedHashSet<String>(current == null ? List.of() : current.ns());
+                set.addAll(value.ns());
+                return AttributeValue.builder().ns(set).build();
+            }
+
+            throw validationError("Invalid UpdateExpression: Incorrect operand type for operator or function; "
+                    + "operator: ADD");
+        }
+
+        private static AttributeValue delete(AttributeValue current, AttributeValue value) {
+            if (current == null) {
+                return null;
+            }
+
+            if (value.hasSs() && current.hasSs()) {
+                final var set = new LinkedHashSet<String>(current.ss());
+                set.removeAll(value.ss());
+                return set.isEmpty() ? null : AttributeValue.builder().ss(set).build();
+            }
+
+            if (value.hasNs() && current.hasNs()) {
+                final var set = new LinkedHashSet<String>(current.ns());
+                set.removeIf(n -> value.ns().stream()
+                        .anyMatch(removed -> new BigDecimal(removed).compareTo(new BigDecimal(n)) == 0));
+                return set.isEmpty() ? null : AttributeValue.builder().ns(set).build();
+            }
+
+            throw validationError("Invalid UpdateExpression: Incorrect operand type for operator or function; "
+                    + "operator: DELETE");
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.trilogy.learning.market.service.inmemory;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExpressionsTest {
+    private static final Map<String, String> NAMES = Map.of("#pk", "PK", "#sk", "SK", "#cnt", "Count",
+            "#tags", "Tags");
+    private static final Map<String, AttributeValue> ITEM = Map.of(
+            "PK", s("CUST#ann@example.com"),
+            "SK", s("ORDER#2021-03-04"),
+            "Count", n("10"),
+            "Tags", AttributeValue.builder().ss("new", "vip").build(),
+            "Lines", AttributeValue.builder().l(s("a"), s("b")).build());
+
+    @Test
+    void comparesNumbersNumericallyAndStringsByCharacter() {
+        assertTrue(test("#cnt > :v", Map.of(":v", n("9.5"))));
+        assertTrue(test("#cnt = :v", Map.of(":v", n("10.0"))));
+        assertFalse(test("#cnt < :v", Map.of(":v", n("2"))));
+        assertTrue(test("#sk < :v", Map.of(":v", s("ORDER#2021-03-05"))));
+        assertTrue(test("#sk <> :v", Map.of(":v", s("ORDER#2021-03-05"))));
+    }
+
+    @Test
+    void comparingDifferentTypesOrMissingAttributesIsFalse() {
+        assertFalse(test("#cnt > :v", Map.of(":v", s("1"))));
+        assertFalse(test("Missing < :v", Map.of(":v", n("1"))));
+        assertTrue(test("Missing <> :v", Map.of(":v", n("1"))));
+    }
+
+    @Test
+    void evaluatesFunctions() {
+        assertTrue(test("begins_with(#sk, :v)", Map.of(":v", s("ORDER#"))));
+        assertFalse(test("begins_with(#sk, :v)", Map.of(":v", s("PRODUCT#"))));
+        assertTrue(test("attribute_exists(#cnt) AND attribute_not_exists(Missing)", Map.of()));
+        assertTrue(test("attribute_type(#tags, :v)", Map.of(":v", s("SS"))));
+        assertTrue(test("contains(#tags, :v)", Map.of(":v", s("vip"))));
+        assertTrue(test("contains(#pk, :v)", Map.of(":v", s("@example"))));
+        assertTrue(test("size(Lines) = :v", Map.of(":v", n("2"))));
+        assertTrue(test("#cnt BETWEEN :low AND :high", Map.of(":low", n("10"), ":high", n("20"))));
+        assertTrue(test("#cnt IN (:a, :b)", Map.of(":a", n("1"), ":b", n("10"))));
+    }
+
+    @Test
+    void appliesPrecedenceOfNotAndOverOr() {
+        final var values = Map.of(":one", n("1"), ":ten", n("10"));
+        assertTrue(test("#cnt = :one OR #cnt = :ten AND attribute_exists(#tags)", values));
+        assertFalse(test("(#cnt = :one OR #cnt = :ten) AND attribute_not_exists(#tags)", values));
+        assertTrue(test("NOT #cnt = :one AND NOT attribute_exists(Missing)", values));
+    }
+
+    @Test
+    void rejectsUnusedAndUndefinedPlaceholders() {
+        final var unused = new Expressions(Map.of("#pk", "PK"), Map.of(":v", n("1"), ":unused", n("2")));
+        unused.parseCondition("#pk = :v");
+        assertThrows(DynamoDbException.class, unused::checkAllUsed);
+
+        final var undefined = new Expressions(Map.of(), Map.of());
+        assertThrows(DynamoDbException.class, () -> undefined.parseCondition("Count = :v"));
+        assertThrows(DynamoDbException.class, () -> undefined.parseCondition("#missing = Count"));
+    }
+
+    @Test
+    void rejectsSyntaxErrors() {
+        final var expressions = new Expressions(Map.of(), Map.of(":v", n("1")));
+        assertThrows(DynamoDbException.class, () -> expressions.parseCondition("Count = :v AND"));
+        assertThrows(DynamoDbException.class, () -> expressions.parseCondition("Count ~ :v"));
+        assertThrows(DynamoDbException.class, () -> expressions.parseCondition("Lines[0] = :v"));
+        assertThrows(DynamoDbException.class, () -> expressions.parseUpdate("SET Count = :v SET Other = :v"));
+    }
+
+    @Test
+    void updateOperandsReadTheItemBeforeTheUpdate() {
+        final var expressions = new Expressions(NAMES, Map.of(":one", n("1"), ":tag", AttributeValue.builder()
+                .ss("vip").build(), ":lines", AttributeValue.builder().l(s("c")).build()));
+        final var update = expressions.parseUpdate("SET Previous = #cnt, Lines = list_append(Lines, :lines), "
+                + "First = if_not_exists(First, #cnt) ADD #cnt :one DELETE #tags :tag REMOVE #sk");
+        final var updated = update.apply(ITEM);
+        assertEquals(n("11"), updated.get("Count"));
+        assertEquals(n("10"), updated.get("Previous"));
+        assertEquals(n("10"), updated.get("First"));
+        assertEquals(List.of(s("a"), s("b"), s("c")), updated.get("Lines").l());
+        assertEquals(List.of("new"), updated.get("Tags").ss());
+        assertFalse(updated.containsKey("SK"));
+    }
+
+    @Test
+    void rejectsOverlappingUpdatePaths() {
+        final var expressions = new Expressions(NAMES, Map.of(":one", n("1")));
+        final var update = expressions.parseUpdate("SET #cnt = :one ADD #cnt :one");
+        assertThrows(DynamoDbException.class, () -> update.apply(ITEM));
+    }
+
+    private static boolean test(String expression, Map<String, AttributeValue> values) {
+        return new Expressions(NAMES, values).parseCondition(expression).test(ITEM);
+    }
+
+    private static AttributeValue s(String value) {
+        return AttributeValue.builder().s(value).build();
+    }
+
+    private static AttributeValue n(String value) {
+        return AttributeValue.builder().n(value).build();
+    }
+}
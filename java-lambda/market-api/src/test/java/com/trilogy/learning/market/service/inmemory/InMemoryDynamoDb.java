@@ -0,0 +1,803 @@
+package com.trilogy.learning.market.service.inmemory;
+
+import lombok.Value;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.CancellationReason;
+import software.amazon.awssdk.services.dynamodb.model.ComparisonOperator;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValuesOnConditionCheckFailure;
+import software.amazon.awssdk.services.dynamodb.model.Select;
+import software.amazon.awssdk.services.dynamodb.model.TransactGetItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactGetItemsResponse;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsResponse;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+// Process-local DynamoDB behind the InMemoryDynamoDb clients. Tables appear on first use with the key schema
+// given here, writes are serialized and reads run concurrently. Conditions, transactions and index
+// projections behave like the service; streams, TTL, capacity accounting and the 1 MB page limit do not exist
+public class InMemoryDynamoDb {
+    private static final int MAX_BATCH_GET_KEYS = 100;
+    private static final int MAX_BATCH_WRITE_ITEMS = 25;
+    private static final int MAX_TRANSACTION_ITEMS = 100;
+    private static final Map<String, AttributeValue> NO_ITEM = Map.of();
+
+    private final String partitionKey;
+    private final String sortKey;
+    private final List<InMemoryIndex> indexes;
+    private final Duration latency;
+    private final Duration latencyJitter;
+    private final double throttleRate;
+    private final Map<String, InMemoryTable> tables = new ConcurrentHashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public InMemoryDynamoDb(String partitionKey, String sortKey, List<InMemoryIndex> indexes,
+                            Duration latency, Duration latencyJitter, double throttleRate) {
+        this.partitionKey = partitionKey;
+        this.sortKey = sortKey;
+        this.indexes = List.copyOf(indexes);
+        this.latency = latency;
+        this.latencyJitter = latencyJitter;
+        this.throttleRate = throttleRate;
+    }
+
+    // Simulated round trip of one call: the fixed latency plus a uniform share of the jitter
+    long getLatencyNanos() {
+        final var jitter = latencyJitter.toNanos();
+        return latency.toNanos() + (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter + 1) : 0);
+    }
+
+    GetItemResponse getItem(GetItemRequest request) {
+        throttle();
+        final var expressions = new Expressions(request.expressionAttributeNames(), null);
+        final var projection = parseProjection(expressions, request.projectionExpression());
+        expressions.checkAllUsed();
+        final var item = read(() -> getTable(request.tableName()).get(request.key()));
+        return GetItemResponse.builder()
+                .item(item == null ? null : project(item, projection))
+                .build();
+    }
+
+    PutItemResponse putItem(PutItemRequest request) {
+        throttle();
+        final var expressions = new Expressions(request.expressionAttributeNames(),
+                request.expressionAttributeValues());
+        final var condition = parseCondition(expressions, request.conditionExpression());
+        expressions.checkAllUsed();
+        checkReturnValues(request.returnValues(), ReturnValue.NONE, ReturnValue.ALL_OLD);
+        final var old = write(() -> {
+            final var table = getTable(request.tableName());
+            final var existing = table.find(table.getTableKey(request.item(), false));
+            checkCondition(condition, existing);
+            table.put(request.item());
+            return existing;
+        });
+
+        return PutItemResponse.builder()
+                .attributes(request.returnValues() == ReturnValue.ALL_OLD ? old : null)
+                .build();
+    }
+
+    UpdateItemResponse updateItem(UpdateItemRequest request) {
+        throttle();
+        if (request.hasAttributeUpdates()) {
+            throw validationError("AttributeUpdates are not supported, use an UpdateExpression");
+        }
+
+        final var expressions = new Expressions(request.expressionAttributeNames(),
+                request.expressionAttributeValues());
+        final var update = expressions.parseUpdate(request.updateExpression());
+        final var condition = parseCondition(expressions, request.conditionExpression());
+        expressions.checkAllUsed();
+        final var returnValues = request.returnValues() == null ? ReturnValue.NONE : request.returnValues();
+        final var change = write(() -> {
+            final var table = getTable(request.tableName());
+            final var existing = table.get(request.key());
+            checkCondition(condition, existing);
+            final var updated = getUpdatedItem(table, request.key(), existing, update);
+            table.put(updated);
+            return new Change(existing, updated);
+        });
+
+        final var old = change.getOld();
+        final var updated = change.getUpdated();
+        final Map<String, AttributeValue> attributes;
+        switch (returnValues) {
+            case ALL_OLD:
+                attributes = old;
+                break;
+            case ALL_NEW:
+                attributes = updated;
+                break;
+            case UPDATED_OLD:
+                attributes = old == null ? null : project(old, update.getAttributeNames());
+                break;
+            case UPDATED_NEW:
+                attributes = project(updated, update.getAttributeNames());
+                break;
+            default:
+                attributes = null;
+        }
+
+        return UpdateItemResponse.builder().attributes(attributes).build();
+    }
+
+    DeleteItemResponse deleteItem(DeleteItemRequest request) {
+        throttle();
+        final var expressions = new Expressions(request.expressionAttributeNames(),
+                request.expressionAttributeValues());
+        final var condition = parseCondition(expressions, request.conditionExpression());
+        expressions.checkAllUsed();
+        checkReturnValues(request.returnValues(), ReturnValue.NONE, ReturnValue.ALL_OLD);
+        final var old = write(() -> {
+            final var table = getTable(request.tableName());
+            checkCondition(condition, table.get(request.key()));
+            return table.delete(request.key());
+        });
+
+        return DeleteItemResponse.builder()
+                .attributes(request.returnValues() == ReturnValue.ALL_OLD ? old : null)
+                .build();
+    }
+
+    QueryResponse query(QueryRequest request) {
+        throttle();
+        if (request.limit() != null && request.limit() <= 0) {
+            throw validationError("Limit must be greater than or equal to 1");
+        }
+
+        final var expressions = new Expressions(request.expressionAttributeNames(),
+                request.expressionAttributeValues());
+        final var keyConditions = new ArrayList<Expressions.Condition>();
+        flattenAnd(request.keyConditionExpression() != null
+                ? expressions.parseCondition(request.keyConditionExpression())
+                : getKeyCondition(request), keyConditions);
+        final var filter = parseCondition(expressions, request.filterExpression());
+        final var projection = parseProjection(expressions, request.projectionExpression());
+        expressions.checkAllUsed();
+        return read(() -> query(request, keyConditions, filter, projection));
+    }
+
+    BatchGetItemResponse batchGetItem(BatchGetItemRequest request) {
+        final var keyCount = request.requestItems().values().stream().mapToInt(keys -> keys.keys().size()).sum();
+        if (keyCount > MAX_BATCH_GET_KEYS) {
+            throw validationError("Too many items requested for the BatchGetItem call");
+        }
+
+        final var projections = new HashMap<String, Set<String>>();
+        for (var tableKeys : request.requestItems().entrySet()) {
+            final var keys = tableKeys.getValue();
+            if (new HashSet<>(keys.keys()).size() != keys.keys().size()) {
+                throw validationError("Provided list of item keys contains duplicates");
+            }
+
+            final var expressions = new Expressions(keys.expressionAttributeNames(), null);
+            projections.put(tableKeys.getKey(), parseProjection(expressions, keys.projectionExpression()));
+            expressions.checkAllUsed();
+        }
+
+        final var responses = new HashMap<String, List<Map<String, AttributeValue>>>();
+        final var unprocessed = new HashMap<String, KeysAndAttributes>();
+        read(() -> {
+            for (var tableKeys : request.requestItems().entrySet()) {
+                final var table = getTable(tableKeys.getKey());
+                final var found = responses.computeIfAbsent(tableKeys.getKey(), t -> new ArrayList<>());
+                final var throttled = new ArrayList<Map<String, AttributeValue>>();
+                for (var key : tableKeys.getValue().keys()) {
+                    if (isThrottled()) {
+                        throttled.add(key);
+                        continue;
+                    }
+
+                    final var item = table.get(key);
+                    if (item != null) {
+                        found.add(project(item, projections.get(tableKeys.getKey())));
+                    }
+                }
+
+                if (!throttled.isEmpty()) {
+                    unprocessed.put(tableKeys.getKey(), tableKeys.getValue().toBuilder().keys(throttled).build());
+                }
+            }
+
+            return null;
+        });
+
+        return BatchGetItemResponse.builder()
+                .responses(responses)
+                .unprocessedKeys(unprocessed)
+                .build();
+    }
+
+    BatchWriteItemResponse batchWriteItem(BatchWriteItemRequest request) {
+        final var requestCount = request.requestItems().values().stream().mapToInt(List::size).sum();
+        if (requestCount > MAX_BATCH_WRITE_ITEMS) {
+            throw validationError("Too many items requested for the BatchWriteItem call");
+        }
+
+        final var unprocessed = new HashMap<String, List<WriteRequest>>();
+        write(() -> {
+            for (var tableWrites : request.requestItems().entrySet()) {
+                final var table = getTable(tableWrites.getKey());
+                final var keys = new HashSet<InMemoryTable.TableKey>();
+                for (var writeRequest : tableWrites.getValue()) {
+                    if ((writeRequest.putRequest() == null) == (writeRequest.deleteRequest() == null)) {
+                        throw validationError("A WriteRequest must have either a PutRequest or a DeleteRequest");
+                    }
+
+                    final var key = writeRequest.putRequest() != null
+                            ? table.getTableKey(writeRequest.putRequest().item(), false)
+                            : table.getTableKey(writeRequest.deleteRequest().key(), true);
+                    if (!keys.add(key)) {
+                        throw validationError("Provided list of item keys contains duplicates");
+                    }
+                }
+            }
+
+            for (var tableWrites : request.requestItems().entrySet()) {
+                final var table = getTable(tableWrites.getKey());
+                for (var writeRequest : tableWrites.getValue()) {
+                    if (isThrottled()) {
+                        unprocessed.computeIfAbsent(tableWrites.getKey(), t -> new ArrayList<>()).add(writeRequest);
+                    } else if (writeRequest.putRequest() != null) {
+                        table.put(writeRequest.putRequest().item());
+                    } else {
+                        table.delete(writeRequest.deleteRequest().key());
+                    }
+                }
+            }
+
+            return null;
+        });
+
+        return BatchWriteItemResponse.builder().unprocessedItems(unprocessed).build();
+    }
+
+    TransactGetItemsResponse transactGetItems(TransactGetItemsRequest request) {
+        throttle();
+        if (request.transactItems().size() > MAX_TRANSACTION_ITEMS) {
+            throw validationError("Member must have length less than or equal to " + MAX_TRANSACTION_ITEMS);
+        }
+
+        final var projections = new ArrayList<Set<String>>();
+        for (var item : request.transactItems()) {
+            final var expressions = new Expressions(item.get().expressionAttributeNames(), null);
+            projections.add(parseProjection(expressions, item.get().projectionExpression()));
+            expressions.checkAllUsed();
+        }
+
+        final var responses = read(() -> {
+            final var items = new ArrayList<ItemResponse>();
+            for (var i = 0; i < request.transactItems().size(); i++) {
+                final var get = request.transactItems().get(i).get();
+                final var item = getTable(get.tableName()).get(get.key());
+                items.add(ItemResponse.builder()
+                        .item(item == null ? null : project(item, projections.get(i)))
+                        .build());
+            }
+
+            return items;
+        });
+
+        return TransactGetItemsResponse.builder().responses(responses).build();
+    }
+
+    // Every condition is checked before anything is written; one failure cancels the whole transaction
+    TransactWriteItemsResponse transactWriteItems(TransactWriteItemsRequest request) {
+        throttle();
+        if (request.transactItems().size() > MAX_TRANSACTION_ITEMS) {
+            throw validationError("Member must have length less than or equal to " + MAX_TRANSACTION_ITEMS);
+        }
+
+        final var actions = new ArrayList<TransactAction>();
+        for (var item : request.transactItems()) {
+            actions.add(new TransactAction(item));
+        }
+
+        write(() -> {
+            final var targets = new HashSet<String>();
+            for (var action : actions) {
+                if (!targets.add(action.tableName + "/" + action.getTableKey(getTable(action.tableName)))) {
+                    throw validationError("Transaction request cannot include multiple operations on one item");
+                }
+            }
+
+            final var reasons = new ArrayList<CancellationReason>();
+            var cancelled = false;
+            for (var action : actions) {
+                final var table = getTable(action.tableName);
+                final var existing = table.find(action.getTableKey(table));
+                if (action.condition == null || action.condition.test(existing == null ? NO_ITEM : existing)) {
+                    reasons.add(CancellationReason.builder().code("None").build());
+                    action.updated = action.update == null ? null
+                            : getUpdatedItem(table, action.key, existing, action.update);
+                } else {
+                    cancelled = true;
+                    reasons.add(CancellationReason.builder()
+                            .code("ConditionalCheckFailed")
+                            .message("The conditional request failed")
+                            .item(action.returnOnFailure ? existing : null)
+                            .build());
+                }
+            }
+
+            if (cancelled) {
+                throw getTransactionCanceledException(reasons);
+            }
+
+            for (var action : actions) {
+                final var table = getTable(action.tableName);
+                if (action.put != null) {
+                    table.put(action.put);
+                } else if (action.updated != null) {
+                    table.put(action.updated);
+                } else if (action.delete) {
+                    table.delete(action.key);
+                }
+            }
+
+            return null;
+        });
+
+        return TransactWriteItemsResponse.builder().build();
+    }
+
+    private QueryResponse query(QueryRequest request, List<Expressions.Condition> conditions,
+                                Expressions.Condition filter, Set<String> projection) {
+        final var view = getTable(request.tableName()).getView(request.indexName());
+        if (view.isIndex() && Boolean.TRUE.equals(request.consistentRead())) {
+            throw validationError("Consistent reads are not supported on global secondary indexes");
+        }
+
+        final var keyConditions = getKeyConditions(view, conditions);
+
+        final var forward = !Boolean.FALSE.equals(request.scanIndexForward());
+        var range = getRange(view.getPartition(keyConditions.partitionValue), keyConditions);
+        if (!forward) {
+            range = range.descendingMap();
+        }
+
+        AttributeValue startSortValue = null;
+        InMemoryTable.TableKey startKey = null;
+        if (request.hasExclusiveStartKey()) {
+            final var exclusiveStartKey = request.exclusiveStartKey();
+            startSortValue = exclusiveStartKey.get(view.getSortKey());
+            startKey = getTable(request.tableName()).getTableKey(exclusiveStartKey, false);
+            if (startSortValue == null || !keyConditions.partitionValue.equals(
+                    exclusiveStartKey.get(view.getPartitionKey()))) {
+                throw validationError("The provided starting key is invalid");
+            }
+
+            range = range.tailMap(startSortValue, true);
+        }
+
+        final var items = new ArrayList<Map<String, AttributeValue>>();
+        final var count = Select.COUNT.equals(request.select());
+        var matchedCount = 0;
+        var scannedCount = 0;
+        Map<String, AttributeValue> lastEvaluated = null;
+        var hasMore = false;
+        search:
+        for (var sortValueItems : range.entrySet()) {
+            var sharingSortValue = forward ? sortValueItems.getValue() : sortValueItems.getValue().descendingMap();
+            if (startSortValue != null && Expressions.compareKeys(sortValueItems.getKey(), startSortValue) == 0) {
+                sharingSortValue = sharingSortValue.tailMap(startKey, false);
+            }
+
+            for (var item : sharingSortValue.values()) {
+                if (keyConditions.sortCondition != null && !keyConditions.sortCondition.test(item)) {
+                    continue;
+                }
+
+                if (request.limit() != null && scannedCount == request.limit()) {
+                    hasMore = true;
+                    break search;
+                }
+
+                scannedCount++;
+                lastEvaluated = item;
+                final var projected = view.project(item);
+                if (filter == null || filter.test(projected)) {
+                    matchedCount++;
+                    if (!count) {
+                        items.add(project(projected, projection));
+                    }
+                }
+            }
+        }
+
+        return QueryResponse.builder()
+                .items(count ? null : items)
+                .count(matchedCount)
+                .scannedCount(scannedCount)
+                .lastEvaluatedKey(hasMore ? view.getKey(lastEvaluated) : null)
+                .build();
+    }
+
+    // Narrows the partition to the sort key range; begins_with is bounded by the prefix and checked per item
+    private static NavigableMap<AttributeValue, NavigableMap<InMemoryTable.TableKey, Map<String, AttributeValue>>>
+            getRange(NavigableMap<AttributeValue, NavigableMap<InMemoryTable.TableKey, Map<String, AttributeValue>>>
+                             partition, KeyConditions keyConditions) {
+        final var condition = keyConditions.sortCondition;
+        if (condition == null || partition.isEmpty()) {
+            return partition;
+        }
+
+        if (condition instanceof Expressions.Between) {
+            final var between = (Expressions.Between) condition;
+            final var low = between.getLow().get(NO_ITEM);
+            final var high = between.getHigh().get(NO_ITEM);
+            if (Expressions.compareKeys(low, high) > 0) {
+                throw validationError("Invalid KeyConditionExpression: The BETWEEN operator requires upper bound "
+                        + "to be greater than or equal to lower bound");
+            }
+
+            return partition.subMap(low, true, high, true);
+        }
+
+        if (condition instanceof Expressions.BeginsWith) {
+            final var prefix = ((Expressions.BeginsWith) condition).getPrefix().get(NO_ITEM);
+            if (prefix.s() == null) {
+                return partition;
+            }
+
+            final var upper = AttributeValue.builder().s(prefix.s() + Character.MAX_VALUE).build();
+            return partition.subMap(prefix, true, upper, true);
+        }
+
+        final var comparison = (Expressions.Comparison) condition;
+        final var value = comparison.getRight().get(NO_ITEM);
+        switch (comparison.getComparator()) {
+            case "=":
+                return partition.subMap(value, true, value, true);
+            case "<":
+                return partition.headMap(value, false);
+            case "<=":
+                return partition.headMap(value, true);
+            case ">":
+                return partition.tailMap(value, false);
+            case ">=":
+                return partition.tailMap(value, true);
+            default:
+                throw validationError("Invalid operator used in KeyConditionExpression: " + comparison.getComparator());
+        }
+    }
+
+    // A key condition is the partition key equality, optionally ANDed with one condition on the sort key
+    private static KeyConditions getKeyConditions(InMemoryTable.View view, List<Expressions.Condition> conditions) {
+        final var keyConditions = new KeyConditions();
+        for (var condition : conditions) {
+            final var attribute = getKeyAttribute(condition);
+            final var isEquality = condition instanceof Expressions.Comparison
+                    && ((Expressions.Comparison) condition).getComparator().equals("=");
+            if (view.getPartitionKey().equals(attribute) && isEquality && keyConditions.partitionValue == null) {
+                keyConditions.partitionValue = ((Expressions.Comparison) condition).getRight().get(NO_ITEM);
+            } else if (view.getSortKey().equals(attribute) && keyConditions.sortCondition == null) {
+                keyConditions.sortCondition = condition;
+            } else {
+                throw validationError("Query key condition not supported");
+            }
+        }
+
+        if (keyConditions.partitionValue == null) {
+            throw validationError("Query condition missed key schema element: " + view.getPartitionKey());
+        }
+
+        return keyConditions;
+    }
+
+    private static Expressions.Condition getKeyCondition(QueryRequest request) {
+        if (!request.hasKeyConditions()) {
+            throw validationError("Either the KeyConditions or KeyConditionExpression parameter must be specified");
+        }
+
+        Expressions.Condition condition = null;
+        for (var keyCondition : request.keyConditions().entrySet()) {
+            final var path = new Expressions.Path(keyCondition.getKey());
+            final var values = keyCondition.getValue().attributeValueList();
+            final var operator = keyCondition.getValue().comparisonOperator();
+            final var expected = operator == ComparisonOperator.BETWEEN ? 2 : 1;
+            if (values.size() != expected) {
+                throw validationError("One or more parameter values were invalid: Invalid number of argument(s) "
+                        + "for the " + operator + " ComparisonOperator");
+            }
+
+            final Expressions.Operand first = item -> values.get(0);
+            final Expressions.Condition converted;
+            switch (operator) {
+                case EQ:
+                    converted = new Expressions.Comparison(path, "=", first);
+                    break;
+                case LT:
+                    converted = new Expressions.Comparison(path, "<", first);
+                    break;
+                case LE:
+                    converted = new Expressions.Comparison(path, "<=", first);
+                    break;
+                case GT:
+                    converted = new Expressions.Comparison(path, ">", first);
+                    break;
+                case GE:
+                    converted = new Expressions.Comparison(path, ">=", first);
+                    break;
+                case BEGINS_WITH:
+                    converted = new Expressions.BeginsWith(path, first);
+                    break;
+                case BETWEEN:
+                    converted = new Expressions.Between(path, first, item -> values.get(1));
+                    break;
+                default:
+                    throw validationError("Unsupported operator on KeyConditions: " + operator);
+            }
+
+            condition = condition == null ? converted : new Expressions.And(condition, converted);
+        }
+
+        return condition;
+    }
+
+    private static void flattenAnd(Expressions.Condition condition, List<Expressions.Condition> conditions) {
+        if (condition instanceof Expressions.And) {
+            flattenAnd(((Expressions.And) condition).getLeft(), conditions);
+            flattenAnd(((Expressions.And) condition).getRight(), conditions);
+        } else {
+            conditions.add(condition);
+        }
+    }
+
+    private static String getKeyAttribute(Expressions.Condition condition) {
+        if (condition instanceof Expressions.Comparison) {
+            final var comparison = (Expressions.Comparison) condition;
+            if (comparison.getLeft() instanceof Expressions.Path && !(comparison.getRight() instanceof Expressions.Path)
+                    && !comparison.getComparator().equals("<>")) {
+                return ((Expressions.Path) comparison.getLeft()).getName();
+            }
+        } else if (condition instanceof Expressions.Between) {
+            final var between = (Expressions.Between) condition;
+            if (between.getOperand() instanceof Expressions.Path) {
+                return ((Expressions.Path) between.getOperand()).getName();
+            }
+        } else if (condition instanceof Expressions.BeginsWith) {
+            return ((Expressions.BeginsWith) condition).getPath().getName();
+        }
+
+        return null;
+    }
+
+    private Map<String, AttributeValue> getUpdatedItem(InMemoryTable table, Map<String, AttributeValue> key,
+                                                       Map<String, AttributeValue> existing,
+                                                       Expressions.Update update) {
+        table.getTableKey(key, true);
+        for (var attribute : update.getAttributeNames()) {
+            if (key.containsKey(attribute)) {
+                throw validationError("One or more parameter values were invalid: Cannot update attribute "
+                        + attribute + ". This attribute is part of the key");
+            }
+        }
+
+        return update.apply(existing == null ? key : existing);
+    }
+
+    private InMemoryTable getTable(String tableName) {
+        // Lambda environment variables name the tables; when they are unset locally the tables share one name
+        return tables.computeIfAbsent(tableName == null ? "" : tableName,
+                name -> new InMemoryTable(partitionKey, sortKey, indexes));
+    }
+
+    private <T> T read(Supplier<T> operation) {
+        lock.readLock().lock();
+        try {
+            return operation.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private <T> T write(Supplier<T> operation) {
+        lock.writeLock().lock();
+        try {
+            return operation.get();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean isThrottled() {
+        return throttleRate > 0 && ThreadLocalRandom.current().nextDouble() < throttleRate;
+    }
+
+    private void throttle() {
+        if (isThrottled()) {
+            throw (ProvisionedThroughputExceededException) ProvisionedThroughputExceededException.builder()
+                    .message("The level of configured provisioned throughput for the table was exceeded")
+                    .statusCode(400)
+                    .awsErrorDetails(getErrorDetails("ProvisionedThroughputExceededException",
+                            "The level of configured provisioned throughput for the table was exceeded"))
+                    .build();
+        }
+    }
+
+    private static Expressions.Condition parseCondition(Expressions expressions, String expression) {
+        return expression == null ? null : expressions.parseCondition(expression);
+    }
+
+    private static Set<String> parseProjection(Expressions expressions, String expression) {
+        return expression == null ? null : expressions.parseProjection(expression);
+    }
+
+    private static void checkCondition(Expressions.Condition condition, Map<String, AttributeValue> existing) {
+        if (condition != null && !condition.test(existing == null ? NO_ITEM : existing)) {
+            throw (ConditionalCheckFailedException) ConditionalCheckFailedException.builder()
+                    .message("The conditional request failed")
+                    .statusCode(400)
+                    .awsErrorDetails(getErrorDetails("ConditionalCheckFailedException",
+                            "The conditional request failed"))
+                    .build();
+        }
+    }
+
+    private static void checkReturnValues(ReturnValue returnValue, ReturnValue... allowed) {
+        if (returnValue != null && !List.of(allowed).contains(returnValue)) {
+            throw validationError("Return values set to invalid value");
+        }
+    }
+
+    private static Map<String, AttributeValue> project(Map<String, AttributeValue> item, Set<String> attributes) {
+        if (attributes == null) {
+            return item;
+        }
+
+        return item.entrySet().stream()
+                .filter(attribute -> attributes.contains(attribute.getKey()))
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    }
+
+    private static TransactionCanceledException getTransactionCanceledException(List<CancellationReason> reasons) {
+        final var message = "Transaction cancelled, please refer cancellation reasons for specific reasons "
+                + reasons.stream().map(CancellationReason::code).collect(Collectors.toList());
+        return (TransactionCanceledException) TransactionCanceledException.builder()
+                .cancellationReasons(reasons)
+                .message(message)
+                .statusCode(400)
+                .awsErrorDetails(getErrorDetails("TransactionCanceledException", message))
+                .build();
+    }
+
+    static DynamoDbException validationError(String message) {
+        return (DynamoDbException) DynamoDbException.builder()
+                .message(message)
+                .statusCode(400)
+                .awsErrorDetails(getErrorDetails("ValidationException", message))
+                .build();
+    }
+
+    private static AwsErrorDetails getErrorDetails(String errorCode, String message) {
+        return AwsErrorDetails.builder()
+                .errorCode(errorCode)
+                .errorMessage(message)
+                .serviceName("DynamoDb")
+                .build();
+    }
+
+    private static class KeyConditions {
+        private AttributeValue partitionValue;
+        private Expressions.Condition sortCondition;
+    }
+
+    @Value
+    private static class Change {
+        Map<String, AttributeValue> old;
+        Map<String, AttributeValue> updated;
+    }
+
+    // One TransactWriteItem with its expressions parsed up front, so a syntax error writes nothing
+    private static class TransactAction {
+        private final String tableName;
+        private final Map<String, AttributeValue> key;
+        private final Map<String, AttributeValue> put;
+        private final boolean delete;
+        private final Expressions.Update update;
+        private final Expressions.Condition condition;
+        private final boolean returnOnFailure;
+        private Map<String, AttributeValue> updated;
+
+        TransactAction(TransactWriteItem item) {
+            final var operations = (item.put() != null ? 1 : 0) + (item.update() != null ? 1 : 0)
+                    + (item.delete() != null ? 1 : 0) + (item.conditionCheck() != null ? 1 : 0);
+            if (operations != 1) {
+                throw validationError("TransactItems can only contain one of Check, Put, Update or Delete");
+            }
+
+            final Expressions expressions;
+            final String conditionExpression;
+            final ReturnValuesOnConditionCheckFailure returnValues;
+            if (item.put() != null) {
+                tableName = item.put().tableName();
+                put = item.put().item();
+                key = put;
+                expressions = new Expressions(item.put().expressionAttributeNames(),
+                        item.put().expressionAttributeValues());
+                conditionExpression = item.put().conditionExpression();
+                returnValues = item.put().returnValuesOnConditionCheckFailure();
+                update = null;
+            } else if (item.update() != null) {
+                tableName = item.update().tableName();
+                put = null;
+                key = item.update().key();
+                expressions = new Expressions(item.update().expressionAttributeNames(),
+                        item.update().expressionAttributeValues());
+                conditionExpression = item.update().conditionExpression();
+                returnValues = item.update().returnValuesOnConditionCheckFailure();
+                update = expressions.parseUpdate(item.update().updateExpression());
+            } else if (item.delete() != null) {
+                tableName = item.delete().tableName();
+                put = null;
+                key = item.delete().key();
+                expressions = new Expressions(item.delete().expressionAttributeNames(),
+                        item.delete().expressionAttributeValues());
+                conditionExpression = item.delete().conditionExpression();
+                returnValues = item.delete().returnValuesOnConditionCheckFailure();
+                update = null;
+            } else {
+                tableName = item.conditionCheck().tableName();
+                put = null;
+                key = item.conditionCheck().key();
+                expressions = new Expressions(item.conditionCheck().expressionAttributeNames(),
+                        item.conditionCheck().expressionAttributeValues());
+                conditionExpression = item.conditionCheck().conditionExpression();
+                returnValues = item.conditionCheck().returnValuesOnConditionCheckFailure();
+                update = null;
+                if (conditionExpression == null) {
+                    throw validationError("ConditionCheck requires a ConditionExpression");
+                }
+            }
+
+            delete = item.delete() != null;
+            condition = parseCondition(expressions, conditionExpression);
+            expressions.checkAllUsed();
+            returnOnFailure = returnValues == ReturnValuesOnConditionCheckFailure.ALL_OLD;
+        }
+
+        // A put names its target through the key attributes of the new item
+        InMemoryTable.TableKey getTableKey(InMemoryTable table) {
+            return table.getTableKey(key, put == null);
+        }
+    }
+}
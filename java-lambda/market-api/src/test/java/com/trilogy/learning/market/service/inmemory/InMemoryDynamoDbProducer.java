@@ -0,0 +1,53 @@
+package com.trilogy.learning.market.service.inmemory;
+
+import io.quarkus.arc.AlternativePriority;
+import io.quarkus.arc.profile.IfBuildProfile;
+import lombok.extern.jbosslog.JBossLog;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+
+import javax.enterprise.inject.Produces;
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+// Replaces the DynamoDB clients of AwsClientFactory in the local profile, so every call is served from process
+// memory and the application runs and is load-tested without AWS
+@JBossLog
+@Singleton
+@IfBuildProfile("local")
+public class InMemoryDynamoDbProducer {
+    // Same key schema and index projections as the tables the CDK stack creates
+    @Produces
+    @Singleton
+    public InMemoryDynamoDb getInMemoryDynamoDb(
+            @ConfigProperty(name = "market.in-memory-dynamodb.latency", defaultValue = "0S") Duration latency,
+            @ConfigProperty(name = "market.in-memory-dynamodb.latency-jitter", defaultValue = "0S")
+                    Duration latencyJitter,
+            // Share of calls, or of batch items, rejected as throttled
+            @ConfigProperty(name = "market.in-memory-dynamodb.throttle-rate", defaultValue = "0")
+                    double throttleRate) {
+        log.infof("Using in-memory DynamoDB: latency=%s, jitter=%s, throttleRate=%s",
+                latency, latencyJitter, throttleRate);
+        return new InMemoryDynamoDb("PK", "SK", List.of(
+                new InMemoryIndex("GSI1", "GSI1PK", "GSI1SK", Set.of("PK", "Data")),
+                new InMemoryIndex("GSI2", "GSI2PK", "GSI2SK", Set.of("PK"))),
+                latency, latencyJitter, throttleRate);
+    }
+
+    @Produces
+    @Singleton
+    @AlternativePriority(1)
+    public DynamoDbClient getDynamoDbClient(InMemoryDynamoDb database) {
+        return new InMemoryDynamoDbClient(database);
+    }
+
+    @Produces
+    @Singleton
+    @AlternativePriority(1)
+    public DynamoDbAsyncClient getDynamoDbAsyncClient(InMemoryDynamoDb database) {
+        return new InMemoryDynamoDbAsyncClient(database);
+    }
+}
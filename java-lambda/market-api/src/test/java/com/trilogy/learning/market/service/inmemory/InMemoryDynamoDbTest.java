@@ -0,0 +1,238 @@
+package com.trilogy.learning.market.service.inmemory;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.CancellationReason;
+import software.amazon.awssdk.services.dynamodb.model.ConditionCheck;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.Delete;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.Put;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValuesOnConditionCheckFailure;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
+import software.amazon.awssdk.services.dynamodb.model.Update;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InMemoryDynamoDbTest {
+    private static final String TABLE = "market";
+    private static final String INDEX = "GSI1";
+
+    private final InMemoryDynamoDb database = new InMemoryDynamoDb("PK", "SK",
+            List.of(new InMemoryIndex(INDEX, "GSI1PK", "GSI1SK", Set.of("Data"))),
+            Duration.ZERO, Duration.ZERO, 0);
+
+    @Test
+    void indexReturnsOnlyKeysAndProjectedAttributes() {
+        put(item("ORDER#1", "ORDER#1", "GSI1PK", "OPEN", "GSI1SK", "2021-03-04", "Data", "x", "Total", "10"));
+
+        final var items = queryIndex("OPEN");
+
+        assertEquals(List.of(Map.of("PK", s("ORDER#1"), "SK", s("ORDER#1"), "GSI1PK", s("OPEN"),
+                "GSI1SK", s("2021-03-04"), "Data", s("x"))), items);
+    }
+
+    @Test
+    void indexHoldsOnlyItemsWithBothIndexKeys() {
+        put(item("ORDER#1", "ORDER#1", "GSI1PK", "OPEN", "GSI1SK", "2021-03-04"));
+        put(item("ORDER#2", "ORDER#2", "GSI1PK", "OPEN"));
+        put(item("ORDER#3", "ORDER#3", "GSI1PK", "OPEN", "GSI1SK", "2021-03-05"));
+
+        assertEquals(List.of("ORDER#1", "ORDER#3"), getPartitionKeys(queryIndex("OPEN")));
+    }
+
+    @Test
+    void updatesMoveItemsInAndOutOfTheIndex() {
+        put(item("ORDER#1", "ORDER#1", "GSI1PK", "OPEN", "GSI1SK", "2021-03-04"));
+        put(item("ORDER#2", "ORDER#2", "GSI1PK", "OPEN", "GSI1SK", "2021-03-05"));
+
+        update("ORDER#1", "SET GSI1PK = :v", Map.of(":v", s("PAID")));
+        update("ORDER#2", "REMOVE GSI1SK", Map.of());
+
+        assertTrue(queryIndex("OPEN").isEmpty());
+        assertEquals(List.of("ORDER#1"), getPartitionKeys(queryIndex("PAID")));
+
+        update("ORDER#2", "SET GSI1SK = :v", Map.of(":v", s("2021-03-06")));
+        assertEquals(List.of("ORDER#2"), getPartitionKeys(queryIndex("OPEN")));
+    }
+
+    @Test
+    void rejectsConsistentReadsOnAnIndex() {
+        final var request = getIndexQuery("OPEN").toBuilder().consistentRead(true).build();
+        assertThrows(DynamoDbException.class, () -> database.query(request));
+    }
+
+    @Test
+    void failedConditionLeavesTheItemUnchanged() {
+        put(item("CUST#1", "CUST#1", "Count", "1"));
+        final var request = UpdateItemRequest.builder()
+                .tableName(TABLE)
+                .key(key("CUST#1"))
+                .updateExpression("ADD #cnt :one")
+                .conditionExpression("#cnt > :one")
+                .expressionAttributeNames(Map.of("#cnt", "Count"))
+                .expressionAttributeValues(Map.of(":one", n("1")))
+                .returnValues(ReturnValue.ALL_NEW)
+                .build();
+
+        assertThrows(ConditionalCheckFailedException.class, () -> database.updateItem(request));
+        assertEquals(n("1"), get("CUST#1").get("Count"));
+    }
+
+    @Test
+    void oneFailedConditionCancelsTheWholeTransaction() {
+        put(item("PRODUCT#1", "PRODUCT#1", "Stock", "5"));
+        put(item("PRODUCT#2", "PRODUCT#2", "Stock", "0"));
+        final var request = TransactWriteItemsRequest.builder().transactItems(
+                getTakeStock("PRODUCT#1"),
+                getTakeStock("PRODUCT#2"),
+                TransactWriteItem.builder().put(Put.builder()
+                        .tableName(TABLE)
+                        .item(item("ORDER#1", "ORDER#1"))
+                        .conditionExpression("attribute_not_exists(PK)")
+                        .build()).build())
+                .build();
+
+        final var exception = assertThrows(TransactionCanceledException.class,
+                () -> database.transactWriteItems(request));
+
+        final var codes = new ArrayList<String>();
+        for (var reason : exception.cancellationReasons()) {
+            codes.add(reason.code());
+        }
+
+        assertEquals(List.of("None", "ConditionalCheckFailed", "None"), codes);
+        final CancellationReason failed = exception.cancellationReasons().get(1);
+        assertEquals(n("0"), failed.item().get("Stock"));
+        assertEquals(n("5"), get("PRODUCT#1").get("Stock"));
+        assertNull(get("ORDER#1"));
+    }
+
+    @Test
+    void transactionAppliesEveryActionWhenAllConditionsHold() {
+        put(item("PRODUCT#1", "PRODUCT#1", "Stock", "5"));
+        put(item("CART#1", "CART#1"));
+        final var request = TransactWriteItemsRequest.builder().transactItems(
+                getTakeStock("PRODUCT#1"),
+                TransactWriteItem.builder().delete(Delete.builder()
+                        .tableName(TABLE)
+                        .key(key("CART#1"))
+                        .build()).build(),
+                TransactWriteItem.builder().conditionCheck(ConditionCheck.builder()
+                        .tableName(TABLE)
+                        .key(key("ORDER#1"))
+                        .conditionExpression("attribute_not_exists(PK)")
+                        .build()).build())
+                .build();
+
+        database.transactWriteItems(request);
+
+        assertEquals(n("4"), get("PRODUCT#1").get("Stock"));
+        assertNull(get("CART#1"));
+    }
+
+    @Test
+    void rejectsTwoActionsOnOneItem() {
+        put(item("PRODUCT#1", "PRODUCT#1", "Stock", "5"));
+        final var request = TransactWriteItemsRequest.builder()
+                .transactItems(getTakeStock("PRODUCT#1"), getTakeStock("PRODUCT#1"))
+                .build();
+
+        assertThrows(DynamoDbException.class, () -> database.transactWriteItems(request));
+        assertEquals(n("5"), get("PRODUCT#1").get("Stock"));
+    }
+
+    private TransactWriteItem getTakeStock(String id) {
+        return TransactWriteItem.builder().update(Update.builder()
+                .tableName(TABLE)
+                .key(key(id))
+                .updateExpression("SET Stock = Stock - :one")
+                .conditionExpression("Stock >= :one")
+                .expressionAttributeValues(Map.of(":one", n("1")))
+                .returnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD)
+                .build()).build();
+    }
+
+    private void put(Map<String, AttributeValue> item) {
+        database.putItem(PutItemRequest.builder().tableName(TABLE).item(item).build());
+    }
+
+    private void update(String id, String expression, Map<String, AttributeValue> values) {
+        database.updateItem(UpdateItemRequest.builder()
+                .tableName(TABLE)
+                .key(key(id))
+                .updateExpression(expression)
+                .expressionAttributeValues(values.isEmpty() ? null : values)
+                .build());
+    }
+
+    private Map<String, AttributeValue> get(String id) {
+        final var response = database.getItem(GetItemRequest.builder().tableName(TABLE).key(key(id)).build());
+        return response.hasItem() ? response.item() : null;
+    }
+
+    private List<Map<String, AttributeValue>> queryIndex(String partitionValue) {
+        return database.query(getIndexQuery(partitionValue)).items();
+    }
+
+    private static QueryRequest getIndexQuery(String partitionValue) {
+        return QueryRequest.builder()
+                .tableName(TABLE)
+                .indexName(INDEX)
+                .keyConditionExpression("GSI1PK = :pk")
+                .expressionAttributeValues(Map.of(":pk", s(partitionValue)))
+                .build();
+    }
+
+    private static List<String> getPartitionKeys(List<Map<String, AttributeValue>> items) {
+        final var keys = new ArrayList<String>();
+        for (var item : items) {
+            keys.add(item.get("PK").s());
+        }
+
+        return keys;
+    }
+
+    private static Map<String, AttributeValue> key(String id) {
+        return Map.of("PK", s(id), "SK", s(id));
+    }
+
+    // Key attributes followed by name, value pairs; values of names ending in Count, Stock or Total are numbers
+    private static Map<String, AttributeValue> item(String pk, String sk, String... attributes) {
+        final var item = new HashMap<String, AttributeValue>();
+        item.put("PK", s(pk));
+        item.put("SK", s(sk));
+        for (var i = 0; i < attributes.length; i += 2) {
+            final var name = attributes[i];
+            final var numeric = name.equals("Count") || name.equals("Stock") || name.equals("Total");
+            item.put(name, numeric ? n(attributes[i + 1]) : s(attributes[i + 1]));
+        }
+
+        return item;
+    }
+
+    private static AttributeValue s(String value) {
+        return AttributeValue.builder().s(value).build();
+    }
+
+    private static AttributeValue n(String value) {
+        return AttributeValue.builder().n(value).build();
+    }
+}
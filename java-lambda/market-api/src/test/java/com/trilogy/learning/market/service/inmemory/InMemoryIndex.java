@@ -0,0 +1,14 @@
+package com.trilogy.learning.market.service.inmemory;
+
+import lombok.Value;
+
+import java.util.Set;
+
+// A global secondary index with an INCLUDE projection; projected names the non-key attributes it copies
+@Value
+public class InMemoryIndex {
+    String name;
+    String partitionKey;
+    String sortKey;
+    Set<String> projected;
+}
@@ -0,0 +1,42 @@
+package com.trilogy.learning.market.service.inmemory;
+
+import com.trilogy.learning.market.service.HttpClientFactory;
+import com.trilogy.learning.market.service.RestrictedDynamoDbService;
+import io.quarkus.arc.AlternativePriority;
+import io.quarkus.arc.profile.IfBuildProfile;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+// The in-memory database has no IAM, so restricted calls in the local profile see every tenant's items and never
+// assume a role
+@Singleton
+@IfBuildProfile("local")
+@AlternativePriority(1)
+public class InMemoryRestrictedDynamoDbService extends RestrictedDynamoDbService {
+    private final DynamoDbClient client;
+    private final DynamoDbAsyncClient asyncClient;
+
+    @Inject
+    public InMemoryRestrictedDynamoDbService(HttpClientFactory httpClientFactory, InMemoryDynamoDb database) {
+        super(httpClientFactory, 0, Duration.ZERO, Duration.ZERO);
+        client = new InMemoryDynamoDbClient(database);
+        asyncClient = new InMemoryDynamoDbAsyncClient(database);
+    }
+
+    @Override
+    public <T> T withClient(String authId, Function<DynamoDbClient, T> call) {
+        return call.apply(client);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> withAsyncClient(String authId,
+                                                    Function<DynamoDbAsyncClient, CompletableFuture<T>> call) {
+        return call.apply(asyncClient);
+    }
+}
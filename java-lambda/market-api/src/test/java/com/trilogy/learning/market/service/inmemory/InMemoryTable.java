@@ -0,0 +1,233 @@
+package com.trilogy.learning.market.service.inmemory;
+
+import lombok.Value;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static com.trilogy.learning.market.service.inmemory.InMemoryDynamoDb.validationError;
+
+// Items by primary key, plus a sorted view per partition of the table and of each index for queries;
+// callers hold the database lock
+final class InMemoryTable {
+    private final String partitionKey;
+    private final String sortKey;
+    private final Map<TableKey, Map<String, AttributeValue>> items = new HashMap<>();
+    private final View tableView;
+    private final Map<String, View> indexViews = new HashMap<>();
+
+    InMemoryTable(String partitionKey, String sortKey, List<InMemoryIndex> indexes) {
+        this.partitionKey = partitionKey;
+        this.sortKey = sortKey;
+        tableView = new View(null, partitionKey, sortKey, null);
+        for (var index : indexes) {
+            indexViews.put(index.getName(), new View(index.getName(), index.getPartitionKey(), index.getSortKey(),
+                    index.getProjected()));
+        }
+    }
+
+    Map<String, AttributeValue> get(Map<String, AttributeValue> key) {
+        return items.get(getTableKey(key, true));
+    }
+
+    Map<String, AttributeValue> find(TableKey key) {
+        return items.get(key);
+    }
+
+    // Returns the replaced item, if any
+    Map<String, AttributeValue> put(Map<String, AttributeValue> item) {
+        final var key = getTableKey(item, false);
+        for (var view : indexViews.values()) {
+            view.validate(item);
+        }
+
+        final var stored = Collections.unmodifiableMap(new HashMap<>(item));
+        final var old = items.put(key, stored);
+        if (old != null) {
+            removeFromViews(key, old);
+        }
+
+        tableView.add(key, stored);
+        for (var view : indexViews.values()) {
+            view.add(key, stored);
+        }
+
+        return old;
+    }
+
+    // Returns the deleted item, if any
+    Map<String, AttributeValue> delete(Map<String, AttributeValue> key) {
+        final var tableKey = getTableKey(key, true);
+        final var old = items.remove(tableKey);
+        if (old != null) {
+            removeFromViews(tableKey, old);
+        }
+
+        return old;
+    }
+
+    View getView(String indexName) {
+        if (indexName == null) {
+            return tableView;
+        }
+
+        final var view = indexViews.get(indexName);
+        if (view == null) {
+            throw validationError("The table does not have the specified index: " + indexName);
+        }
+
+        return view;
+    }
+
+    TableKey getTableKey(Map<String, AttributeValue> item, boolean keyOnly) {
+        if (item == null) {
+            throw validationError("The provided key element does not match the schema");
+        }
+
+        final var partitionValue = item.get(partitionKey);
+        final var sortValue = item.get(sortKey);
+        if (!isKeyValue(partitionValue) || !isKeyValue(sortValue) || (keyOnly && item.size() != 2)) {
+            throw validationError("The provided key element does not match the schema");
+        }
+
+        return new TableKey(partitionValue, sortValue);
+    }
+
+    Map<String, AttributeValue> getKey(Map<String, AttributeValue> item) {
+        return Map.of(partitionKey, item.get(partitionKey), sortKey, item.get(sortKey));
+    }
+
+    private void removeFromViews(TableKey key, Map<String, AttributeValue> item) {
+        tableView.remove(key, item);
+        for (var view : indexViews.values()) {
+            view.remove(key, item);
+        }
+    }
+
+    private static boolean isKeyValue(AttributeValue value) {
+        return value != null && ((value.s() != null && !value.s().isEmpty()) || value.n() != null
+                || (value.b() != null && value.b().asByteArrayUnsafe().length > 0));
+    }
+
+    @Value
+    static class TableKey implements Comparable<TableKey> {
+        AttributeValue partitionValue;
+        AttributeValue sortValue;
+
+        @Override
+        public int compareTo(TableKey other) {
+            final var result = Expressions.compareKeys(partitionValue, other.partitionValue);
+            return result != 0 ? result : Expressions.compareKeys(sortValue, other.sortValue);
+        }
+    }
+
+    // Partitions of the table or of one index; index sort values need not be unique, so each one holds the
+    // items sharing it in table key order
+    final class View {
+        private final String indexName;
+        private final String partitionKey;
+        private final String sortKey;
+        private final Set<String> projected;
+        private final Map<AttributeValue, NavigableMap<AttributeValue, NavigableMap<TableKey, Map<String,
+                AttributeValue>>>> partitions = new HashMap<>();
+
+        private View(String indexName, String partitionKey, String sortKey, Set<String> projected) {
+            this.indexName = indexName;
+            this.partitionKey = partitionKey;
+            this.sortKey = sortKey;
+            this.projected = projected;
+        }
+
+        boolean isIndex() {
+            return indexName != null;
+        }
+
+        String getPartitionKey() {
+            return partitionKey;
+        }
+
+        String getSortKey() {
+            return sortKey;
+        }
+
+        NavigableMap<AttributeValue, NavigableMap<TableKey, Map<String, AttributeValue>>> getPartition(
+                AttributeValue partitionValue) {
+            final var partition = partitions.get(partitionValue);
+            return partition == null ? Collections.emptyNavigableMap() : partition;
+        }
+
+        // An index returns only the table keys, its own keys and the attributes it projects
+        Map<String, AttributeValue> project(Map<String, AttributeValue> item) {
+            if (!isIndex()) {
+                return item;
+            }
+
+            final var projection = new HashMap<String, AttributeValue>();
+            for (var attribute : item.entrySet()) {
+                final var name = attribute.getKey();
+                if (name.equals(InMemoryTable.this.partitionKey) || name.equals(InMemoryTable.this.sortKey)
+                        || name.equals(partitionKey) || name.equals(sortKey) || projected.contains(name)) {
+                    projection.put(name, attribute.getValue());
+                }
+            }
+
+            return projection;
+        }
+
+        // The LastEvaluatedKey of an index query carries the table key and the index key
+        Map<String, AttributeValue> getKey(Map<String, AttributeValue> item) {
+            final var key = new HashMap<>(InMemoryTable.this.getKey(item));
+            key.put(partitionKey, item.get(partitionKey));
+            key.put(sortKey, item.get(sortKey));
+            return key;
+        }
+
+        private void validate(Map<String, AttributeValue> item) {
+            for (var key : List.of(partitionKey, sortKey)) {
+                if (item.containsKey(key) && !isKeyValue(item.get(key))) {
+                    throw validationError("One or more parameter values are not valid. The AttributeValue for a "
+                            + "key attribute cannot contain an empty string value. IndexName: " + indexName
+                            + ", IndexKey: " + key);
+                }
+            }
+        }
+
+        // Sparse: items without both index keys are not in the index
+        private void add(TableKey key, Map<String, AttributeValue> item) {
+            final var partitionValue = item.get(partitionKey);
+            final var sortValue = item.get(sortKey);
+            if (partitionValue == null || sortValue == null) {
+                return;
+            }
+
+            partitions.computeIfAbsent(partitionValue, p -> new TreeMap<>(Expressions::compareKeys))
+                    .computeIfAbsent(sortValue, s -> new TreeMap<>())
+                    .put(key, item);
+        }
+
+        private void remove(TableKey key, Map<String, AttributeValue> item) {
+            final var partitionValue = item.get(partitionKey);
+            final var sortValue = item.get(sortKey);
+            if (partitionValue == null || sortValue == null) {
+                return;
+            }
+
+            final var partition = partitions.get(partitionValue);
+            final var sharingSortValue = partition.get(sortValue);
+            sharingSortValue.remove(key);
+            if (sharingSortValue.isEmpty()) {
+                partition.remove(sortValue);
+            }
+
+            if (partition.isEmpty()) {
+                partitions.remove(partitionValue);
+            }
+        }
+    }
+}
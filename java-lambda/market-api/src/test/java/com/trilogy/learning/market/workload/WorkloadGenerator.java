@@ -0,0 +1,209 @@
+package com.trilogy.learning.market.workload;
+
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import lombok.extern.jbosslog.JBossLog;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import javax.enterprise.inject.Any;
+import javax.enterprise.inject.Instance;
+import javax.enterprise.inject.literal.NamedLiteral;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Drives the API handler beans over the in-memory database with an open-loop request mix and reports latency
+// percentiles and throughput per endpoint. Latency runs from the scheduled start of a request, so time spent
+// queued behind busy workers counts, as it would for a client
+@JBossLog
+@Singleton
+public class WorkloadGenerator {
+    private static final long DRAIN_TIMEOUT_SECONDS = 60;
+
+    private final WorkloadOptions options;
+    private final WorkloadModel model;
+    // Handler beans by name; each call runs in its own request context, so threads can share them
+    private final Map<String, RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>> handlers =
+            new HashMap<>();
+    private final Map<String, EndpointStats> stats = new LinkedHashMap<>();
+    private final List<String> endpoints = new ArrayList<>();
+    private final int[] cumulativeWeights;
+    private volatile long measureFrom;
+
+    @Inject
+    public WorkloadGenerator(WorkloadOptions options,
+                             @Any Instance<RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>>
+                                     beans) {
+        this.options = options;
+        model = new WorkloadModel(options);
+        for (var name : List.of("add-product", "add-customer", "add-order")) {
+            handlers.put(name, getHandler(beans, name));
+        }
+
+        cumulativeWeights = new int[options.getMix().size()];
+        var total = 0;
+        for (var endpoint : options.getMix().entrySet()) {
+            handlers.computeIfAbsent(endpoint.getKey(), name -> getHandler(beans, name));
+            total += endpoint.getValue();
+            cumulativeWeights[endpoints.size()] = total;
+            endpoints.add(endpoint.getKey());
+            stats.put(endpoint.getKey(), new EndpointStats());
+        }
+    }
+
+    void seed() throws IOException {
+        log.infof("Seeding %d products, %d customers and %d orders", options.getProducts(),
+                options.getCustomers(), options.getSeedOrders());
+        for (var i = 0; i < model.getProductCount(); i++) {
+            invokeChecked("add-product", model.newProduct(i));
+        }
+
+        for (var i = 0; i < model.getCustomerCount(); i++) {
+            invokeChecked("add-customer", model.newCustomer(i));
+        }
+
+        for (var i = 0; i < options.getSeedOrders(); i++) {
+            final var request = model.newRequest("add-order");
+            model.onResponse("add-order", request, invokeChecked("add-order", request));
+        }
+    }
+
+    // Arrivals are scheduled ahead of time with exponential gaps; a slow response never delays the next request
+    void run() throws InterruptedException {
+        final var executor = Executors.newFixedThreadPool(options.getConcurrency());
+        final var start = System.nanoTime();
+        measureFrom = start + options.getWarmUp().toNanos();
+        final var end = measureFrom + options.getDuration().toNanos();
+        log.infof("Running %.1f requests/s on %d threads: %s warm-up, %s measured", options.getRate(),
+                options.getConcurrency(), options.getWarmUp(), options.getDuration());
+
+        var next = start;
+        while (next < end) {
+            final var scheduled = next;
+            final var endpoint = pickEndpoint();
+            LockSupport.parkNanos(scheduled - System.nanoTime());
+            executor.execute(() -> invoke(endpoint, scheduled));
+            next += (long) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) / options.getRate() * 1e9);
+        }
+
+        shutdown(executor);
+    }
+
+    void printReport() {
+        final var seconds = options.getDuration().toNanos() / 1e9;
+        System.out.printf("%n%-14s %9s %7s %8s %10s %10s %10s %10s%n",
+                "endpoint", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        final var all = new Histogram(3);
+        var errors = 0L;
+        for (var endpoint : stats.entrySet()) {
+            final var endpointStats = endpoint.getValue();
+            all.add(endpointStats.latencyMicros);
+            errors += endpointStats.errors.sum();
+            printRow(endpoint.getKey(), endpointStats.latencyMicros, endpointStats.errors.sum(), seconds);
+            if (endpointStats.skipped.sum() > 0) {
+                log.warnf("%s: %d requests skipped with nothing to act on", endpoint.getKey(),
+                        endpointStats.skipped.sum());
+            }
+        }
+
+        printRow("all", all, errors, seconds);
+    }
+
+    private static void printRow(String name, Histogram latencyMicros, long errors, double seconds) {
+        System.out.printf("%-14s %9d %7d %8.1f %10.2f %10.2f %10.2f %10.2f%n", name,
+                latencyMicros.getTotalCount(), errors, latencyMicros.getTotalCount() / seconds,
+                latencyMicros.getValueAtPercentile(50) / 1000.0, latencyMicros.getValueAtPercentile(99) / 1000.0,
+                latencyMicros.getValueAtPercentile(99.9) / 1000.0, latencyMicros.getMaxValue() / 1000.0);
+    }
+
+    private void invoke(String endpoint, long scheduled) {
+        final var endpointStats = stats.get(endpoint);
+        final var measured = scheduled >= measureFrom;
+        try {
+            final var request = model.newRequest(endpoint);
+            if (request == null) {
+                if (measured) {
+                    endpointStats.skipped.increment();
+                }
+
+                return;
+            }
+
+            final var response = handlers.get(endpoint).handleRequest(request, null);
+            final var latencyNanos = System.nanoTime() - scheduled;
+            if (measured) {
+                endpointStats.latencyMicros.recordValue(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+                if (response.getStatusCode() >= 400) {
+                    endpointStats.errors.increment();
+                }
+            }
+
+            model.onResponse(endpoint, request, response);
+        } catch (Exception e) {
+            log.errorf(e, "%s request failed", endpoint);
+            if (measured) {
+                endpointStats.errors.increment();
+            }
+        }
+    }
+
+    private APIGatewayProxyResponseEvent invokeChecked(String endpoint, APIGatewayProxyRequestEvent request) {
+        final var response = handlers.get(endpoint).handleRequest(request, null);
+        if (response.getStatusCode() != 200) {
+            throw new IllegalStateException(endpoint + " failed while seeding: " + response.getBody());
+        }
+
+        return response;
+    }
+
+    // Fails on handler names the run cannot call
+    private static RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> getHandler(
+            Instance<RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>> beans, String name) {
+        final var handler = beans.select(NamedLiteral.of(name));
+        if (handler.isUnsatisfied()) {
+            throw new IllegalArgumentException("Unknown handler " + name);
+        }
+
+        return handler.get();
+    }
+
+    private String pickEndpoint() {
+        final var value = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (var i = 0; i < cumulativeWeights.length; i++) {
+            if (value < cumulativeWeights[i]) {
+                return endpoints.get(i);
+            }
+        }
+
+        throw new IllegalStateException();
+    }
+
+    private static void shutdown(ExecutorService executor) throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            log.warnf("Requests still queued after %d seconds; the offered rate exceeds capacity",
+                    DRAIN_TIMEOUT_SECONDS);
+            executor.shutdownNow();
+        }
+    }
+
+    private static class EndpointStats {
+        // Auto-resizing with three significant digits
+        final Histogram latencyMicros = new ConcurrentHistogram(3);
+        final LongAdder errors = new LongAdder();
+        final LongAdder skipped = new LongAdder();
+    }
+}
@@ -0,0 +1,215 @@
+package com.trilogy.learning.market.workload;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Customers, products and placed orders of a run, and the API Gateway events that act on them; popular products
+// and customers get most of the traffic
+class WorkloadModel {
+    private static final int RECENT_ORDERS = 10_000;
+    private static final int MAX_ORDER_LINES = 5;
+    private static final int MAX_QUANTITY = 3;
+    private static final double OUT_OF_STOCK_SHARE = 0.05;
+    private static final String PAGE_SIZE = "20";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final int customers;
+    private final int products;
+    private final int categories;
+    // Orders awaiting payment, oldest first
+    private final ConcurrentLinkedQueue<PlacedOrder> openOrders = new ConcurrentLinkedQueue<>();
+    // Ids of the last placed orders, read by order detail requests
+    private final AtomicReferenceArray<String> recentOrderIds = new AtomicReferenceArray<>(RECENT_ORDERS);
+    private final AtomicLong placedOrders = new AtomicLong();
+
+    WorkloadModel(WorkloadOptions options) {
+        customers = options.getCustomers();
+        products = options.getProducts();
+        categories = options.getCategories();
+    }
+
+    int getCustomerCount() {
+        return customers;
+    }
+
+    int getProductCount() {
+        return products;
+    }
+
+    APIGatewayProxyRequestEvent newCustomer(int index) {
+        final var email = getCustomerEmail(index);
+        return newEvent("POST", "/customer", email).withBody(toJson(Map.of(
+                "customerEmail", email,
+                "name", "Customer " + index)));
+    }
+
+    APIGatewayProxyRequestEvent newProduct(int index) {
+        final var random = ThreadLocalRandom.current();
+        final var price = BigDecimal.valueOf(random.nextInt(100, 10_000)).movePointLeft(2);
+        return newEvent("POST", "/product", getCustomerEmail(0)).withBody(toJson(Map.of(
+                "id", getProductId(index),
+                "name", "Product " + index,
+                "price", price,
+                "category", getCategory(index % categories),
+                "outOfStock", random.nextDouble() < OUT_OF_STOCK_SHARE)));
+    }
+
+    // Null when the endpoint has nothing to act on yet
+    APIGatewayProxyRequestEvent newRequest(String endpoint) {
+        switch (endpoint) {
+            case "add-order":
+                return newOrder();
+            case "add-payment":
+                return newPayment();
+            case "get-order":
+                return newGetOrder();
+            case "get-orders":
+                return newGetOrders();
+            case "get-products":
+                return newGetProducts();
+            default:
+                throw new IllegalArgumentException("No requests for endpoint " + endpoint);
+        }
+    }
+
+    // Tracks the orders that were placed, so later requests read and pay them
+    void onResponse(String endpoint, APIGatewayProxyRequestEvent request, APIGatewayProxyResponseEvent response)
+            throws JsonProcessingException {
+        if (!"add-order".equals(endpoint) || response.getStatusCode() != 200) {
+            return;
+        }
+
+        final var order = objectMapper.readTree(response.getBody());
+        final var id = order.get("id").asText();
+        openOrders.add(new PlacedOrder(id, order.get("customerEmail").asText(), order.get("total").decimalValue()));
+        recentOrderIds.set((int) (placedOrders.getAndIncrement() % RECENT_ORDERS), id);
+    }
+
+    private APIGatewayProxyRequestEvent newOrder() {
+        final var random = ThreadLocalRandom.current();
+        final var lines = new LinkedHashMap<String, Object>();
+        final var lineCount = 1 + random.nextInt(MAX_ORDER_LINES);
+        while (lines.size() < Math.min(lineCount, products)) {
+            lines.put(getProductId(pickSkewed(products)), Map.of("quantity", 1 + random.nextInt(MAX_QUANTITY)));
+        }
+
+        final var email = getCustomerEmail(pickSkewed(customers));
+        return withIdempotencyKey(newEvent("POST", "/order", email).withBody(toJson(Map.of(
+                "customerEmail", email,
+                "products", lines))));
+    }
+
+    private APIGatewayProxyRequestEvent newPayment() {
+        final var order = openOrders.poll();
+        if (order == null) {
+            return null;
+        }
+
+        return withIdempotencyKey(newEvent("POST", "/payment", order.getCustomerEmail()).withBody(toJson(Map.of(
+                "customerId", order.getCustomerEmail(),
+                "orderId", order.getId(),
+                "amount", order.getTotal()))));
+    }
+
+    private APIGatewayProxyRequestEvent newGetOrder() {
+        final var placed = placedOrders.get();
+        if (placed == 0) {
+            return null;
+        }
+
+        // Recent orders are read more often than old ones
+        final var age = pickSkewed((int) Math.min(placed, RECENT_ORDERS));
+        final var id = recentOrderIds.get((int) ((placed - 1 - age) % RECENT_ORDERS));
+        return withAcceptEncoding(newEvent("GET", "/order", getCustomerEmail(pickSkewed(customers)))
+                .withQueryStringParameters(Map.of("id", id)));
+    }
+
+    private APIGatewayProxyRequestEvent newGetOrders() {
+        final var email = getCustomerEmail(pickSkewed(customers));
+        final var choice = ThreadLocalRandom.current().nextInt(10);
+        final Map<String, String> params;
+        if (choice < 5) {
+            params = Map.of("customerId", email);
+        } else if (choice < 8) {
+            params = Map.of("productId", getProductId(pickSkewed(products)), "limit", PAGE_SIZE);
+        } else {
+            params = Map.of("status", "open", "limit", PAGE_SIZE);
+        }
+
+        return withAcceptEncoding(newEvent("GET", "/orders", email).withQueryStringParameters(params));
+    }
+
+    private APIGatewayProxyRequestEvent newGetProducts() {
+        final var email = getCustomerEmail(pickSkewed(customers));
+        final var params = ThreadLocalRandom.current().nextInt(10) < 9
+                ? Map.of("category", getCategory(pickSkewed(categories)))
+                : Map.of("outOfStock", "true", "limit", PAGE_SIZE);
+        return withAcceptEncoding(newEvent("GET", "/products", email).withQueryStringParameters(params));
+    }
+
+    private APIGatewayProxyRequestEvent newEvent(String method, String path, String userEmail) {
+        final var context = new APIGatewayProxyRequestEvent.ProxyRequestContext();
+        context.setAuthorizer(Map.of("claims", Map.of("email", userEmail)));
+        return new APIGatewayProxyRequestEvent()
+                .withHttpMethod(method)
+                .withPath(path)
+                .withHeaders(new HashMap<>(Map.of("Content-Type", "application/json")))
+                .withRequestContext(context);
+    }
+
+    private static APIGatewayProxyRequestEvent withIdempotencyKey(APIGatewayProxyRequestEvent event) {
+        event.getHeaders().put("Idempotency-Key", UUID.randomUUID().toString());
+        return event;
+    }
+
+    private static APIGatewayProxyRequestEvent withAcceptEncoding(APIGatewayProxyRequestEvent event) {
+        event.getHeaders().put("Accept-Encoding", "gzip, deflate, br");
+        return event;
+    }
+
+    // Index in [0, count), with low indexes much more likely
+    private static int pickSkewed(int count) {
+        final var random = ThreadLocalRandom.current().nextDouble();
+        return (int) (count * random * random);
+    }
+
+    private static String getCustomerEmail(int index) {
+        return "customer" + index + "@example.com";
+    }
+
+    private static String getProductId(int index) {
+        return "product" + index;
+    }
+
+    private static String getCategory(int index) {
+        return "category" + index;
+    }
+
+    private String toJson(Map<String, Object> value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Value
+    private static class PlacedOrder {
+        String id;
+        String customerEmail;
+        BigDecimal total;
+    }
+}
@@ -0,0 +1,66 @@
+package com.trilogy.learning.market.workload;
+
+import lombok.Getter;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Settings of a run, from workload.* properties
+@Getter
+@Singleton
+public class WorkloadOptions {
+    // Threads invoking handlers, like concurrently running Lambda instances
+    private final int concurrency;
+    // Mean requests started per second; arrivals are Poisson and do not wait for earlier responses
+    private final double rate;
+    private final Duration warmUp;
+    private final Duration duration;
+    private final int customers;
+    private final int products;
+    private final int categories;
+    // Orders placed before the run, so reads and payments have data from the start
+    private final int seedOrders;
+    // Relative weight of each endpoint by handler name
+    private final Map<String, Integer> mix;
+
+    @Inject
+    public WorkloadOptions(@ConfigProperty(name = "workload.concurrency", defaultValue = "16") int concurrency,
+                           @ConfigProperty(name = "workload.rate", defaultValue = "200") double rate,
+                           @ConfigProperty(name = "workload.warm-up", defaultValue = "10S") Duration warmUp,
+                           @ConfigProperty(name = "workload.duration", defaultValue = "60S") Duration duration,
+                           @ConfigProperty(name = "workload.customers", defaultValue = "1000") int customers,
+                           @ConfigProperty(name = "workload.products", defaultValue = "200") int products,
+                           @ConfigProperty(name = "workload.categories", defaultValue = "20") int categories,
+                           @ConfigProperty(name = "workload.seed-orders", defaultValue = "2000") int seedOrders,
+                           @ConfigProperty(name = "workload.mix",
+                                   defaultValue = "get-products=35,get-order=25,get-orders=20,add-order=15,"
+                                           + "add-payment=5") String mix) {
+        this.concurrency = concurrency;
+        this.rate = rate;
+        this.warmUp = warmUp;
+        this.duration = duration;
+        this.customers = customers;
+        this.products = products;
+        this.categories = categories;
+        this.seedOrders = seedOrders;
+        this.mix = getMix(mix);
+    }
+
+    private static Map<String, Integer> getMix(String value) {
+        final var mix = new LinkedHashMap<String, Integer>();
+        for (var entry : value.split(",")) {
+            final var parts = entry.split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("workload.mix: " + entry);
+            }
+
+            mix.put(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+        }
+
+        return mix;
+    }
+}
@@ -0,0 +1,24 @@
+package com.trilogy.learning.market.workload;
+
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import javax.inject.Inject;
+import java.io.IOException;
+
+// Boots the application with the local profile and runs the workload against it; only the runWorkload task
+// enables it, since a run takes minutes and reports numbers rather than asserting on them
+@QuarkusTest
+@EnabledIfSystemProperty(named = "workload.enabled", matches = "true")
+class WorkloadTest {
+    @Inject
+    WorkloadGenerator generator;
+
+    @Test
+    void run() throws IOException, InterruptedException {
+        generator.seed();
+        generator.run();
+        generator.printReport();
+    }
+}
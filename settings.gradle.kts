@@ -10,6 +10,7 @@ pluginManagement {
         id("io.quarkus") version quarkusVersion
         id("org.kordamp.gradle.jandex") version "0.8.0"
         id("io.franzbecker.gradle-lombok") version "2.1"
+        id("me.champeau.gradle.jmh") version "0.5.3"
     }
 }
 